@@ -0,0 +1,124 @@
+package com.qwervego.label.model;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.qwervego.label.fake.InMemoryFirestore;
+import com.qwervego.label.util.PhoneNumbers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping cost of one scanned tag: the hand-written conversion the repositories used
+ * before {@code @FirestoreDocument} against the generated {@link QrDocumentMapper}.
+ * Run with {@code ./gradlew jmh -PjmhArgs=DocumentMapperBenchmark}; the GC profiler's
+ * {@code gc.alloc.rate.norm} is the allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentMapperBenchmark {
+
+    private Firestore firestore;
+    private DocumentSnapshot snapshot;
+    private Qr qr;
+
+    @Setup
+    public void setUp() throws Exception {
+        // The snapshot is written and read back through the real client over the in-memory fake
+        firestore = InMemoryFirestore.create("benchmark", Map.of());
+        Timestamp created = Timestamp.ofTimeSecondsAndNanos(1_700_000_000L, 0);
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("id", "20250101-ABC123");
+        fields.put("isActive", true);
+        fields.put("name", "Jane Doe");
+        fields.put("email", "jane@example.com");
+        fields.put("address", "221B Baker Street, London");
+        fields.put("phoneNumber", "+447700900123");
+        fields.put("phoneE164", "+447700900123");
+        fields.put("password", null);
+        fields.put("createdDate", created);
+        fields.put("activationDate", created);
+        DocumentReference document = firestore.collection("qrs").document("20250101-ABC123");
+        document.set(fields).get();
+        snapshot = document.get().get();
+        qr = QrDocumentMapper.fromSnapshot(snapshot);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        firestore.close();
+    }
+
+    @Benchmark
+    public Qr readHandWritten() {
+        Map<String, Object> data = snapshot.getData();
+        if (data == null) {
+            return null;
+        }
+        Qr result = new Qr();
+        result.setId(snapshot.getId());
+        Boolean active = snapshot.getBoolean("isActive");
+        result.setActive(active != null ? active : false);
+        result.setName(snapshot.getString("name"));
+        result.setEmail(snapshot.getString("email"));
+        result.setAddress(snapshot.getString("address"));
+        result.setPhoneNumber(snapshot.getString("phoneNumber"));
+        result.setPassword(snapshot.getString("password"));
+        Timestamp createdTimestamp = snapshot.getTimestamp("createdDate");
+        if (createdTimestamp != null) {
+            result.setCreatedDate(createdTimestamp.toDate());
+        }
+        Timestamp activationTimestamp = snapshot.getTimestamp("activationDate");
+        if (activationTimestamp != null) {
+            result.setActivationDate(activationTimestamp.toDate());
+        }
+        result.setUpdateTime(snapshot.getUpdateTime());
+        return result;
+    }
+
+    @Benchmark
+    public Qr readGenerated() {
+        return snapshot.exists() ? QrDocumentMapper.fromSnapshot(snapshot) : null;
+    }
+
+    @Benchmark
+    public Map<String, Object> writeHandWritten() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", qr.getId());
+        data.put("isActive", qr.isActive());
+        data.put("name", qr.getName());
+        data.put("email", qr.getEmail());
+        data.put("address", qr.getAddress());
+        data.put("phoneNumber", qr.getPhoneNumber());
+        data.put("phoneE164", PhoneNumbers.toE164(qr.getPhoneNumber()));
+        data.put("password", qr.getPassword());
+        data.put("createdDate", qr.getCreatedDate());
+        data.put("activationDate", qr.getActivationDate());
+        return data;
+    }
+
+    @Benchmark
+    public Map<String, Object> writeGenerated() {
+        Map<String, Object> data = QrDocumentMapper.toMap(qr, 1);
+        data.put("phoneE164", PhoneNumbers.toE164(qr.getPhoneNumber()));
+        return data;
+    }
+}
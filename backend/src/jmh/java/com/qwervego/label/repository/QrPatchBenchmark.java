@@ -0,0 +1,65 @@
+package com.qwervego.label.repository;
+
+import com.qwervego.label.model.Qr;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CPU side of {@code /api/qr/update}: parsing the request body into a
+ * {@link QrPatch}, then turning it into Firestore field updates or applying it to a
+ * decoded tag (the embedded store's path).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QrPatchBenchmark {
+
+    private Map<String, Object> body;
+    private QrPatch patch;
+    private Qr qr;
+
+    @Setup
+    public void setUp() {
+        body = new LinkedHashMap<>();
+        body.put("id", "20250101-ABC123");
+        body.put("name", "Jane Doe");
+        body.put("email", "jane@example.com");
+        body.put("address", "221B Baker Street, London");
+        body.put("phoneNumber", "+44 7700 900123");
+        body.put("isActive", "true");
+        patch = QrPatch.from(body);
+        qr = new Qr();
+        qr.setId("20250101-ABC123");
+    }
+
+    @Benchmark
+    public QrPatch parse() {
+        return QrPatch.from(body);
+    }
+
+    @Benchmark
+    public Map<String, Object> parseToFieldUpdates() {
+        return QrPatch.from(body).toFieldUpdates();
+    }
+
+    @Benchmark
+    public Qr applyToDocument() {
+        patch.applyTo(qr);
+        return qr;
+    }
+}
@@ -0,0 +1,40 @@
+package com.qwervego.label.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ID generation for {@code /api/qr/generate}: the random suffix alone, and the full
+ * date-prefixed ID built per tag.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QrIdBenchmark {
+
+    private final String datePrefix = LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE);
+
+    @Benchmark
+    public String randomId() {
+        return QrGenerationService.randomId();
+    }
+
+    @Benchmark
+    public String prefixedId() {
+        return datePrefix + "-" + QrGenerationService.randomId();
+    }
+}
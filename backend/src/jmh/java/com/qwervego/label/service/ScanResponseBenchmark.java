@@ -0,0 +1,80 @@
+package com.qwervego.label.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.cloud.Timestamp;
+import com.qwervego.label.dto.QrResponse;
+import com.qwervego.label.model.Qr;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.unit.DataSize;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of producing the body of one scan ({@code GET /api/qr}): the {@link QrResponse}
+ * DTO and the {@link ScanPayloadCache#toPayload} map serialized by an
+ * {@link ObjectMapper} configured like Spring Boot's, against a hit in the
+ * pre-serialized payload cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanResponseBenchmark {
+
+    private ObjectMapper objectMapper;
+    private ScanPayloadCache scanPayloadCache;
+    private Qr qr;
+    private QrResponse response;
+    private String etag;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        scanPayloadCache = new ScanPayloadCache(objectMapper, new SimpleMeterRegistry(),
+            DataSize.ofMegabytes(1), DataSize.ofKilobytes(1));
+        qr = new Qr();
+        qr.setId("20250101-ABC123");
+        qr.setActive(true);
+        qr.setName("Jane Doe");
+        qr.setEmail("jane@example.com");
+        qr.setAddress("221B Baker Street, London");
+        qr.setPhoneNumber("+447700900123");
+        qr.setCreatedDate(new Date(1_700_000_000_000L));
+        qr.setActivationDate(new Date(1_700_100_000_000L));
+        qr.setUpdateTime(Timestamp.ofTimeSecondsAndNanos(1_700_100_000L, 0));
+        response = new QrResponse(qr.getId(), qr.isActive(), qr.getName(), qr.getEmail(), qr.getAddress(),
+            qr.getPhoneNumber(), qr.getCreatedDate(), qr.getActivationDate());
+        etag = ScanPayloadCache.etagFor(qr);
+        scanPayloadCache.bytesFor(qr, etag);
+    }
+
+    @Benchmark
+    public byte[] serializeResponse() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public byte[] serializePayloadMap() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(ScanPayloadCache.toPayload(qr));
+    }
+
+    @Benchmark
+    public byte[] cachedPayload() {
+        return scanPayloadCache.bytesFor(qr, etag);
+    }
+}
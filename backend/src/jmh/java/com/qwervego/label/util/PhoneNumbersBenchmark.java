@@ -0,0 +1,35 @@
+package com.qwervego.label.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PhoneNumbers#toE164} on input that is already canonical (token claims, stored
+ * fields), which should not allocate, and on formatted input typed by users.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhoneNumbersBenchmark {
+
+    @Param({"+447700900123", "+44 7700 900123", "(555) 123-4567"})
+    private String phoneNumber;
+
+    @Benchmark
+    public String toE164() {
+        return PhoneNumbers.toE164(phoneNumber);
+    }
+}
@@ -0,0 +1,89 @@
+package com.qwervego.label.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.qwervego.label.LabelApplication;
+import com.qwervego.label.fake.InMemoryIdentityToolkit;
+import com.qwervego.label.fake.SyntheticDataGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+/**
+ * End-to-end load test: boots the application in this JVM on the {@code fake-firebase}
+ * profile, seeds it, drives the public endpoints over HTTP at constant arrival rates
+ * and writes latency reports. Run with {@code ./gradlew loadtest}; see
+ * {@link LoadTestOptions} for the arguments.
+ * <p>
+ * Client and server share the machine, so absolute numbers are for comparing runs of
+ * the same build setup, not for sizing Cloud Run instances.
+ */
+public final class LoadTest {
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("fake-firebase.seed.qrs", Long.toString(options.qrs()));
+        properties.put("fake-firebase.seed.users", Long.toString(options.users()));
+        // Per-request logging to the console would dominate what is measured
+        properties.put("logging.level.com.qwervego", "WARN");
+        properties.put("logging.level.org.springframework.web", "WARN");
+        properties.put("logging.level.com.qwervego.label.loadtest", "INFO");
+        // Later arguments override these rather than being joined to them
+        for (String arg : options.applicationArgs()) {
+            int separator = arg.indexOf('=');
+            properties.put(separator > 0 ? arg.substring(2, separator) : arg.substring(2),
+                separator > 0 ? arg.substring(separator + 1) : "true");
+        }
+        List<String> applicationArgs = new ArrayList<>();
+        properties.forEach((name, value) -> applicationArgs.add("--" + name + "=" + value));
+
+        Instant startedAt = Instant.now();
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(LabelApplication.class)
+                .profiles("fake-firebase")
+                .run(applicationArgs.toArray(String[]::new))) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            ObjectMapper objectMapper = context.getBean(ObjectMapper.class);
+            Scenarios scenarios = new Scenarios(URI.create("http://localhost:" + port),
+                context.getBean(SyntheticDataGenerator.class), context.getBean(InMemoryIdentityToolkit.class),
+                objectMapper, options);
+
+            List<ScenarioStats> results;
+            try (HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .executor(Executors.newVirtualThreadPerTaskExecutor())
+                    .build()) {
+                results = new OpenModelRunner(client, options).run(scenarios.create());
+            }
+
+            Path reports = new LoadTestReport(options, startedAt, results).write(objectMapper);
+            for (ScenarioStats result : results) {
+                var histogram = result.total();
+                logger.info("{} {}: {} requests, {} unexpected, {} dropped; p50 {} ms, p99 {} ms, p99.9 {} ms, max {} ms",
+                    result.scenario().method(), result.scenario().path(), histogram.getTotalCount(), result.unexpected(),
+                    result.dropped(), ScenarioStats.millis(histogram.getValueAtPercentile(50)),
+                    ScenarioStats.millis(histogram.getValueAtPercentile(99)),
+                    ScenarioStats.millis(histogram.getValueAtPercentile(99.9)), ScenarioStats.millis(histogram.getMaxValue()));
+            }
+            logger.info("Reports written to {}", reports.toAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.qwervego.label.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settings for one load test run, parsed from {@code key=value} arguments. Arguments
+ * starting with {@code --} are passed to the application unchanged, e.g.
+ * {@code --fake-firebase.firestore.latency.default=0}.
+ *
+ * @param rates requests per second for each scenario to run, in run order
+ */
+record LoadTestOptions(
+        Duration warmup,
+        Duration duration,
+        Map<String, Double> rates,
+        int batchSize,
+        int pageSize,
+        long qrs,
+        long users,
+        int tokens,
+        int maxInFlight,
+        Duration requestTimeout,
+        Path reportDirectory,
+        List<String> applicationArgs) {
+
+    static final Map<String, Double> DEFAULT_RATES = defaultRates();
+
+    private static Map<String, Double> defaultRates() {
+        Map<String, Double> rates = new LinkedHashMap<>();
+        rates.put("scan", 500.0);
+        rates.put("batch", 50.0);
+        rates.put("list", 20.0);
+        rates.put("add", 10.0);
+        rates.put("signin", 20.0);
+        return rates;
+    }
+
+    static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new LinkedHashMap<>();
+        List<String> applicationArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                applicationArgs.add(arg);
+                continue;
+            }
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected key=value or --application.property=value, got " + arg);
+            }
+            values.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        List<String> scenarios = values.containsKey("scenarios")
+            ? Arrays.stream(values.remove("scenarios").split(",")).map(String::trim).filter(name -> !name.isEmpty()).toList()
+            : List.copyOf(DEFAULT_RATES.keySet());
+        Map<String, Double> rates = new LinkedHashMap<>();
+        for (String scenario : scenarios) {
+            if (!DEFAULT_RATES.containsKey(scenario)) {
+                throw new IllegalArgumentException("Unknown scenario " + scenario + "; expected one of " + DEFAULT_RATES.keySet());
+            }
+            String rate = values.remove("rate." + scenario);
+            rates.put(scenario, rate != null ? Double.parseDouble(rate) : DEFAULT_RATES.get(scenario));
+        }
+        values.keySet().removeIf(key -> key.startsWith("rate.") && DEFAULT_RATES.containsKey(key.substring(5)));
+
+        LoadTestOptions options = new LoadTestOptions(
+            DurationStyle.detectAndParse(values.getOrDefault("warmup", "15s")),
+            DurationStyle.detectAndParse(values.getOrDefault("duration", "60s")),
+            rates,
+            Integer.parseInt(values.getOrDefault("batch-size", "25")),
+            Integer.parseInt(values.getOrDefault("page-size", "15")),
+            Long.parseLong(values.getOrDefault("qrs", "200000")),
+            Long.parseLong(values.getOrDefault("users", "20000")),
+            Integer.parseInt(values.getOrDefault("tokens", "1000")),
+            Integer.parseInt(values.getOrDefault("max-in-flight", "5000")),
+            DurationStyle.detectAndParse(values.getOrDefault("request-timeout", "30s")),
+            Path.of(values.getOrDefault("report-dir", "build/reports/loadtest")),
+            List.copyOf(applicationArgs));
+
+        List<String> known = List.of("warmup", "duration", "batch-size", "page-size", "qrs", "users", "tokens",
+            "max-in-flight", "request-timeout", "report-dir");
+        List<String> unknown = values.keySet().stream().filter(key -> !known.contains(key)).toList();
+        if (!unknown.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options " + unknown);
+        }
+        if (options.rates.values().stream().anyMatch(rate -> rate <= 0)) {
+            throw new IllegalArgumentException("Rates must be positive: " + options.rates);
+        }
+        if (options.users < 1 || options.tokens < 1 || options.tokens > options.users) {
+            throw new IllegalArgumentException("Need at least one seeded user and 1 <= tokens <= users");
+        }
+        return options;
+    }
+}
@@ -0,0 +1,203 @@
+package com.qwervego.label.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.springframework.web.util.HtmlUtils;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the results of a run to {@code report-dir}: {@code report.json} for
+ * comparing runs, {@code report.html} for reading one, and a {@code <scenario>.hgrm}
+ * percentile distribution per scenario in HdrHistogram's format, which the
+ * HdrHistogram plotter can overlay across runs.
+ */
+final class LoadTestReport {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+    private static final int CHART_WIDTH = 640;
+    private static final int CHART_HEIGHT = 240;
+
+    private final LoadTestOptions options;
+    private final Instant startedAt;
+    private final List<ScenarioStats> stats;
+
+    LoadTestReport(LoadTestOptions options, Instant startedAt, List<ScenarioStats> stats) {
+        this.options = options;
+        this.startedAt = startedAt;
+        this.stats = stats;
+    }
+
+    Path write(ObjectMapper objectMapper) throws IOException {
+        Path directory = options.reportDirectory();
+        Files.createDirectories(directory);
+        List<Map<String, Object>> scenarios = stats.stream().map(this::summary).toList();
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", startedAt.toString());
+        report.put("warmupSeconds", options.warmup().toSeconds());
+        report.put("durationSeconds", options.duration().toSeconds());
+        report.put("qrs", options.qrs());
+        report.put("users", options.users());
+        report.put("applicationArgs", options.applicationArgs());
+        report.put("scenarios", scenarios);
+        objectMapper.copy().enable(SerializationFeature.INDENT_OUTPUT)
+            .writeValue(directory.resolve("report.json").toFile(), report);
+
+        for (ScenarioStats scenario : stats) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(directory.resolve(scenario.scenario().name() + ".hgrm")),
+                    false, StandardCharsets.UTF_8)) {
+                // Recorded in microseconds, reported in milliseconds
+                scenario.total().outputPercentileDistribution(out, 1000.0);
+            }
+        }
+        Files.writeString(directory.resolve("report.html"), html(scenarios), StandardCharsets.UTF_8);
+        return directory;
+    }
+
+    private Map<String, Object> summary(ScenarioStats scenario) {
+        Histogram histogram = scenario.total();
+        double seconds = options.duration().toNanos() / 1e9;
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("min", ScenarioStats.millis(histogram.getMinValue()));
+        latency.put("mean", ScenarioStats.millis(histogram.getMean()));
+        for (double percentile : PERCENTILES) {
+            latency.put(percentileName(percentile), ScenarioStats.millis(histogram.getValueAtPercentile(percentile)));
+        }
+        latency.put("max", ScenarioStats.millis(histogram.getMaxValue()));
+
+        List<double[]> distribution = new ArrayList<>();
+        for (HistogramIterationValue value : histogram.percentiles(5)) {
+            distribution.add(new double[]{value.getPercentileLevelIteratedTo(), ScenarioStats.millis(value.getValueIteratedTo())});
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("name", scenario.scenario().name());
+        summary.put("method", scenario.scenario().method());
+        summary.put("path", scenario.scenario().path());
+        summary.put("targetRate", scenario.scenario().rate());
+        summary.put("achievedRate", histogram.getTotalCount() / seconds);
+        summary.put("requests", histogram.getTotalCount());
+        summary.put("unexpected", scenario.unexpected());
+        summary.put("dropped", scenario.dropped());
+        summary.put("outcomes", scenario.outcomes());
+        summary.put("latencyMillis", latency);
+        summary.put("percentileDistribution", distribution);
+        summary.put("timeline", scenario.timeline());
+        return summary;
+    }
+
+    private static String percentileName(double percentile) {
+        return "p" + (percentile == Math.rint(percentile)
+            ? Integer.toString((int) percentile)
+            : Double.toString(percentile).replace(".", ""));
+    }
+
+    @SuppressWarnings("unchecked")
+    private String html(List<Map<String, Object>> scenarios) {
+        StringBuilder html = new StringBuilder();
+        html.append("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>Load test ").append(startedAt).append("</title>\n")
+            .append("<style>body{font-family:sans-serif;margin:2em}table{border-collapse:collapse}")
+            .append("td,th{border:1px solid #ccc;padding:4px 8px;text-align:right}th:first-child,td:first-child{text-align:left}")
+            .append(".bad{color:#b00020}svg{border:1px solid #eee;margin:0 1em 1em 0}</style></head><body>\n")
+            .append("<h1>Load test ").append(startedAt).append("</h1>\n")
+            .append("<p>").append(options.duration().toSeconds()).append(" s measured after ").append(options.warmup().toSeconds())
+            .append(" s warmup, ").append(options.qrs()).append(" seeded tags, ").append(options.users()).append(" users. ")
+            .append("Latency is measured from each request's scheduled send time.</p>\n")
+            .append("<table><tr><th>Scenario</th><th>Target req/s</th><th>Achieved req/s</th><th>Requests</th>")
+            .append("<th>Unexpected</th><th>Dropped</th>");
+        for (double percentile : PERCENTILES) {
+            html.append("<th>").append(percentileName(percentile)).append(" ms</th>");
+        }
+        html.append("<th>max ms</th><th>Outcomes</th></tr>\n");
+
+        for (Map<String, Object> scenario : scenarios) {
+            Map<String, Object> latency = (Map<String, Object>) scenario.get("latencyMillis");
+            html.append("<tr><td>").append(HtmlUtils.htmlEscape(scenario.get("method") + " " + scenario.get("path")))
+                .append(" (").append(scenario.get("name")).append(")</td>")
+                .append(cell(scenario.get("targetRate"), false))
+                .append(cell(scenario.get("achievedRate"), false))
+                .append(cell(scenario.get("requests"), false))
+                .append(cell(scenario.get("unexpected"), (long) scenario.get("unexpected") > 0))
+                .append(cell(scenario.get("dropped"), (long) scenario.get("dropped") > 0));
+            for (double percentile : PERCENTILES) {
+                html.append(cell(latency.get(percentileName(percentile)), false));
+            }
+            html.append(cell(latency.get("max"), false))
+                .append("<td>").append(HtmlUtils.htmlEscape(scenario.get("outcomes").toString())).append("</td></tr>\n");
+        }
+        html.append("</table>\n");
+
+        for (Map<String, Object> scenario : scenarios) {
+            html.append("<h2>").append(HtmlUtils.htmlEscape(scenario.get("method") + " " + scenario.get("path"))).append("</h2>\n")
+                .append(percentileChart((List<double[]>) scenario.get("percentileDistribution")))
+                .append(timelineChart((List<ScenarioStats.Interval>) scenario.get("timeline")))
+                .append('\n');
+        }
+        return html.append("</body></html>\n").toString();
+    }
+
+    private static String cell(Object value, boolean bad) {
+        String text = value instanceof Double number ? String.format(Locale.ROOT, "%.2f", number) : String.valueOf(value);
+        return (bad ? "<td class=\"bad\">" : "<td>") + text + "</td>";
+    }
+
+    // Latency by percentile on the usual log scale of 1 / (1 - percentile)
+    private static String percentileChart(List<double[]> distribution) {
+        double maxX = Math.log10(1 / (1 - 0.99999));
+        double maxY = distribution.stream().mapToDouble(point -> point[1]).max().orElse(1);
+        List<double[]> points = new ArrayList<>();
+        for (double[] point : distribution) {
+            double fraction = Math.min(point[0] / 100, 0.99999);
+            points.add(new double[]{Math.log10(1 / (1 - fraction)) / maxX, point[1] / maxY});
+        }
+        return chart("Latency by percentile (ms), 0% to 99.999%", points, maxY,
+            List.of("0%", "90%", "99%", "99.9%", "99.99%", "99.999%"));
+    }
+
+    private static String timelineChart(List<ScenarioStats.Interval> timeline) {
+        double maxY = timeline.stream().mapToDouble(ScenarioStats.Interval::p99Millis).max().orElse(1);
+        List<double[]> points = new ArrayList<>();
+        for (ScenarioStats.Interval interval : timeline) {
+            points.add(new double[]{(interval.second() - 1) / (double) Math.max(1, timeline.size() - 1), interval.p99Millis() / maxY});
+        }
+        return chart("p99 per second (ms), over " + timeline.size() + " s", points, maxY, List.of());
+    }
+
+    private static String chart(String title, List<double[]> points, double maxY, List<String> xLabels) {
+        int left = 50;
+        int bottom = CHART_HEIGHT - 30;
+        int plotWidth = CHART_WIDTH - left - 10;
+        int plotHeight = bottom - 25;
+        StringBuilder svg = new StringBuilder();
+        svg.append("<svg width=\"").append(CHART_WIDTH).append("\" height=\"").append(CHART_HEIGHT).append("\">")
+            .append("<text x=\"").append(left).append("\" y=\"15\" font-size=\"12\">").append(HtmlUtils.htmlEscape(title)).append("</text>")
+            .append("<line x1=\"").append(left).append("\" y1=\"").append(bottom).append("\" x2=\"").append(left + plotWidth)
+            .append("\" y2=\"").append(bottom).append("\" stroke=\"#999\"/>")
+            .append("<line x1=\"").append(left).append("\" y1=\"").append(bottom - plotHeight).append("\" x2=\"").append(left)
+            .append("\" y2=\"").append(bottom).append("\" stroke=\"#999\"/>")
+            .append(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%d\" font-size=\"10\" text-anchor=\"end\">%.1f</text>",
+                left - 4, bottom - plotHeight + 4, maxY))
+            .append(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%d\" font-size=\"10\" text-anchor=\"end\">0</text>", left - 4, bottom));
+        for (int i = 0; i < xLabels.size(); i++) {
+            svg.append(String.format(Locale.ROOT, "<text x=\"%.1f\" y=\"%d\" font-size=\"10\" text-anchor=\"middle\">%s</text>",
+                left + plotWidth * i / (double) (xLabels.size() - 1), bottom + 14, xLabels.get(i)));
+        }
+        svg.append("<polyline fill=\"none\" stroke=\"#1565c0\" stroke-width=\"1.5\" points=\"");
+        for (double[] point : points) {
+            svg.append(String.format(Locale.ROOT, "%.1f,%.1f ", left + point[0] * plotWidth, bottom - point[1] * plotHeight));
+        }
+        return svg.append("\"/></svg>").toString();
+    }
+}
@@ -0,0 +1,123 @@
+package com.qwervego.label.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives every scenario at its own constant arrival rate (an open model): arrival
+ * {@code k} is due at {@code start + k / rate} whether or not earlier requests have
+ * completed, and its latency is measured from that due time. A server that stalls
+ * therefore shows up as latency on every request it delayed, instead of silently
+ * lowering the offered load (coordinated omission).
+ * <p>
+ * Arrivals due during the warmup are sent but not recorded. Outstanding requests per
+ * scenario are capped at {@code max-in-flight}; arrivals beyond that are dropped and
+ * counted, since queuing them in the client would hide the overload.
+ */
+final class OpenModelRunner {
+    private static final Logger logger = LoggerFactory.getLogger(OpenModelRunner.class);
+    private static final long SAMPLE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int PROGRESS_EVERY_SECONDS = 10;
+
+    private final HttpClient client;
+    private final LoadTestOptions options;
+
+    OpenModelRunner(HttpClient client, LoadTestOptions options) {
+        this.client = client;
+        this.options = options;
+    }
+
+    List<ScenarioStats> run(List<Scenario> scenarios) throws InterruptedException {
+        List<ScenarioStats> stats = scenarios.stream().map(ScenarioStats::new).toList();
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        long measureStart = start + options.warmup().toNanos();
+        long end = measureStart + options.duration().toNanos();
+        logger.info("Warming up for {}, then measuring for {}: {}", options.warmup(), options.duration(), options.rates());
+
+        List<Thread> dispatchers = new ArrayList<>();
+        for (ScenarioStats scenario : stats) {
+            dispatchers.add(Thread.ofPlatform().name("loadtest-" + scenario.scenario().name())
+                .start(() -> dispatch(scenario, start, measureStart, end)));
+        }
+
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("loadtest-sampler").daemon(true).factory());
+        long[] second = {0};
+        sampler.scheduleAtFixedRate(() -> {
+            second[0]++;
+            for (ScenarioStats scenario : stats) {
+                ScenarioStats.Interval interval = scenario.sample(second[0]);
+                if (second[0] % PROGRESS_EVERY_SECONDS == 0) {
+                    logger.info("{}s {}: {} req/s, p50 {} ms, p99 {} ms, {} in flight", second[0], scenario.scenario().name(),
+                        interval.requests(), interval.p50Millis(), interval.p99Millis(), scenario.inFlight().get());
+                }
+            }
+        }, measureStart - System.nanoTime() + SAMPLE_INTERVAL_NANOS, SAMPLE_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+
+        for (Thread dispatcher : dispatchers) {
+            dispatcher.join();
+        }
+        sampler.shutdown();
+        sampler.awaitTermination(SAMPLE_INTERVAL_NANOS * 2, TimeUnit.NANOSECONDS);
+
+        // Requests still outstanding were due inside the measured window, so wait for them
+        long drainDeadline = System.nanoTime() + options.requestTimeout().toNanos() + TimeUnit.SECONDS.toNanos(1);
+        while (stats.stream().anyMatch(scenario -> scenario.inFlight().get() > 0) && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        for (ScenarioStats scenario : stats) {
+            scenario.sample(second[0] + 1);
+        }
+        return stats;
+    }
+
+    private void dispatch(ScenarioStats stats, long start, long measureStart, long end) {
+        Scenario scenario = stats.scenario();
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / scenario.rate();
+        for (long arrival = 0; ; arrival++) {
+            long due = start + (long) (arrival * intervalNanos);
+            if (due >= end) {
+                return;
+            }
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            boolean measured = due >= measureStart;
+            if (stats.inFlight().get() >= options.maxInFlight()) {
+                if (measured) {
+                    stats.drop();
+                }
+                continue;
+            }
+
+            HttpRequest request = scenario.requests().get();
+            stats.inFlight().incrementAndGet();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                long latency = System.nanoTime() - due;
+                stats.inFlight().decrementAndGet();
+                if (!measured) {
+                    return;
+                }
+                if (error == null) {
+                    stats.record(latency, Integer.toString(response.statusCode()), scenario.expected().test(response.statusCode()));
+                } else {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    stats.record(latency, cause instanceof HttpTimeoutException ? "timeout" : "error", false);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.qwervego.label.loadtest;
+
+import java.net.http.HttpRequest;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+/**
+ * One endpoint driven at a constant arrival rate. {@code requests} is called on the
+ * scenario's dispatcher thread for every arrival; responses whose status fails
+ * {@code expected} are reported as unexpected.
+ */
+record Scenario(String name, String method, String path, double rate,
+                Supplier<HttpRequest> requests, IntPredicate expected) {
+}
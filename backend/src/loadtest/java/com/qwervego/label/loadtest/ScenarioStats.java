@@ -0,0 +1,100 @@
+package com.qwervego.label.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and outcomes of one scenario during the measured part of a run. Latency is
+ * recorded in microseconds from each request's intended send time, so time spent
+ * queued behind a slow server counts against it.
+ */
+final class ScenarioStats {
+    static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(5);
+
+    record Interval(long second, long requests, double p50Millis, double p99Millis, double maxMillis) {
+    }
+
+    private final Scenario scenario;
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_MICROS, 3);
+    private final Histogram total = new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+    private final List<Interval> timeline = new ArrayList<>();
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+    private final LongAdder unexpected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    ScenarioStats(Scenario scenario) {
+        this.scenario = scenario;
+    }
+
+    Scenario scenario() {
+        return scenario;
+    }
+
+    AtomicInteger inFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @param outcome the HTTP status, or {@code timeout}/{@code error} when there was no response
+     */
+    void record(long latencyNanos, String outcome, boolean expected) {
+        recorder.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), HIGHEST_TRACKABLE_MICROS));
+        outcomes.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+        if (!expected) {
+            unexpected.increment();
+        }
+    }
+
+    // Arrivals not sent because max-in-flight requests were already outstanding
+    void drop() {
+        dropped.increment();
+    }
+
+    /**
+     * Moves what was recorded since the last call into the totals and the timeline.
+     */
+    synchronized Interval sample(long second) {
+        Histogram interval = recorder.getIntervalHistogram();
+        total.add(interval);
+        Interval point = new Interval(second, interval.getTotalCount(),
+            millis(interval.getValueAtPercentile(50)), millis(interval.getValueAtPercentile(99)), millis(interval.getMaxValue()));
+        timeline.add(point);
+        return point;
+    }
+
+    synchronized Histogram total() {
+        return total.copy();
+    }
+
+    synchronized List<Interval> timeline() {
+        return List.copyOf(timeline);
+    }
+
+    Map<String, Long> outcomes() {
+        Map<String, Long> counts = new TreeMap<>();
+        outcomes.forEach((outcome, count) -> counts.put(outcome, count.sum()));
+        return counts;
+    }
+
+    long unexpected() {
+        return unexpected.sum();
+    }
+
+    long dropped() {
+        return dropped.sum();
+    }
+
+    static double millis(double micros) {
+        return micros / 1000.0;
+    }
+}
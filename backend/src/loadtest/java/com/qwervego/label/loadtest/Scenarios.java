@@ -0,0 +1,140 @@
+package com.qwervego.label.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.qwervego.label.fake.InMemoryIdentityToolkit;
+import com.qwervego.label.fake.SyntheticDataGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds the requests for each scenario from the seeded dataset, so every request
+ * addresses documents and accounts that exist:
+ * <ul>
+ *     <li>{@code scan}: {@code GET /api/qr} for a uniformly random seeded tag</li>
+ *     <li>{@code batch}: {@code POST /api/qr/batch} with {@code batch-size} random tags</li>
+ *     <li>{@code list}: the first {@code GET /api/qr/all} keyset page, unfiltered or by active state</li>
+ *     <li>{@code add}: {@code POST /api/qr/add} activating each inactive seeded tag once, as a seeded user</li>
+ *     <li>{@code signin}: {@code POST /api/user/signin} for a seeded user</li>
+ * </ul>
+ * Requests from a pool of {@code tokens} users carry ID tokens signed by the fake
+ * Firebase Auth, as the client SDK would after phone sign-in.
+ */
+final class Scenarios {
+    private static final Logger logger = LoggerFactory.getLogger(Scenarios.class);
+
+    private final URI baseUri;
+    private final SyntheticDataGenerator data;
+    private final ObjectMapper objectMapper;
+    private final LoadTestOptions options;
+    private final List<String> idTokens = new ArrayList<>();
+    private final AtomicLong nextActivation = new AtomicLong();
+
+    Scenarios(URI baseUri, SyntheticDataGenerator data, InMemoryIdentityToolkit identityToolkit,
+              ObjectMapper objectMapper, LoadTestOptions options) {
+        this.baseUri = baseUri;
+        this.data = data;
+        this.objectMapper = objectMapper;
+        this.options = options;
+        for (int i = 0; i < options.tokens(); i++) {
+            idTokens.add(identityToolkit.signInWithPhoneNumber(data.userPhoneNumber(i)));
+        }
+    }
+
+    List<Scenario> create() {
+        List<Scenario> scenarios = new ArrayList<>();
+        options.rates().forEach((name, rate) -> scenarios.add(switch (name) {
+            case "scan" -> new Scenario(name, "GET", "/api/qr", rate,
+                () -> get("/api/qr?id=" + randomQrId()), status -> status == 200);
+            case "batch" -> new Scenario(name, "POST", "/api/qr/batch", rate, this::batch, status -> status == 200);
+            case "list" -> new Scenario(name, "GET", "/api/qr/all", rate, this::list, status -> status == 200);
+            case "add" -> new Scenario(name, "POST", "/api/qr/add", rate, this::add, status -> status == 200);
+            case "signin" -> new Scenario(name, "POST", "/api/user/signin", rate, this::signIn, status -> status == 200);
+            default -> throw new IllegalArgumentException("Unknown scenario " + name);
+        }));
+        return scenarios;
+    }
+
+    private HttpRequest batch() {
+        List<String> ids = new ArrayList<>(options.batchSize());
+        for (int i = 0; i < options.batchSize(); i++) {
+            ids.add(randomQrId());
+        }
+        return post("/api/qr/batch", Map.of("ids", ids), null);
+    }
+
+    private HttpRequest list() {
+        String path = "/api/qr/all?pageToken=&size=" + options.pageSize();
+        return switch (ThreadLocalRandom.current().nextInt(3)) {
+            case 0 -> get(path + "&active=true");
+            case 1 -> get(path + "&active=false");
+            default -> get(path);
+        };
+    }
+
+    private HttpRequest add() {
+        int user = ThreadLocalRandom.current().nextInt(idTokens.size());
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("id", nextInactiveQrId());
+        body.put("name", "Load Test " + user);
+        body.put("email", "loadtest" + user + "@example.com");
+        body.put("address", user + " Load Test Road");
+        body.put("phoneNumber", data.userPhoneNumber(user));
+        return post("/api/qr/add", body, idTokens.get(user));
+    }
+
+    private HttpRequest signIn() {
+        int user = ThreadLocalRandom.current().nextInt(idTokens.size());
+        return post("/api/user/signin", Map.of("idToken", idTokens.get(user), "phoneNumber", data.userPhoneNumber(user)), null);
+    }
+
+    private String randomQrId() {
+        return data.qrId(ThreadLocalRandom.current().nextLong(data.plan().qrs()));
+    }
+
+    // Once every inactive tag has been activated, activations repeat and answer 409
+    private String nextInactiveQrId() {
+        long qrs = data.plan().qrs();
+        for (long i = nextActivation.getAndIncrement(); i < qrs; i = nextActivation.getAndIncrement()) {
+            if (!data.isActive(i)) {
+                return data.qrId(i);
+            }
+        }
+        if (nextActivation.get() == qrs + 1) {
+            logger.warn("Every seeded inactive tag has been activated; further activations will conflict");
+        }
+        return randomQrId();
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path))
+            .timeout(options.requestTimeout())
+            .header("Accept", "application/json")
+            .GET()
+            .build();
+    }
+
+    private HttpRequest post(String path, Object body, String idToken) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(baseUri.resolve(path))
+            .timeout(options.requestTimeout())
+            .header("Accept", "application/json")
+            .header("Content-Type", "application/json");
+        if (idToken != null) {
+            request.header("Authorization", "Bearer " + idToken);
+        }
+        try {
+            return request.POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body))).build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize request body", e);
+        }
+    }
+}
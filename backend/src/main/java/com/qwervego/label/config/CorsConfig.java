@@ -32,6 +32,8 @@ public class CorsConfig {
         ));
         config.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS"));
         config.setAllowedHeaders(List.of("*"));
+        // Lets browser clients read the ETag they send back as If-Match on /api/qr/update
+        config.setExposedHeaders(List.of("ETag"));
         config.setAllowCredentials(true);
         config.setMaxAge(3600L);
 
@@ -55,6 +57,7 @@ public class CorsConfig {
                     )
                     .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                     .allowedHeaders("*")
+                    .exposedHeaders("ETag")
                     .allowCredentials(true)
                     .maxAge(3600);
         }
@@ -0,0 +1,27 @@
+package com.qwervego.label.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class ExecutionConfig {
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionConfig.class);
+
+    // Background work that blocks on Firestore (cache refreshes, ID filter rebuilds).
+    // Follows the same mode as the request threads.
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService blockingCallExecutor(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        if (virtualThreads) {
+            logger.info("Running blocking Firestore/Firebase calls on virtual threads");
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("blocking-call-", 0).factory());
+        }
+        logger.info("Running blocking Firestore/Firebase calls on a platform thread pool");
+        return Executors.newCachedThreadPool(Thread.ofPlatform().name("blocking-call-", 0).daemon(true).factory());
+    }
+}
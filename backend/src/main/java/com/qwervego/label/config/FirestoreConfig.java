@@ -11,6 +11,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -19,6 +20,7 @@ import java.io.FileNotFoundException;
 import java.util.Base64;
 
 @Configuration
+@Profile("!fake-firebase")
 public class FirestoreConfig {
     private final Logger logger = LoggerFactory.getLogger(FirestoreConfig.class);
 
@@ -0,0 +1,136 @@
+package com.qwervego.label.config;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.BulkWriter;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.WriteResult;
+import com.qwervego.label.repository.LegacyPhoneLookup;
+import com.qwervego.label.util.PhoneNumbers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * One-time backfill of the canonical {@code phoneE164} field on existing {@code qrs}
+ * and {@code users} documents. Enable with {@code phone.backfill.enabled=true} for one
+ * deployment; it is idempotent and only writes documents whose value is missing or
+ * stale. Runs in the background so startup is not held up. When every write in both
+ * collections succeeds it marks the backfill complete in {@link LegacyPhoneLookup}, which
+ * ends the fallback to raw {@code phoneNumber} queries on all instances.
+ * <p>
+ * With the {@code embedded-store} profile only {@code users} is backfilled: tags are
+ * not read from the Firestore {@code qrs} collection, and the embedded store indexes
+ * the canonical number itself.
+ */
+@Component
+@ConditionalOnProperty(name = "phone.backfill.enabled", havingValue = "true")
+public class PhoneNumberBackfill implements CommandLineRunner {
+    private static final Logger logger = LoggerFactory.getLogger(PhoneNumberBackfill.class);
+    private static final int PAGE_SIZE = 500;
+
+    private final Firestore firestore;
+    private final ExecutorService blockingCallExecutor;
+    private final LegacyPhoneLookup legacyPhoneLookup;
+    private final List<String> collections;
+
+    public PhoneNumberBackfill(Firestore firestore, @Qualifier("blockingCallExecutor") ExecutorService blockingCallExecutor,
+                               LegacyPhoneLookup legacyPhoneLookup, Environment environment) {
+        this.firestore = firestore;
+        this.blockingCallExecutor = blockingCallExecutor;
+        this.legacyPhoneLookup = legacyPhoneLookup;
+        this.collections = environment.matchesProfiles("embedded-store") ? List.of("users") : List.of("qrs", "users");
+    }
+
+    @Override
+    public void run(String... args) {
+        CompletableFuture.runAsync(this::backfillAll, blockingCallExecutor);
+    }
+
+    private void backfillAll() {
+        Map<String, Long> updated = new LinkedHashMap<>();
+        for (String collection : collections) {
+            Long count = backfill(collection);
+            if (count == null) {
+                logger.warn("phoneE164 backfill is incomplete; run it again to stop the phoneNumber fallback");
+                return;
+            }
+            updated.put(collection, count);
+        }
+        try {
+            legacyPhoneLookup.markBackfilled(updated);
+            logger.info("phoneE164 backfill complete: {}", updated);
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Error recording phoneE164 backfill completion: {}", e.getMessage(), e);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Returns the number of documents updated, or null if anything failed
+    private Long backfill(String collection) {
+        logger.info("Backfilling phoneE164 in collection: {}", collection);
+        long scanned = 0;
+        List<ApiFuture<WriteResult>> writes = new ArrayList<>();
+        BulkWriter writer = firestore.bulkWriter();
+        try {
+            Query query = firestore.collection(collection)
+                .orderBy(FieldPath.documentId())
+                .select("phoneNumber", "phoneE164")
+                .limit(PAGE_SIZE);
+            DocumentSnapshot last = null;
+            QuerySnapshot page;
+            do {
+                page = (last == null ? query : query.startAfter(last)).get().get();
+                for (DocumentSnapshot document : page.getDocuments()) {
+                    scanned++;
+                    String canonical = PhoneNumbers.toE164(document.getString("phoneNumber"));
+                    if (!Objects.equals(canonical, document.getString("phoneE164"))) {
+                        writes.add(writer.update(document.getReference(), "phoneE164", canonical));
+                    }
+                    last = document;
+                }
+            } while (page.size() == PAGE_SIZE);
+            writer.close();
+        } catch (Exception e) {
+            logger.error("Error backfilling phoneE164 in {} after {} documents: {}", collection, scanned, e.getMessage(), e);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+
+        // close() waited for every write, so these are all settled
+        long updated = 0;
+        long failed = 0;
+        for (ApiFuture<WriteResult> write : writes) {
+            try {
+                write.get();
+                updated++;
+            } catch (InterruptedException | ExecutionException e) {
+                failed++;
+                logger.warn("phoneE164 update failed in {}: {}", collection, e.getMessage());
+            }
+        }
+        logger.info("Backfilled phoneE164 in {}: {} documents scanned, {} updated, {} failed", collection, scanned, updated, failed);
+        return failed == 0 ? updated : null;
+    }
+}
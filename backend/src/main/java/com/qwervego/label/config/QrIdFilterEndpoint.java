@@ -0,0 +1,33 @@
+package com.qwervego.label.config;
+
+import com.qwervego.label.repository.QrIdFilter;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+@Component
+@Profile("!embedded-store")
+@Endpoint(id = "qrfilter")
+public class QrIdFilterEndpoint {
+
+    private final QrIdFilter qrIdFilter;
+
+    public QrIdFilterEndpoint(QrIdFilter qrIdFilter) {
+        this.qrIdFilter = qrIdFilter;
+    }
+
+    @ReadOperation
+    public Map<String, Object> stats() {
+        return qrIdFilter.stats();
+    }
+
+    // POST /actuator/qrfilter rebuilds the filter from a fresh scan of the collection
+    @WriteOperation
+    public Map<String, Object> rebuild() {
+        return qrIdFilter.rebuild();
+    }
+}
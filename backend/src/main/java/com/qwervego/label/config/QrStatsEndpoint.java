@@ -0,0 +1,31 @@
+package com.qwervego.label.config;
+
+import com.qwervego.label.repository.QrStore;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+@Component
+@Endpoint(id = "qrstats")
+public class QrStatsEndpoint {
+
+    private final QrStore qrStore;
+
+    public QrStatsEndpoint(QrStore qrStore) {
+        this.qrStore = qrStore;
+    }
+
+    @ReadOperation
+    public Map<String, Object> stats() {
+        return qrStore.readStats();
+    }
+
+    // POST /actuator/qrstats recomputes the counters from the collection (e.g. to seed them once)
+    @WriteOperation
+    public Map<String, Object> rebuild() {
+        return qrStore.rebuildStats();
+    }
+}
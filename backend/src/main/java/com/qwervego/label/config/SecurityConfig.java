@@ -1,5 +1,7 @@
 package com.qwervego.label.config;
 
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -34,6 +36,9 @@ public class SecurityConfig {
                         .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
                 )
             .authorizeHttpRequests(auth -> auth
+                // count() aggregations and the actuator rebuilds scan the whole collection
+                .requestMatchers(SecurityConfig::isAggregateStats).hasAnyRole("ADMIN", "SUPERADMIN")
+                .requestMatchers("/actuator/qrfilter/**", "/actuator/qrstats/**").hasAnyRole("ADMIN", "SUPERADMIN")
                 .requestMatchers("/api/qr/**").permitAll()
                 .requestMatchers("/api/user/**").permitAll()
                 .requestMatchers("/api/admin/get-email/**").permitAll()
@@ -46,9 +51,14 @@ public class SecurityConfig {
         return http.build();
     }
 
+    private static boolean isAggregateStats(HttpServletRequest request) {
+        return request.getRequestURI().equals(request.getContextPath() + "/api/qr/stats")
+                && "aggregate".equals(request.getParameter("source"));
+    }
+
     @Bean
-    public BCryptPasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public BCryptPasswordEncoder passwordEncoder(@Value("${security.password.bcrypt-strength:10}") int strength) {
+        return new BCryptPasswordEncoder(strength);
     }
 
     @Bean
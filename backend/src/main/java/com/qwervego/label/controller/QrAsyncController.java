@@ -0,0 +1,210 @@
+package com.qwervego.label.controller;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import jakarta.validation.Valid;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ETag;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.BindingResult;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.qwervego.label.dto.ErrorResponse;
+import com.qwervego.label.dto.QrResponse;
+import com.qwervego.label.exception.InFlightLoadTimeoutException;
+import com.qwervego.label.exception.QrConflictException;
+import com.qwervego.label.model.Qr;
+import com.qwervego.label.repository.QrStore;
+import com.qwervego.label.service.FirebaseAuthService;
+import com.qwervego.label.service.QrService;
+import com.qwervego.label.service.ScanPayloadCache;
+import com.qwervego.label.util.CompletableFutures;
+import com.qwervego.label.util.PhoneNumbers;
+
+/**
+ * Non-blocking variants of the main {@link QrController} endpoints. Handlers return
+ * futures composed from Firestore and Firebase Auth {@code ApiFuture}s, so the request
+ * thread is released while those calls are in flight. Failures propagate through the
+ * futures and are mapped by {@code GlobalExceptionHandler} like synchronous ones; a
+ * response not ready within {@code qr.async.request-timeout} is answered with 503.
+ */
+@RestController
+@RequestMapping("/api/qr/async")
+public class QrAsyncController {
+
+    private static final Logger logger = LoggerFactory.getLogger(QrAsyncController.class);
+
+    private final QrStore qrRepository;
+    private final QrService qrService;
+    private final FirebaseAuthService firebaseAuthService;
+    private final ScanPayloadCache scanPayloadCache;
+    private final Duration requestTimeout;
+
+    @Autowired
+    public QrAsyncController(QrStore qrRepository, QrService qrService,
+                             FirebaseAuthService firebaseAuthService, ScanPayloadCache scanPayloadCache,
+                             @Value("${qr.async.request-timeout:15s}") Duration requestTimeout) {
+        this.qrRepository = qrRepository;
+        this.qrService = qrService;
+        this.firebaseAuthService = firebaseAuthService;
+        this.scanPayloadCache = scanPayloadCache;
+        this.requestTimeout = requestTimeout;
+    }
+
+    @GetMapping
+    public CompletableFuture<ResponseEntity<?>> getQrById(@RequestParam String id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        logger.info("Received async request for QR code with id: {}", id);
+        return bounded(qrRepository.findPublicByIdAsync(id)
+                .<ResponseEntity<?>>thenApply(qrOpt -> {
+                    if (qrOpt.isEmpty()) {
+                        logger.warn("QR code NOT found for id: {}", id);
+                        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                                .body(Map.of("notFound", true, "error", "QR code not found"));
+                    }
+
+                    Qr qr = qrOpt.get();
+                    String etag = ScanPayloadCache.etagFor(qr);
+                    if (etag == null) {
+                        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(ScanPayloadCache.toPayload(qr));
+                    }
+                    if (matches(ifNoneMatch, etag)) {
+                        logger.info("QR code not modified for id: {}", id);
+                        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache()).build();
+                    }
+                    if (qr.isActive()) {
+                        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache())
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .body(scanPayloadCache.bytesFor(qr, etag));
+                    }
+                    return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(ScanPayloadCache.toPayload(qr));
+                })
+                .exceptionally(e -> {
+                    rethrowTimeout(e);
+                    logger.error("Error fetching QR code for id {}: {}", id, e.getMessage(), e);
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .body(Map.of("error", "Failed to retrieve QR information"));
+                }));
+    }
+
+    @PostMapping("/batch")
+    public CompletableFuture<ResponseEntity<List<QrResponse>>> getQrBatch(@RequestBody Map<String, List<String>> request) {
+        List<String> ids = request.get("ids");
+        if (ids == null || ids.isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(Collections.emptyList()));
+        }
+
+        return bounded(qrRepository.findAllByIdAsync(ids)
+                .thenApply(qrList -> ResponseEntity.ok(qrList.stream()
+                        .map(QrController::toResponse)
+                        .collect(Collectors.toList()))));
+    }
+
+    @GetMapping("/all")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> getAllQRs(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "15") int size) {
+        return bounded(qrRepository.findAllAsync(PageRequest.of(page, size))
+                .thenApply(qrPage -> ResponseEntity.ok(QrController.toPageResponse(qrPage))));
+    }
+
+    @PostMapping("/add")
+    public CompletableFuture<ResponseEntity<Object>> addDetails(@Valid @RequestBody Qr qr, BindingResult result,
+            @RequestHeader(value = "Authorization", required = false) String authHeader) {
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new ErrorResponse("Phone authentication required. Please verify your phone number first.")));
+        }
+
+        return bounded(firebaseAuthService.verifyAsync(authHeader.substring(7))
+                .thenCompose(firebaseAuthService::getPhoneNumberAsync)
+                .handle((tokenPhone, error) -> {
+                    if (error != null) {
+                        logger.error("Firebase token verification failed", error);
+                        return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                                .body((Object) new ErrorResponse("Invalid or expired authentication token. Please verify your phone number again."));
+                    }
+                    String normalizedTokenPhone = PhoneNumbers.toE164(tokenPhone);
+                    if (normalizedTokenPhone == null || !normalizedTokenPhone.equals(PhoneNumbers.toE164(qr.getPhoneNumber()))) {
+                        logger.warn("Phone number mismatch - Token: {}, QR: {}", tokenPhone, qr.getPhoneNumber());
+                        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                                .body((Object) new ErrorResponse("Phone number verification failed. The verified phone number does not match the provided phone number."));
+                    }
+                    ErrorResponse validationError = qrService.validateQrData(qr, result);
+                    if (validationError != null) {
+                        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body((Object) validationError);
+                    }
+                    return null;
+                })
+                .thenCompose(rejection -> rejection != null
+                        ? CompletableFuture.completedFuture(rejection)
+                        : activate(qr)));
+    }
+
+    // Completes with a TimeoutException, answered with 503, if the response is not ready in time
+    private <T> CompletableFuture<T> bounded(CompletableFuture<T> response) {
+        return response.orTimeout(requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // For handlers that map failures to a response themselves: timeouts (e.g. a SingleFlight
+    // waiter giving up) must still reach GlobalExceptionHandler, which answers them with 503
+    private static void rethrowTimeout(Throwable e) {
+        Throwable cause = CompletableFutures.unwrap(e);
+        if (cause instanceof TimeoutException || cause instanceof InFlightLoadTimeoutException) {
+            throw new CompletionException(cause);
+        }
+    }
+
+    private CompletableFuture<ResponseEntity<Object>> activate(Qr qr) {
+        qr.setActivationDate(new Date());
+        qr.setActive(true);
+        qr.setPassword(null);
+
+        return qrRepository.activateAsync(qr)
+                .thenApply(savedQr -> ResponseEntity.ok((Object) savedQr))
+                .exceptionally(e -> {
+                    rethrowTimeout(e);
+                    if (CompletableFutures.unwrap(e) instanceof QrConflictException conflict) {
+                        logger.info("Activation of QR {} rejected: {}", qr.getId(), conflict.getMessage());
+                        return ResponseEntity.status(HttpStatus.CONFLICT)
+                                .body(new ErrorResponse(conflict.getMessage()));
+                    }
+                    logger.error("Error saving QR data for {}", qr.getId(), e);
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .body(new ErrorResponse("An error occurred while saving QR data."));
+                });
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        ETag current = ETag.create(etag);
+        return ETag.parse(ifNoneMatch).stream()
+                .anyMatch(candidate -> candidate.isWildcard() || candidate.compare(current, false));
+    }
+}
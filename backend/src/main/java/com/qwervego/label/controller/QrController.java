@@ -1,7 +1,10 @@
 package com.qwervego.label.controller;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -9,21 +12,28 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 import jakarta.validation.Valid;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -33,15 +43,28 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.qwervego.label.dto.ErrorResponse;
 import com.qwervego.label.dto.QrResponse;
+import com.qwervego.label.exception.InFlightLoadTimeoutException;
+import com.qwervego.label.exception.PasswordHashingUnavailableException;
+import com.qwervego.label.exception.QrConflictException;
 import com.qwervego.label.model.Qr;
-import com.qwervego.label.repository.FirestoreQrRepository;
+import com.qwervego.label.repository.KeysetPage;
+import com.qwervego.label.repository.QrListFilter;
+import com.qwervego.label.repository.QrStore;
+import com.qwervego.label.security.FirebasePrincipal;
+import com.qwervego.label.service.QrGenerationService;
 import com.qwervego.label.service.QrService;
+import com.qwervego.label.service.PasswordHasher;
+import com.qwervego.label.service.ScanPayloadCache;
+import com.qwervego.label.util.PhoneNumbers;
 import com.qwervego.label.service.FirebaseAuthService;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import com.google.cloud.firestore.Firestore;
 import com.google.cloud.firestore.FirestoreOptions;
@@ -51,27 +74,44 @@ import com.google.cloud.firestore.DocumentSnapshot;
 import com.google.cloud.firestore.QuerySnapshot;
 import com.google.cloud.firestore.QueryDocumentSnapshot;
 import com.google.firebase.auth.FirebaseAuthException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 @RestController
 @RequestMapping("/api/qr")
 public class QrController {
 
-    private final FirestoreQrRepository qrRepository;
+    private final QrStore qrRepository;
+    private final QrGenerationService qrGenerationService;
+    private final int maxGenerateQuantity;
+    private final int adminMaxGenerateQuantity;
     private final QrService qrService;
     private final FirebaseAuthService firebaseAuthService;
-    private final BCryptPasswordEncoder passwordEncoder;
+    private final PasswordHasher passwordHasher;
+    private final ScanPayloadCache scanPayloadCache;
+    private final ObjectMapper objectMapper;
     private static final Logger logger = LoggerFactory.getLogger(QrController.class);
+    private static final String NDJSON = "application/x-ndjson";
+    private static final int MAX_PAGE_SIZE = 100;
 
     private final Firestore firestore;
 
     @Autowired
-    public QrController(FirestoreQrRepository qrRepository, QrService qrService, 
+    public QrController(QrStore qrRepository, QrService qrService,
+                       QrGenerationService qrGenerationService,
+                       @Value("${qr.generate.max-quantity:100}") int maxGenerateQuantity,
+                       @Value("${qr.generate.admin-max-quantity:50000}") int adminMaxGenerateQuantity,
                        FirebaseAuthService firebaseAuthService,
-                       BCryptPasswordEncoder passwordEncoder, Firestore firestore) {
+                       PasswordHasher passwordHasher, ScanPayloadCache scanPayloadCache,
+                       ObjectMapper objectMapper, Firestore firestore) {
         this.qrRepository = qrRepository;
+        this.qrGenerationService = qrGenerationService;
+        this.maxGenerateQuantity = maxGenerateQuantity;
+        this.adminMaxGenerateQuantity = adminMaxGenerateQuantity;
         this.qrService = qrService;
         this.firebaseAuthService = firebaseAuthService;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordHasher = passwordHasher;
+        this.scanPayloadCache = scanPayloadCache;
+        this.objectMapper = objectMapper;
         this.firestore = firestore;
 
         // Log the project ID (database)
@@ -80,24 +120,26 @@ public class QrController {
     }
 
     @PostMapping("/add")
-    public ResponseEntity<Object> addDetails(@Valid @RequestBody Qr qr, BindingResult result, @RequestHeader(value = "Authorization", required = false) String authHeader) {
-        Optional<Qr> existingQrOpt = qrRepository.findById(qr.getId());
-
+    public ResponseEntity<Object> addDetails(@Valid @RequestBody Qr qr, BindingResult result, @RequestHeader(value = "Authorization", required = false) String authHeader,
+                                             @AuthenticationPrincipal FirebasePrincipal principal) {
         // Firebase phone authentication is now required for all registrations
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(new ErrorResponse("Phone authentication required. Please verify your phone number first."));
         }
 
-        String idToken = authHeader.substring(7);
+        // The token is verified by FirebaseAuthenticationFilter when the principal is resolved
+        if (principal == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new ErrorResponse("Invalid or expired authentication token. Please verify your phone number again."));
+        }
+
         try {
-            // Verify the Firebase ID token
-            String uid = firebaseAuthService.verifyIdToken(idToken);
-            String tokenPhone = firebaseAuthService.getPhoneNumber(uid);
+            String tokenPhone = firebaseAuthService.getPhoneNumber(principal);
 
             // Normalize both phone numbers for comparison
-            String normalizedTokenPhone = normalizePhoneNumber(tokenPhone);
-            String normalizedQrPhone = normalizePhoneNumber(qr.getPhoneNumber());
+            String normalizedTokenPhone = PhoneNumbers.toE164(tokenPhone);
+            String normalizedQrPhone = PhoneNumbers.toE164(qr.getPhoneNumber());
 
             if (normalizedTokenPhone == null || !normalizedTokenPhone.equals(normalizedQrPhone)) {
                 logger.warn("Phone number mismatch - Token: {}, QR: {}, Normalized Token: {}, Normalized QR: {}", 
@@ -118,32 +160,20 @@ public class QrController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(validationError);
         }
 
-        if (existingQrOpt.isPresent()) {
-            Qr existingQr = existingQrOpt.get();
-
-            if (existingQr.isActive()) {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                        .body(new ErrorResponse("Tag already active, invalid request"));
-            }
-
-            if (existingQr.getCreatedDate() != null) {
-                qr.setCreatedDate(existingQr.getCreatedDate());
-            } else {
-                qr.setCreatedDate(new Date());
-            }
-        } else {
-            qr.setCreatedDate(new Date());
-        }
-
         qr.setActivationDate(new Date());
         qr.setActive(true);
 
         // No password required for phone-only authentication
         qr.setPassword(null);
 
+        // The repository checks the tag is still inactive atomically with the write,
+        // so concurrent registrations of one tag cannot both succeed
         try {
-            Qr savedQr = qrRepository.save(qr);
+            Qr savedQr = qrRepository.activate(qr);
             return ResponseEntity.ok(savedQr);
+        } catch (QrConflictException e) {
+            logger.info("Activation of QR {} rejected: {}", qr.getId(), e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new ErrorResponse(e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(new ErrorResponse("An error occurred while saving QR data."));
@@ -151,26 +181,17 @@ public class QrController {
     }
 
     @PutMapping("/update")
-    public ResponseEntity<Object> updateQR(@RequestBody Map<String, Object> updates) {
-        return qrService.processQrUpdate(updates);
+    public ResponseEntity<Object> updateQR(@RequestBody Map<String, Object> updates,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return qrService.processQrUpdate(updates, ifMatch);
     }
 
     @GetMapping
-    public ResponseEntity<?> getQrById(@RequestParam String id) {
-        // Log all collection names
-        try {
-            String collections = 
-                StreamSupport.stream(firestore.listCollections().spliterator(), false)
-                    .map(c -> c.getId())
-                    .collect(Collectors.joining(", "));
-            logger.info("Available Firestore collections: {}", collections);
-        } catch (Exception e) {
-            logger.error("Failed to list Firestore collections: {}", e.getMessage(), e);
-        }
-
+    public ResponseEntity<?> getQrById(@RequestParam String id, ServletWebRequest webRequest,
+                                       HttpServletResponse servletResponse) {
         logger.info("Received request for QR code with id: {}", id);
         try {
-            Optional<Qr> qrOpt = qrRepository.findById(id);
+            Optional<Qr> qrOpt = qrRepository.findPublicById(id);
 
             if (qrOpt.isEmpty()) {
                 logger.warn("QR code NOT found for id: {}", id);
@@ -179,19 +200,30 @@ public class QrController {
             }
 
             Qr qr = qrOpt.get();
-            
-            Map<String, Object> response = new HashMap<>();
-            response.put("id", qr.getId());
-            response.put("isActive", qr.isActive());
-            response.put("name", qr.getName());
-            response.put("email", qr.getEmail());
-            response.put("address", qr.getAddress());
-            response.put("phoneNumber", qr.getPhoneNumber());
-            response.put("createdDate", qr.getCreatedDate());
-            response.put("activationDate", qr.getActivationDate());
+            String etag = ScanPayloadCache.etagFor(qr);
+            if (etag == null) {
+                logger.info("QR code found for id: {}", id);
+                return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(ScanPayloadCache.toPayload(qr));
+            }
+
+            // Let clients revalidate with If-None-Match instead of re-downloading the payload
+            servletResponse.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+            if (webRequest.checkNotModified(etag)) {
+                logger.info("QR code not modified for id: {}", id);
+                return null;
+            }
+            if (qr.isActive()) {
+                scanPayloadCache.writeTo(qr, etag, servletResponse);
+                logger.info("QR code found for id: {}", id);
+                return null;
+            }
 
             logger.info("QR code found for id: {}", id);
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok().eTag(etag).body(ScanPayloadCache.toPayload(qr));
+        } catch (InFlightLoadTimeoutException e) {
+            logger.warn("Timed out fetching QR code for id {}: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Map.of("error", "The request timed out. Please try again."));
         } catch (Exception e) {
             logger.error("Error fetching QR code for id {}: {}", id, e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -199,23 +231,57 @@ public class QrController {
         }
     }
 
+    /**
+     * Lists QR codes. Passing {@code pageToken} (empty for the first page) or any filter
+     * selects cursor pagination: the response carries {@code nextPageToken} instead of
+     * page totals. Without them the legacy {@code page} parameter is used.
+     */
     @GetMapping("/all")
     public ResponseEntity<Map<String, Object>> getAllQRs(
-            @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "15") int size) {
+            @RequestParam(required = false) Integer page,
+            @RequestParam(defaultValue = "15") int size,
+            @RequestParam(required = false) String pageToken,
+            @RequestParam(required = false) Boolean active,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate createdFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate createdTo) {
+
+        boolean keyset = pageToken != null || active != null || createdFrom != null || createdTo != null;
+        if (!keyset) {
+            Pageable paging = PageRequest.of(page != null ? page : 0, size);
+            Page<Qr> qrPage = qrRepository.findAll(paging);
+            return ResponseEntity.ok(toPageResponse(qrPage));
+        }
+        if (page != null && page > 0) {
+            return ResponseEntity.badRequest().body(Map.of("error", "page cannot be combined with pageToken or filters"));
+        }
 
-        Pageable paging = PageRequest.of(page, size);
-        Page<Qr> qrPage = qrRepository.findAll(paging);
+        // Dates are whole UTC days; createdTo is inclusive
+        QrListFilter filter = new QrListFilter(active,
+                createdFrom == null ? null : Date.from(createdFrom.atStartOfDay(ZoneOffset.UTC).toInstant()),
+                createdTo == null ? null : Date.from(createdTo.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant()));
+        KeysetPage<Qr> qrPage = qrRepository.findPage(filter, pageToken, Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
 
+        Map<String, Object> response = new HashMap<>();
+        response.put("qrCodes", qrPage.items().stream().map(QrController::toSummary).collect(Collectors.toList()));
+        response.put("nextPageToken", qrPage.nextPageToken());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * QR counts from the sharded stats documents (constant cost), or with
+     * {@code source=aggregate} from exact count() aggregations over the collection.
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getStats(@RequestParam(defaultValue = "shards") String source) {
+        if (source.equals("aggregate")) {
+            return ResponseEntity.ok(qrRepository.countStats());
+        }
+        return ResponseEntity.ok(qrRepository.readStats());
+    }
+
+    static Map<String, Object> toPageResponse(Page<Qr> qrPage) {
         List<QrResponse> responseList = qrPage.getContent().stream()
-                .map(qr -> {
-                    QrResponse response = new QrResponse();
-                    response.setId(qr.getId());
-                    response.setActive(qr.isActive());
-                    response.setCreatedDate(qr.getCreatedDate());
-                    response.setActivationDate(qr.getActivationDate());
-                    return response;
-                })
+                .map(QrController::toSummary)
                 .collect(Collectors.toList());
 
         Map<String, Object> response = new HashMap<>();
@@ -223,40 +289,59 @@ public class QrController {
         response.put("currentPage", qrPage.getNumber());
         response.put("totalItems", qrPage.getTotalElements());
         response.put("totalPages", qrPage.getTotalPages());
-
-        return ResponseEntity.ok(response);
+        return response;
     }
 
     @PostMapping("/generate")
-    public ResponseEntity<Map<String, Object>> generateQRCodeBatch(@RequestBody Map<String, Integer> request) {
+    public ResponseEntity<Map<String, Object>> generateQRCodeBatch(@RequestBody Map<String, Integer> request,
+                                                                   @AuthenticationPrincipal FirebasePrincipal principal) {
         Integer quantity = request.get("quantity");
-        if (quantity == null || quantity <= 0 || quantity > 100) {
+        if (quantity == null || quantity <= 0 || quantity > maxGenerateQuantity(principal)) {
             return ResponseEntity.badRequest().body(Collections.singletonMap("success", false));
         }
 
         List<String> generatedIds = new ArrayList<>();
-        LocalDate today = LocalDate.now();
-        String datePrefix = today.format(DateTimeFormatter.BASIC_ISO_DATE);
+        QrGenerationService.Report report = qrGenerationService.generate(quantity, generatedIds::add);
 
-        for (int i = 0; i < quantity; i++) {
-            String randomPart = generateRandomId(6);
-            String newId = datePrefix + "-" + randomPart;
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", report.failed() == 0);
+        response.put("qrIds", generatedIds);
+        response.put("report", report);
 
-            Qr qr = new Qr();
-            qr.setId(newId);
-            qr.setActive(false);
-            qr.setPassword("");
-            qr.setCreatedDate(new Date());
+        return ResponseEntity.ok(response);
+    }
 
-            qrRepository.save(qr);
-            generatedIds.add(newId);
+    /**
+     * Streaming variant of {@code /generate} for large print runs ({@code Accept: application/x-ndjson}).
+     * Writes {@code {"id": ...}} for each tag as soon as its write is acknowledged,
+     * then a final {@code {"report": ...}} line with counts and sustained writes/second.
+     */
+    @PostMapping(value = "/generate", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamQRCodeBatch(@RequestBody Map<String, Integer> request,
+                                                                   @AuthenticationPrincipal FirebasePrincipal principal) {
+        Integer quantity = request.get("quantity");
+        if (quantity == null || quantity <= 0 || quantity > maxGenerateQuantity(principal)) {
+            return ResponseEntity.badRequest().build();
         }
 
-        Map<String, Object> response = new HashMap<>();
-        response.put("success", true);
-        response.put("qrIds", generatedIds);
+        StreamingResponseBody body = out -> {
+            QrGenerationService.Report report = qrGenerationService.generate(quantity, id -> {
+                try {
+                    writeLine(out, Map.of("id", id));
+                    out.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writeLine(out, Map.of("report", report));
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
 
-        return ResponseEntity.ok(response);
+    // /generate is public, so only admins may create print runs beyond the small public batch
+    private int maxGenerateQuantity(FirebasePrincipal principal) {
+        boolean admin = principal != null && (principal.role().equals("ADMIN") || principal.role().equals("SUPERADMIN"));
+        return admin ? adminMaxGenerateQuantity : maxGenerateQuantity;
     }
 
     @PostMapping("/batch")
@@ -268,34 +353,83 @@ public class QrController {
 
         List<Qr> qrList = qrRepository.findAllById(ids);
         List<QrResponse> responseList = qrList.stream()
-                .map(qr -> new QrResponse(
-                        qr.getId(),
-                        qr.isActive(),
-                        qr.getName(),
-                        qr.getEmail(),
-                        qr.getAddress(),
-                        qr.getPhoneNumber(),
-                        qr.getCreatedDate(),
-                        qr.getActivationDate()))
+                .map(QrController::toResponse)
                 .collect(Collectors.toList());
 
         return ResponseEntity.ok(responseList);
     }
 
-    private String generateRandomId(int length) {
-        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
-        Random random = new Random();
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < length; i++) {
-            sb.append(chars.charAt(random.nextInt(chars.length())));
+    /**
+     * Streaming variant of {@code /batch} for large ID lists ({@code Accept: application/x-ndjson}).
+     * Writes one JSON object per line as each chunk of lookups completes, so lines arrive
+     * in completion order rather than request order; IDs with no document are written as
+     * {@code {"id": ..., "notFound": true}}.
+     */
+    @PostMapping(value = "/batch", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamQrBatch(@RequestBody Map<String, List<String>> request) {
+        List<String> ids = request.get("ids");
+        if (ids == null || ids.isEmpty()) {
+            return ResponseEntity.badRequest().build();
         }
-        return sb.toString();
+
+        List<CompletableFuture<Map<String, Optional<Qr>>>> chunks = qrRepository.findPublicByIdChunks(ids);
+        BlockingQueue<CompletableFuture<Map<String, Optional<Qr>>>> completed = new LinkedBlockingQueue<>();
+        chunks.forEach(chunk -> chunk.whenComplete((result, error) -> completed.add(chunk)));
+
+        StreamingResponseBody body = out -> {
+            for (int i = 0; i < chunks.size(); i++) {
+                Map<String, Optional<Qr>> chunk;
+                try {
+                    chunk = completed.take().join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (CompletionException e) {
+                    logger.error("Error fetching a chunk of the QR batch: {}", e.getMessage(), e);
+                    writeLine(out, Map.of("error", "Failed to retrieve some QR codes"));
+                    continue;
+                }
+                for (Map.Entry<String, Optional<Qr>> entry : chunk.entrySet()) {
+                    writeLine(out, entry.getValue().<Object>map(QrController::toResponse)
+                            .orElseGet(() -> Map.of("id", entry.getKey(), "notFound", true)));
+                }
+                out.flush();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    private void writeLine(OutputStream out, Object value) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(value));
+        out.write('\n');
+    }
+
+    private static QrResponse toSummary(Qr qr) {
+        QrResponse response = new QrResponse();
+        response.setId(qr.getId());
+        response.setActive(qr.isActive());
+        response.setCreatedDate(qr.getCreatedDate());
+        response.setActivationDate(qr.getActivationDate());
+        return response;
+    }
+
+    static QrResponse toResponse(Qr qr) {
+        return new QrResponse(
+                qr.getId(),
+                qr.isActive(),
+                qr.getName(),
+                qr.getEmail(),
+                qr.getAddress(),
+                qr.getPhoneNumber(),
+                qr.getCreatedDate(),
+                qr.getActivationDate());
     }
 
     // Email-based password reset endpoint removed - using phone-only authentication via Firebase
 
     @PostMapping("/reset-phone")
-    public ResponseEntity<Map<String, Object>> resetPasswordByPhone(@RequestBody Map<String, String> request, @RequestHeader("Authorization") String authHeader) {
+    public ResponseEntity<Map<String, Object>> resetPasswordByPhone(@RequestBody Map<String, String> request, @RequestHeader("Authorization") String authHeader,
+                                                                    @AuthenticationPrincipal FirebasePrincipal principal) {
         String phoneNumber = request.get("phoneNumber");
         String qrId = request.get("qrId");
         String newPassword = request.get("newPassword");
@@ -303,19 +437,21 @@ public class QrController {
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("success", false, "message", "Missing auth token"));
         }
-        String idToken = authHeader.substring(7);
 
         if (phoneNumber == null || phoneNumber.isBlank() || newPassword == null || newPassword.isBlank() || qrId == null || qrId.isBlank()) {
             return ResponseEntity.badRequest().body(Map.of("success", false, "message", "phoneNumber, qrId and newPassword are required"));
         }
 
+        if (principal == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("success", false, "message", "Invalid token"));
+        }
+
         try {
-            String uid = firebaseAuthService.verifyIdToken(idToken);
-            String tokenPhone = firebaseAuthService.getPhoneNumber(uid);
+            String tokenPhone = firebaseAuthService.getPhoneNumber(principal);
 
             // Normalize phone numbers for comparison in reset functionality
-            String normalizedTokenPhone = normalizePhoneNumber(tokenPhone);
-            String normalizedRequestPhone = normalizePhoneNumber(phoneNumber);
+            String normalizedTokenPhone = PhoneNumbers.toE164(tokenPhone);
+            String normalizedRequestPhone = PhoneNumbers.toE164(phoneNumber);
             
             if (normalizedTokenPhone == null || !normalizedTokenPhone.equals(normalizedRequestPhone)) {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("success", false, "message", "Phone number mismatch"));
@@ -327,18 +463,22 @@ public class QrController {
             }
 
             Qr qr = qrOpt.get();
-            String normalizedQrPhone = normalizePhoneNumber(qr.getPhoneNumber());
+            String normalizedQrPhone = PhoneNumbers.toE164(qr.getPhoneNumber());
             if (!normalizedRequestPhone.equals(normalizedQrPhone)) {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("success", false, "message", "Phone number does not match QR record"));
             }
 
-            qr.setPassword(passwordEncoder.encode(newPassword));
+            qr.setPassword(passwordHasher.encode(newPassword));
             qrRepository.save(qr);
 
             return ResponseEntity.ok(Map.of("success", true, "message", "Password reset successfully."));
         } catch (FirebaseAuthException e) {
             logger.error("Firebase token verification failed", e);
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("success", false, "message", "Invalid token"));
+        } catch (PasswordHashingUnavailableException ex) {
+            logger.warn("Password reset rejected: {}", ex.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(Map.of("success", false, "message", ex.getMessage()));
         } catch (Exception ex) {
             logger.error("Error resetting password by phone", ex);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("success", false, "message", "Server error"));
@@ -367,25 +507,4 @@ public class QrController {
             return ResponseEntity.status(500).body("Error fetching documents.");
         }
     }
-
-    /**
-     * Normalizes phone numbers for comparison by:
-     * 1. Removing all non-digit characters
-     * 2. Handling different country code formats
-     * 3. Ensuring consistent format for comparison
-     */
-    private String normalizePhoneNumber(String phoneNumber) {
-        if (phoneNumber == null || phoneNumber.trim().isEmpty()) {
-            return null;
-        }
-        
-        // Remove all non-digit characters
-        String digitsOnly = phoneNumber.replaceAll("[^0-9]", "");
-        
-        // Handle common country code variations
-        // If starts with 1 (US/Canada), keep as is
-        // If starts with other country codes, keep as is
-        // This maintains the full international format for comparison
-        return digitsOnly;
-    }
 }
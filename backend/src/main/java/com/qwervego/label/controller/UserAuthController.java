@@ -1,10 +1,9 @@
 package com.qwervego.label.controller;
 
-import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseAuthException;
-import com.google.firebase.auth.FirebaseToken;
 import com.qwervego.label.model.User;
 import com.qwervego.label.repository.FirestoreUserRepository;
+import com.qwervego.label.service.FirebaseAuthService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -16,12 +15,12 @@ import java.util.Map;
 @RestController
 @RequestMapping("/api/user")
 public class UserAuthController {
-    private final FirebaseAuth firebaseAuth;
+    private final FirebaseAuthService firebaseAuthService;
     private final FirestoreUserRepository userRepository;
 
     @Autowired
-    public UserAuthController(FirebaseAuth firebaseAuth, FirestoreUserRepository userRepository) {
-        this.firebaseAuth = firebaseAuth;
+    public UserAuthController(FirebaseAuthService firebaseAuthService, FirestoreUserRepository userRepository) {
+        this.firebaseAuthService = firebaseAuthService;
         this.userRepository = userRepository;
     }
 
@@ -33,8 +32,7 @@ public class UserAuthController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", "Missing idToken or phoneNumber"));
         }
         try {
-            FirebaseToken decodedToken = firebaseAuth.verifyIdToken(idToken);
-            String tokenPhone = (String) decodedToken.getClaims().get("phone_number");
+            String tokenPhone = firebaseAuthService.verify(idToken).phoneNumber();
             if (tokenPhone == null || !tokenPhone.equals(phoneNumber)) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Phone number mismatch or not verified"));
             }
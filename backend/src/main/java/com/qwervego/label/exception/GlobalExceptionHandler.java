@@ -3,15 +3,18 @@ package com.qwervego.label.exception;
 import com.qwervego.label.dto.ErrorResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.MissingServletRequestParameterException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeoutException;
 
 @ControllerAdvice
 public class GlobalExceptionHandler {
@@ -44,6 +47,20 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ErrorResponse(ex.getMessage()));
     }
 
+    // Handle writes whose precondition no longer holds because the tag changed since it was read
+    @ExceptionHandler(QrConflictException.class)
+    public ResponseEntity<ErrorResponse> handleQrConflict(QrConflictException ex) {
+        logger.info("QR write conflict: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(new ErrorResponse(ex.getMessage()));
+    }
+
+    // Handle page tokens that were tampered with or belong to a differently ordered query
+    @ExceptionHandler(InvalidPageTokenException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidPageToken(InvalidPageTokenException ex) {
+        logger.warn("Invalid page token: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ErrorResponse(ex.getMessage()));
+    }
+
     // Handle missing request parameters (e.g., "id" is missing or a typo like "ix" is used)
     @ExceptionHandler(MissingServletRequestParameterException.class)
     public ResponseEntity<ErrorResponse> handleMissingParams(MissingServletRequestParameterException ex) {
@@ -52,6 +69,23 @@ public class GlobalExceptionHandler {
                 .body(new ErrorResponse("Missing or incorrect request parameter: " + ex.getParameterName()));
     }
 
+    // Handle async requests that did not complete within qr.async.request-timeout (or, for streams,
+    // spring.mvc.async.request-timeout), and loads that gave up waiting on an in-flight call
+    @ExceptionHandler({AsyncRequestTimeoutException.class, TimeoutException.class, InFlightLoadTimeoutException.class})
+    public ResponseEntity<ErrorResponse> handleTimeout(Exception ex) {
+        logger.warn("Request timed out: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(new ErrorResponse("The request timed out. Please try again."));
+    }
+
+    // Handle password hashing requests refused because the hashing pool is saturated
+    @ExceptionHandler(PasswordHashingUnavailableException.class)
+    public ResponseEntity<ErrorResponse> handlePasswordHashingUnavailable(PasswordHashingUnavailableException ex) {
+        logger.warn("Password hashing rejected: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1")
+                .body(new ErrorResponse(ex.getMessage()));
+    }
+
     // Handle Password Null Exception
     @ExceptionHandler(NullPointerException.class)
     public ResponseEntity<ErrorResponse> handlePasswordNullException(NullPointerException ex) {
@@ -0,0 +1,7 @@
+package com.qwervego.label.exception;
+
+public class InFlightLoadTimeoutException extends RuntimeException {
+    public InFlightLoadTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
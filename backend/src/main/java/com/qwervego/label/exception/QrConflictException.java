@@ -0,0 +1,7 @@
+package com.qwervego.label.exception;
+
+public class QrConflictException extends RuntimeException {
+    public QrConflictException(String message) {
+        super(message);
+    }
+}
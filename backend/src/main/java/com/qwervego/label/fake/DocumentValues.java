@@ -0,0 +1,256 @@
+package com.qwervego.label.fake;
+
+import com.google.cloud.Timestamp;
+import com.google.firestore.v1.ArrayValue;
+import com.google.firestore.v1.MapValue;
+import com.google.firestore.v1.Value;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.NullValue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Firestore value semantics for {@link InMemoryDocumentStore}: field paths, nested field
+ * access, the cross-type sort order and encoding of plain Java values.
+ */
+final class DocumentValues {
+    static final String DOCUMENT_ID = "__name__";
+
+    private DocumentValues() {
+    }
+
+    /**
+     * Splits an encoded field path ({@code a.b}, {@code generated.`20250101`}) into
+     * its segments.
+     */
+    static List<String> parsePath(String encoded) {
+        List<String> segments = new ArrayList<>();
+        StringBuilder segment = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < encoded.length(); i++) {
+            char c = encoded.charAt(i);
+            if (quoted && c == '\\' && i + 1 < encoded.length()) {
+                segment.append(encoded.charAt(++i));
+            } else if (c == '`') {
+                quoted = !quoted;
+            } else if (c == '.' && !quoted) {
+                segments.add(segment.toString());
+                segment.setLength(0);
+            } else {
+                segment.append(c);
+            }
+        }
+        segments.add(segment.toString());
+        return segments;
+    }
+
+    static Value get(Map<String, Value> fields, List<String> path) {
+        Value value = fields.get(path.get(0));
+        for (int i = 1; i < path.size() && value != null; i++) {
+            value = value.hasMapValue() ? value.getMapValue().getFieldsMap().get(path.get(i)) : null;
+        }
+        return value;
+    }
+
+    static void set(Map<String, Value> fields, List<String> path, Value value) {
+        set(fields, path, 0, value);
+    }
+
+    private static void set(Map<String, Value> fields, List<String> path, int index, Value value) {
+        String key = path.get(index);
+        if (index == path.size() - 1) {
+            fields.put(key, value);
+            return;
+        }
+        Value child = fields.get(key);
+        Map<String, Value> childFields = child != null && child.hasMapValue()
+            ? new LinkedHashMap<>(child.getMapValue().getFieldsMap())
+            : new LinkedHashMap<>();
+        set(childFields, path, index + 1, value);
+        fields.put(key, map(childFields));
+    }
+
+    static void remove(Map<String, Value> fields, List<String> path) {
+        remove(fields, path, 0);
+    }
+
+    private static void remove(Map<String, Value> fields, List<String> path, int index) {
+        String key = path.get(index);
+        if (index == path.size() - 1) {
+            fields.remove(key);
+            return;
+        }
+        Value child = fields.get(key);
+        if (child == null || !child.hasMapValue()) {
+            return;
+        }
+        Map<String, Value> childFields = new LinkedHashMap<>(child.getMapValue().getFieldsMap());
+        remove(childFields, path, index + 1);
+        fields.put(key, map(childFields));
+    }
+
+    static Value map(Map<String, Value> fields) {
+        return Value.newBuilder().setMapValue(MapValue.newBuilder().putAllFields(fields)).build();
+    }
+
+    static Value reference(String name) {
+        return Value.newBuilder().setReferenceValue(name).build();
+    }
+
+    static Value integer(long value) {
+        return Value.newBuilder().setIntegerValue(value).build();
+    }
+
+    static boolean isNumber(Value value) {
+        return value.hasIntegerValue() || value.hasDoubleValue();
+    }
+
+    static boolean isNaN(Value value) {
+        return value.hasDoubleValue() && Double.isNaN(value.getDoubleValue());
+    }
+
+    /**
+     * Firestore's total order: null, booleans, numbers (NaN first), timestamps, strings,
+     * bytes, references, geo points, arrays, maps.
+     */
+    static int compare(Value a, Value b) {
+        int typeOrder = Integer.compare(typeOrder(a), typeOrder(b));
+        if (typeOrder != 0) {
+            return typeOrder;
+        }
+        return switch (a.getValueTypeCase()) {
+            case NULL_VALUE, VALUETYPE_NOT_SET -> 0;
+            case BOOLEAN_VALUE -> Boolean.compare(a.getBooleanValue(), b.getBooleanValue());
+            case INTEGER_VALUE, DOUBLE_VALUE -> compareNumbers(a, b);
+            case TIMESTAMP_VALUE -> {
+                int seconds = Long.compare(a.getTimestampValue().getSeconds(), b.getTimestampValue().getSeconds());
+                yield seconds != 0 ? seconds : Integer.compare(a.getTimestampValue().getNanos(), b.getTimestampValue().getNanos());
+            }
+            case STRING_VALUE -> a.getStringValue().compareTo(b.getStringValue());
+            case BYTES_VALUE -> ByteString.unsignedLexicographicalComparator().compare(a.getBytesValue(), b.getBytesValue());
+            case REFERENCE_VALUE -> compareNames(a.getReferenceValue(), b.getReferenceValue());
+            case GEO_POINT_VALUE -> {
+                int latitude = Double.compare(a.getGeoPointValue().getLatitude(), b.getGeoPointValue().getLatitude());
+                yield latitude != 0 ? latitude : Double.compare(a.getGeoPointValue().getLongitude(), b.getGeoPointValue().getLongitude());
+            }
+            case ARRAY_VALUE -> compareArrays(a.getArrayValue().getValuesList(), b.getArrayValue().getValuesList());
+            case MAP_VALUE -> compareMaps(a.getMapValue().getFieldsMap(), b.getMapValue().getFieldsMap());
+        };
+    }
+
+    static boolean equal(Value a, Value b) {
+        return !isNaN(a) && !isNaN(b) && compare(a, b) == 0;
+    }
+
+    /**
+     * Orders resource names segment by segment, so {@code qrs/a/x} sorts before
+     * {@code qrs/a-b}.
+     */
+    static int compareNames(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            char x = a.charAt(i);
+            char y = b.charAt(i);
+            if (x != y) {
+                return x == '/' ? -1 : y == '/' ? 1 : Character.compare(x, y);
+            }
+        }
+        return Integer.compare(a.length(), b.length());
+    }
+
+    static int typeOrder(Value value) {
+        return switch (value.getValueTypeCase()) {
+            case NULL_VALUE, VALUETYPE_NOT_SET -> 0;
+            case BOOLEAN_VALUE -> 1;
+            case INTEGER_VALUE, DOUBLE_VALUE -> 2;
+            case TIMESTAMP_VALUE -> 3;
+            case STRING_VALUE -> 4;
+            case BYTES_VALUE -> 5;
+            case REFERENCE_VALUE -> 6;
+            case GEO_POINT_VALUE -> 7;
+            case ARRAY_VALUE -> 8;
+            case MAP_VALUE -> 9;
+        };
+    }
+
+    private static int compareNumbers(Value a, Value b) {
+        if (a.hasIntegerValue() && b.hasIntegerValue()) {
+            return Long.compare(a.getIntegerValue(), b.getIntegerValue());
+        }
+        double x = a.hasIntegerValue() ? a.getIntegerValue() : a.getDoubleValue();
+        double y = b.hasIntegerValue() ? b.getIntegerValue() : b.getDoubleValue();
+        if (x == y) {
+            return 0;
+        }
+        if (Double.isNaN(x) || Double.isNaN(y)) {
+            return Double.isNaN(x) ? (Double.isNaN(y) ? 0 : -1) : 1;
+        }
+        return x < y ? -1 : 1;
+    }
+
+    private static int compareArrays(List<Value> a, List<Value> b) {
+        for (int i = 0; i < Math.min(a.size(), b.size()); i++) {
+            int result = compare(a.get(i), b.get(i));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(a.size(), b.size());
+    }
+
+    private static int compareMaps(Map<String, Value> a, Map<String, Value> b) {
+        Iterator<Map.Entry<String, Value>> left = new TreeMap<>(a).entrySet().iterator();
+        Iterator<Map.Entry<String, Value>> right = new TreeMap<>(b).entrySet().iterator();
+        while (left.hasNext() && right.hasNext()) {
+            Map.Entry<String, Value> x = left.next();
+            Map.Entry<String, Value> y = right.next();
+            int result = x.getKey().compareTo(y.getKey());
+            if (result == 0) {
+                result = compare(x.getValue(), y.getValue());
+            }
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Boolean.compare(left.hasNext(), right.hasNext());
+    }
+
+    /**
+     * Encodes the values the document mappers produce, for seeding the store directly.
+     */
+    static Value encode(Object value) {
+        Value.Builder builder = Value.newBuilder();
+        if (value == null) {
+            builder.setNullValue(NullValue.NULL_VALUE);
+        } else if (value instanceof String text) {
+            builder.setStringValue(text);
+        } else if (value instanceof Boolean flag) {
+            builder.setBooleanValue(flag);
+        } else if (value instanceof Integer || value instanceof Long) {
+            builder.setIntegerValue(((Number) value).longValue());
+        } else if (value instanceof Number number) {
+            builder.setDoubleValue(number.doubleValue());
+        } else if (value instanceof Date date) {
+            builder.setTimestampValue(Timestamp.of(date).toProto());
+        } else if (value instanceof Timestamp timestamp) {
+            builder.setTimestampValue(timestamp.toProto());
+        } else if (value instanceof Map<?, ?> map) {
+            MapValue.Builder fields = MapValue.newBuilder();
+            map.forEach((key, child) -> fields.putFields((String) key, encode(child)));
+            builder.setMapValue(fields);
+        } else if (value instanceof List<?> list) {
+            ArrayValue.Builder values = ArrayValue.newBuilder();
+            list.forEach(child -> values.addValues(encode(child)));
+            builder.setArrayValue(values);
+        } else {
+            throw new IllegalArgumentException("Cannot encode " + value.getClass().getName());
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,49 @@
+package com.qwervego.label.fake;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Stands in for the Firebase client SDK under the {@code fake-firebase} profile, handing
+ * out ID tokens that the app's {@code FirebaseAuth} accepts: phone sign-in (no OTP) for
+ * {@code /api/user/signin}, and a token for any existing account, e.g. a seeded admin.
+ */
+@RestController
+@Profile("fake-firebase")
+@RequestMapping(FakeAuthController.PATH)
+public class FakeAuthController {
+    static final String PATH = "/fake-firebase";
+
+    private final InMemoryIdentityToolkit identityToolkit;
+
+    public FakeAuthController(InMemoryIdentityToolkit identityToolkit) {
+        this.identityToolkit = identityToolkit;
+    }
+
+    @PostMapping("/sign-in/phone")
+    public ResponseEntity<?> signInWithPhoneNumber(@RequestBody Map<String, String> payload) {
+        String phoneNumber = payload.get("phoneNumber");
+        if (phoneNumber == null || phoneNumber.isBlank()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", "Missing phoneNumber"));
+        }
+        return ResponseEntity.ok(Map.of("idToken", identityToolkit.signInWithPhoneNumber(phoneNumber)));
+    }
+
+    @GetMapping("/token/{uid}")
+    public ResponseEntity<?> idToken(@PathVariable String uid) {
+        try {
+            return ResponseEntity.ok(Map.of("idToken", identityToolkit.idToken(uid)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.qwervego.label.fake;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.firestore.Firestore;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.FirebaseOptions;
+import com.google.firebase.auth.FirebaseAuth;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
+import org.springframework.security.web.SecurityFilterChain;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Replaces {@link com.qwervego.label.config.FirestoreConfig} under the {@code fake-firebase}
+ * profile: the {@link Firestore} and {@link FirebaseAuth} beans are the real clients, but
+ * their transports are answered in-process by {@link InMemoryFirestoreRpc} and
+ * {@link InMemoryIdentityToolkit}, with per-operation latency and faults from
+ * {@code fake-firebase.*} properties and a dataset from {@link SyntheticDataGenerator}.
+ * No credentials or network access are needed.
+ */
+@Configuration
+@Profile("fake-firebase")
+public class FakeFirebaseConfig {
+    private static final Logger logger = LoggerFactory.getLogger(FakeFirebaseConfig.class);
+
+    @Value("${fake-firebase.project-id:fake-project}")
+    private String projectId;
+
+    @Bean
+    InMemoryDocumentStore inMemoryDocumentStore() {
+        return new InMemoryDocumentStore(projectId, InMemoryFirestore.DATABASE_ID);
+    }
+
+    @Bean
+    public InMemoryIdentityToolkit inMemoryIdentityToolkit(ObjectMapper objectMapper, Environment environment) {
+        return new InMemoryIdentityToolkit(projectId, objectMapper,
+            operations(environment, "auth", InMemoryIdentityToolkit.OPERATIONS));
+    }
+
+    @Bean
+    public SyntheticDataGenerator syntheticDataGenerator(InMemoryDocumentStore store, InMemoryIdentityToolkit identityToolkit,
+            @Value("${fake-firebase.seed.qrs:0}") long qrs,
+            @Value("${fake-firebase.seed.active-ratio:0.5}") double activeRatio,
+            @Value("${fake-firebase.seed.users:0}") long users,
+            @Value("${fake-firebase.seed.admins:1}") long admins,
+            @Value("${fake-firebase.seed.days:365}") int days,
+            @Value("${fake-firebase.seed.random-seed:42}") long randomSeed) {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(store, identityToolkit,
+            new SyntheticDataGenerator.Plan(qrs, activeRatio, users, admins, days, randomSeed));
+        generator.generate();
+        return generator;
+    }
+
+    // Depends on the generator so nothing reads the store before it is seeded
+    @Bean
+    public Firestore firestore(InMemoryDocumentStore store, SyntheticDataGenerator syntheticDataGenerator,
+            Environment environment,
+            @Value("${fake-firebase.firestore.threads:#{T(java.lang.Math).max(4, T(java.lang.Runtime).getRuntime().availableProcessors())}}") int threads) {
+        logger.info("Initializing in-memory Firestore for project: {}", projectId);
+        return InMemoryFirestore.client(projectId, store,
+            operations(environment, "firestore", InMemoryFirestoreRpc.OPERATIONS), threads);
+    }
+
+    @Bean(destroyMethod = "delete")
+    public FirebaseApp firebaseApp(InMemoryIdentityToolkit identityToolkit) {
+        FirebaseOptions options = FirebaseOptions.builder()
+            .setProjectId(projectId)
+            // Never expires, so the SDK never tries to refresh it
+            .setCredentials(GoogleCredentials.create(new AccessToken("fake-firebase", null)))
+            .setHttpTransport(identityToolkit)
+            .build();
+        // Named, so it never collides with a default app from another context in the same JVM
+        return FirebaseApp.initializeApp(options, "fake-firebase-" + UUID.randomUUID());
+    }
+
+    @Bean
+    public FirebaseAuth firebaseAuth(FirebaseApp firebaseApp) {
+        return FirebaseAuth.getInstance(firebaseApp);
+    }
+
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public SecurityFilterChain fakeAuthSecurityFilterChain(HttpSecurity http) throws Exception {
+        http
+            .securityMatcher(FakeAuthController.PATH + "/**")
+            .csrf(AbstractHttpConfigurer::disable)
+            .authorizeHttpRequests(auth -> auth.anyRequest().permitAll());
+        return http.build();
+    }
+
+    /**
+     * Reads {@code fake-firebase.<service>.latency.<operation>} and
+     * {@code fake-firebase.<service>.faults.<operation>}, falling back to the service's
+     * {@code default} entries.
+     */
+    private static Map<String, SimulatedOperation> operations(Environment environment, String service, List<String> names) {
+        String prefix = "fake-firebase." + service + ".";
+        String defaultLatency = environment.getProperty(prefix + "latency.default", "0");
+        String defaultFaults = environment.getProperty(prefix + "faults.default", "");
+        Map<String, SimulatedOperation> operations = new LinkedHashMap<>();
+        for (String name : names) {
+            SimulatedOperation operation = SimulatedOperation.parse(name,
+                environment.getProperty(prefix + "latency." + name, defaultLatency),
+                environment.getProperty(prefix + "faults." + name, defaultFaults));
+            operations.put(name, operation);
+            logger.info("Fake {} {}: latency {}, faults {}", service, name, operation.latency(), operation.faults());
+        }
+        return operations;
+    }
+}
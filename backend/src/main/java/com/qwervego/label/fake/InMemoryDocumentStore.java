@@ -0,0 +1,923 @@
+package com.qwervego.label.fake;
+
+import com.google.firestore.v1.AggregationResult;
+import com.google.firestore.v1.ArrayValue;
+import com.google.firestore.v1.BatchGetDocumentsRequest;
+import com.google.firestore.v1.BatchGetDocumentsResponse;
+import com.google.firestore.v1.BatchWriteRequest;
+import com.google.firestore.v1.BatchWriteResponse;
+import com.google.firestore.v1.BeginTransactionRequest;
+import com.google.firestore.v1.BeginTransactionResponse;
+import com.google.firestore.v1.CommitRequest;
+import com.google.firestore.v1.CommitResponse;
+import com.google.firestore.v1.Cursor;
+import com.google.firestore.v1.Document;
+import com.google.firestore.v1.DocumentTransform.FieldTransform;
+import com.google.firestore.v1.ListCollectionIdsRequest;
+import com.google.firestore.v1.ListCollectionIdsResponse;
+import com.google.firestore.v1.Precondition;
+import com.google.firestore.v1.RunAggregationQueryRequest;
+import com.google.firestore.v1.RunAggregationQueryResponse;
+import com.google.firestore.v1.RunQueryRequest;
+import com.google.firestore.v1.RunQueryResponse;
+import com.google.firestore.v1.StructuredAggregationQuery;
+import com.google.firestore.v1.StructuredQuery;
+import com.google.firestore.v1.StructuredQuery.FieldFilter;
+import com.google.firestore.v1.TransactionOptions;
+import com.google.firestore.v1.Value;
+import com.google.firestore.v1.Write;
+import com.google.firestore.v1.WriteResult;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Timestamp;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * The documents behind {@link InMemoryFirestoreRpc}, with the server-side semantics the
+ * Firestore client relies on: preconditions and field transforms on commit, per-write
+ * status in batch writes, field masks, structured queries with cursors, count
+ * aggregations, and read-write transactions.
+ * <p>
+ * Writes are serialized by a lock and get strictly increasing commit times. Reads take
+ * no lock and see each document at its latest committed version, so a query is not a
+ * snapshot across documents. Transactions are optimistic: a commit fails with
+ * {@code ABORTED} if a document the transaction read has changed since, which the
+ * client retries like a lock conflict on the real service. Range and equality filters
+ * are served from single-field indexes, built the first time a query needs one and
+ * maintained on every write after that.
+ */
+final class InMemoryDocumentStore {
+    private static final Timestamp MISSING = Timestamp.getDefaultInstance();
+    private static final String MIN_NAME = "";
+    private static final String MAX_NAME = "\uffff";
+
+    private final String documentsRoot;
+    private final ConcurrentSkipListMap<String, Document> documents = new ConcurrentSkipListMap<>(DocumentValues::compareNames);
+    // Collection path -> field path -> entries ordered by value, then document name
+    private final Map<String, Map<String, NavigableSet<IndexEntry>>> indexes = new ConcurrentHashMap<>();
+    private final Map<ByteString, Transaction> transactions = new ConcurrentHashMap<>();
+    private final AtomicLong transactionIds = new AtomicLong();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private long lastCommitMicros;
+
+    private record IndexEntry(Value value, String name) {
+        static final Comparator<IndexEntry> ORDER = (a, b) -> {
+            int result = DocumentValues.compare(a.value, b.value);
+            return result != 0 ? result : DocumentValues.compareNames(a.name, b.name);
+        };
+    }
+
+    private static final class Transaction {
+        private final boolean readOnly;
+        // Document name -> update time when read, or MISSING
+        private final Map<String, Timestamp> reads = new ConcurrentHashMap<>();
+
+        Transaction(boolean readOnly) {
+            this.readOnly = readOnly;
+        }
+
+        void read(String name, Document document) {
+            if (!readOnly) {
+                reads.putIfAbsent(name, document == null ? MISSING : document.getUpdateTime());
+            }
+        }
+    }
+
+    private record Order(String fieldPath, List<String> path, boolean descending) {
+        Order(String fieldPath, boolean descending) {
+            this(fieldPath, DocumentValues.parsePath(fieldPath), descending);
+        }
+
+        boolean isDocumentId() {
+            return fieldPath.equals(DocumentValues.DOCUMENT_ID);
+        }
+    }
+
+    InMemoryDocumentStore(String projectId, String databaseId) {
+        this.documentsRoot = "projects/" + projectId + "/databases/" + databaseId + "/documents";
+    }
+
+    String documentsRoot() {
+        return documentsRoot;
+    }
+
+    int size() {
+        return documents.size();
+    }
+
+    /**
+     * Stores a document directly, as a commit of a single {@code set} would, without
+     * going through the RPC layer. For seeding.
+     */
+    void put(String path, Map<String, Value> fields) {
+        String name = documentsRoot + "/" + path;
+        writeLock.lock();
+        try {
+            Timestamp commitTime = nextCommitTime();
+            Document current = documents.get(name);
+            store(name, Document.newBuilder()
+                .setName(name)
+                .putAllFields(fields)
+                .setCreateTime(current == null ? commitTime : current.getCreateTime())
+                .setUpdateTime(commitTime)
+                .build());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // ---- Writes ----
+
+    CommitResponse commit(CommitRequest request) {
+        writeLock.lock();
+        try {
+            if (!request.getTransaction().isEmpty()) {
+                Transaction transaction = transactions.remove(request.getTransaction());
+                if (transaction == null) {
+                    throw error(Status.INVALID_ARGUMENT, "Transaction has expired or is invalid");
+                }
+                for (Map.Entry<String, Timestamp> read : transaction.reads.entrySet()) {
+                    Document current = documents.get(read.getKey());
+                    Timestamp version = current == null ? MISSING : current.getUpdateTime();
+                    if (!version.equals(read.getValue())) {
+                        throw error(Status.ABORTED, "Transaction aborted: " + read.getKey() + " changed after it was read");
+                    }
+                }
+            }
+            Timestamp commitTime = nextCommitTime();
+            Map<String, Document> staged = new LinkedHashMap<>();
+            CommitResponse.Builder response = CommitResponse.newBuilder().setCommitTime(commitTime);
+            for (Write write : request.getWritesList()) {
+                response.addWriteResults(apply(write, staged, commitTime));
+            }
+            staged.forEach(this::store);
+            return response.build();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Applies each write on its own, as the service does for {@code BatchWrite}: one
+     * failing write does not stop the others.
+     */
+    BatchWriteResponse batchWrite(BatchWriteRequest request) {
+        BatchWriteResponse.Builder response = BatchWriteResponse.newBuilder();
+        for (Write write : request.getWritesList()) {
+            writeLock.lock();
+            try {
+                Timestamp commitTime = nextCommitTime();
+                Map<String, Document> staged = new LinkedHashMap<>();
+                WriteResult result = apply(write, staged, commitTime);
+                staged.forEach(this::store);
+                response.addWriteResults(result).addStatus(com.google.rpc.Status.getDefaultInstance());
+            } catch (StatusRuntimeException e) {
+                response.addWriteResults(WriteResult.getDefaultInstance())
+                    .addStatus(com.google.rpc.Status.newBuilder()
+                        .setCode(e.getStatus().getCode().value())
+                        .setMessage(String.valueOf(e.getStatus().getDescription())));
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        return response.build();
+    }
+
+    private WriteResult apply(Write write, Map<String, Document> staged, Timestamp commitTime) {
+        String name = switch (write.getOperationCase()) {
+            case UPDATE -> write.getUpdate().getName();
+            case DELETE -> write.getDelete();
+            case TRANSFORM -> write.getTransform().getDocument();
+            case OPERATION_NOT_SET -> throw error(Status.INVALID_ARGUMENT, "Write without an operation");
+        };
+        checkName(name);
+        Document current = staged.containsKey(name) ? staged.get(name) : documents.get(name);
+        if (write.hasCurrentDocument()) {
+            checkPrecondition(name, current, write.getCurrentDocument());
+        }
+
+        if (write.hasDelete()) {
+            staged.put(name, null);
+            return WriteResult.newBuilder().setUpdateTime(commitTime).build();
+        }
+
+        Map<String, Value> fields = current == null ? new LinkedHashMap<>() : new LinkedHashMap<>(current.getFieldsMap());
+        if (write.hasUpdate()) {
+            Map<String, Value> update = write.getUpdate().getFieldsMap();
+            if (write.hasUpdateMask()) {
+                for (String fieldPath : write.getUpdateMask().getFieldPathsList()) {
+                    List<String> path = DocumentValues.parsePath(fieldPath);
+                    Value value = DocumentValues.get(update, path);
+                    if (value != null) {
+                        DocumentValues.set(fields, path, value);
+                    } else {
+                        DocumentValues.remove(fields, path);
+                    }
+                }
+            } else {
+                fields = new LinkedHashMap<>(update);
+            }
+        }
+
+        WriteResult.Builder result = WriteResult.newBuilder().setUpdateTime(commitTime);
+        List<FieldTransform> transforms = write.hasTransform()
+            ? write.getTransform().getFieldTransformsList()
+            : write.getUpdateTransformsList();
+        for (FieldTransform transform : transforms) {
+            result.addTransformResults(transform(fields, transform, commitTime));
+        }
+
+        staged.put(name, Document.newBuilder()
+            .setName(name)
+            .putAllFields(fields)
+            .setCreateTime(current == null ? commitTime : current.getCreateTime())
+            .setUpdateTime(commitTime)
+            .build());
+        return result.build();
+    }
+
+    private static void checkPrecondition(String name, Document current, Precondition precondition) {
+        switch (precondition.getConditionTypeCase()) {
+            case EXISTS -> {
+                if (precondition.getExists() && current == null) {
+                    throw error(Status.NOT_FOUND, "No document to update: " + name);
+                }
+                if (!precondition.getExists() && current != null) {
+                    throw error(Status.ALREADY_EXISTS, "Document already exists: " + name);
+                }
+            }
+            case UPDATE_TIME -> {
+                if (current == null || !current.getUpdateTime().equals(precondition.getUpdateTime())) {
+                    throw error(Status.FAILED_PRECONDITION, "The required precondition on " + name + " was not met");
+                }
+            }
+            case CONDITIONTYPE_NOT_SET -> {
+            }
+        }
+    }
+
+    private static Value transform(Map<String, Value> fields, FieldTransform transform, Timestamp commitTime) {
+        List<String> path = DocumentValues.parsePath(transform.getFieldPath());
+        Value current = DocumentValues.get(fields, path);
+        Value next = switch (transform.getTransformTypeCase()) {
+            case SET_TO_SERVER_VALUE -> Value.newBuilder().setTimestampValue(commitTime).build();
+            case INCREMENT -> add(current, transform.getIncrement());
+            case MAXIMUM -> current != null && DocumentValues.isNumber(current)
+                && DocumentValues.compare(current, transform.getMaximum()) >= 0 ? current : transform.getMaximum();
+            case MINIMUM -> current != null && DocumentValues.isNumber(current)
+                && DocumentValues.compare(current, transform.getMinimum()) <= 0 ? current : transform.getMinimum();
+            case APPEND_MISSING_ELEMENTS -> {
+                List<Value> values = current != null && current.hasArrayValue()
+                    ? new ArrayList<>(current.getArrayValue().getValuesList())
+                    : new ArrayList<>();
+                for (Value element : transform.getAppendMissingElements().getValuesList()) {
+                    if (values.stream().noneMatch(existing -> DocumentValues.equal(existing, element))) {
+                        values.add(element);
+                    }
+                }
+                yield array(values);
+            }
+            case REMOVE_ALL_FROM_ARRAY -> {
+                List<Value> values = current != null && current.hasArrayValue()
+                    ? new ArrayList<>(current.getArrayValue().getValuesList())
+                    : new ArrayList<>();
+                List<Value> removed = transform.getRemoveAllFromArray().getValuesList();
+                values.removeIf(existing -> removed.stream().anyMatch(element -> DocumentValues.equal(existing, element)));
+                yield array(values);
+            }
+            case TRANSFORMTYPE_NOT_SET -> throw error(Status.INVALID_ARGUMENT, "Field transform without a type");
+        };
+        DocumentValues.set(fields, path, next);
+        return next;
+    }
+
+    private static Value add(Value current, Value increment) {
+        if (current == null || !DocumentValues.isNumber(current)) {
+            return increment;
+        }
+        if (current.hasIntegerValue() && increment.hasIntegerValue()) {
+            return DocumentValues.integer(current.getIntegerValue() + increment.getIntegerValue());
+        }
+        double sum = (current.hasIntegerValue() ? current.getIntegerValue() : current.getDoubleValue())
+            + (increment.hasIntegerValue() ? increment.getIntegerValue() : increment.getDoubleValue());
+        return Value.newBuilder().setDoubleValue(sum).build();
+    }
+
+    private static Value array(List<Value> values) {
+        return Value.newBuilder().setArrayValue(ArrayValue.newBuilder().addAllValues(values)).build();
+    }
+
+    // Caller holds the write lock
+    private void store(String name, Document document) {
+        Document previous = document == null ? documents.remove(name) : documents.put(name, document);
+        Map<String, NavigableSet<IndexEntry>> collectionIndexes = indexes.get(collectionOf(name));
+        if (collectionIndexes == null) {
+            return;
+        }
+        collectionIndexes.forEach((fieldPath, index) -> {
+            List<String> path = DocumentValues.parsePath(fieldPath);
+            Value before = previous == null ? null : DocumentValues.get(previous.getFieldsMap(), path);
+            Value after = document == null ? null : DocumentValues.get(document.getFieldsMap(), path);
+            if (before != null && (after == null || !before.equals(after))) {
+                index.remove(new IndexEntry(before, name));
+            }
+            if (after != null) {
+                index.add(new IndexEntry(after, name));
+            }
+        });
+    }
+
+    // Caller holds the write lock
+    private Timestamp nextCommitTime() {
+        Instant now = Instant.now();
+        long micros = Math.max(now.getEpochSecond() * 1_000_000 + now.getNano() / 1_000, lastCommitMicros + 1);
+        lastCommitMicros = micros;
+        return Timestamp.newBuilder().setSeconds(micros / 1_000_000).setNanos((int) (micros % 1_000_000) * 1_000).build();
+    }
+
+    // ---- Transactions ----
+
+    BeginTransactionResponse beginTransaction(BeginTransactionRequest request) {
+        return BeginTransactionResponse.newBuilder().setTransaction(begin(request.getOptions())).build();
+    }
+
+    private ByteString begin(TransactionOptions options) {
+        ByteString id = ByteString.copyFrom(ByteBuffer.allocate(Long.BYTES).putLong(0, transactionIds.incrementAndGet()));
+        transactions.put(id, new Transaction(options.hasReadOnly()));
+        return id;
+    }
+
+    void rollback(ByteString transaction) {
+        transactions.remove(transaction);
+    }
+
+    private Transaction transaction(ByteString id) {
+        Transaction transaction = transactions.get(id);
+        if (transaction == null) {
+            throw error(Status.INVALID_ARGUMENT, "Transaction has expired or is invalid");
+        }
+        return transaction;
+    }
+
+    // ---- Reads ----
+
+    void batchGet(BatchGetDocumentsRequest request, Consumer<BatchGetDocumentsResponse> sink) {
+        ByteString started = request.hasNewTransaction() ? begin(request.getNewTransaction()) : null;
+        Transaction transaction = started != null ? transactions.get(started)
+            : request.getTransaction().isEmpty() ? null : transaction(request.getTransaction());
+        List<String> mask = request.hasMask() ? request.getMask().getFieldPathsList() : null;
+        Timestamp readTime = readTime();
+        for (String name : request.getDocumentsList()) {
+            checkName(name);
+            Document document = documents.get(name);
+            if (transaction != null) {
+                transaction.read(name, document);
+            }
+            BatchGetDocumentsResponse.Builder response = BatchGetDocumentsResponse.newBuilder().setReadTime(readTime);
+            if (document == null) {
+                response.setMissing(name);
+            } else {
+                response.setFound(mask == null ? document : project(document, mask));
+            }
+            if (started != null) {
+                response.setTransaction(started);
+                started = null;
+            }
+            sink.accept(response.build());
+        }
+    }
+
+    void runQuery(RunQueryRequest request, Consumer<RunQueryResponse> sink) {
+        ByteString started = request.hasNewTransaction() ? begin(request.getNewTransaction()) : null;
+        Transaction transaction = started != null ? transactions.get(started)
+            : request.getTransaction().isEmpty() ? null : transaction(request.getTransaction());
+        StructuredQuery query = request.getStructuredQuery();
+        List<String> select = query.hasSelect()
+            ? query.getSelect().getFieldsList().stream().map(StructuredQuery.FieldReference::getFieldPath).toList()
+            : null;
+        Timestamp readTime = readTime();
+        ByteString[] pending = {started};
+        int count = execute(request.getParent(), query, document -> {
+            if (transaction != null) {
+                transaction.read(document.getName(), document);
+            }
+            RunQueryResponse.Builder response = RunQueryResponse.newBuilder()
+                .setReadTime(readTime)
+                .setDocument(select == null ? document : project(document, select));
+            if (pending[0] != null) {
+                response.setTransaction(pending[0]);
+                pending[0] = null;
+            }
+            sink.accept(response.build());
+        });
+        if (count == 0) {
+            RunQueryResponse.Builder response = RunQueryResponse.newBuilder().setReadTime(readTime);
+            if (pending[0] != null) {
+                response.setTransaction(pending[0]);
+            }
+            sink.accept(response.build());
+        }
+    }
+
+    RunAggregationQueryResponse runAggregationQuery(RunAggregationQueryRequest request) {
+        StructuredAggregationQuery aggregation = request.getStructuredAggregationQuery();
+        long upTo = Long.MAX_VALUE;
+        for (StructuredAggregationQuery.Aggregation each : aggregation.getAggregationsList()) {
+            if (!each.hasCount()) {
+                throw error(Status.UNIMPLEMENTED, "Only count() aggregations are supported");
+            }
+            if (each.getCount().hasUpTo()) {
+                upTo = Math.min(upTo, each.getCount().getUpTo().getValue());
+            }
+        }
+        long limit = upTo;
+        long[] count = {0};
+        execute(request.getParent(), aggregation.getStructuredQuery(), document -> {
+            if (++count[0] >= limit) {
+                throw new StopScan();
+            }
+        });
+        AggregationResult.Builder result = AggregationResult.newBuilder();
+        for (StructuredAggregationQuery.Aggregation each : aggregation.getAggregationsList()) {
+            long value = each.getCount().hasUpTo() ? Math.min(count[0], each.getCount().getUpTo().getValue()) : count[0];
+            result.putAggregateFields(each.getAlias(), DocumentValues.integer(value));
+        }
+        return RunAggregationQueryResponse.newBuilder().setResult(result).setReadTime(readTime()).build();
+    }
+
+    ListCollectionIdsResponse listCollectionIds(ListCollectionIdsRequest request) {
+        String prefix = request.getParent() + "/";
+        ListCollectionIdsResponse.Builder response = ListCollectionIdsResponse.newBuilder();
+        String key = documents.ceilingKey(prefix);
+        // One probe per collection: skip past everything under the one just found
+        while (key != null && key.startsWith(prefix)) {
+            String rest = key.substring(prefix.length());
+            int slash = rest.indexOf('/');
+            if (slash < 0) {
+                break;
+            }
+            String collectionId = rest.substring(0, slash);
+            response.addCollectionIds(collectionId);
+            key = documents.higherKey(prefix + collectionId + "/" + MAX_NAME);
+        }
+        return response.build();
+    }
+
+    // Thrown from a query sink to end the scan early
+    private static final class StopScan extends RuntimeException {
+        StopScan() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Runs the query and passes the matching documents, in query order, to
+     * {@code sink}. Returns how many it passed.
+     */
+    private int execute(String parent, StructuredQuery query, Consumer<Document> sink) {
+        if (query.getFromCount() != 1) {
+            throw error(Status.INVALID_ARGUMENT, "Queries must select exactly one collection");
+        }
+        StructuredQuery.CollectionSelector from = query.getFrom(0);
+        if (from.getAllDescendants()) {
+            throw error(Status.UNIMPLEMENTED, "Collection group queries are not supported");
+        }
+        String collection = parent + "/" + from.getCollectionId();
+        List<Order> orders = orders(query);
+        Predicate<Document> filter = query.hasWhere() ? document -> matches(document, query.getWhere()) : document -> true;
+        Comparator<Document> order = comparator(orders);
+        Predicate<Document> afterStart = query.hasStartAt() ? document -> afterStart(document, orders, query.getStartAt()) : document -> true;
+        Predicate<Document> beforeEnd = query.hasEndAt() ? document -> beforeEnd(document, orders, query.getEndAt()) : document -> true;
+        int offset = query.getOffset();
+        int limit = query.hasLimit() ? query.getLimit().getValue() : Integer.MAX_VALUE;
+
+        // Candidates already in query order can be streamed and cut short; otherwise sort them all
+        Iterable<Document> candidates = plan(collection, query, orders);
+        boolean ordered = candidates != null;
+        if (!ordered) {
+            List<Document> all = new ArrayList<>();
+            for (Document document : scan(collection, false)) {
+                if (hasOrderFields(document, orders) && filter.test(document)) {
+                    all.add(document);
+                }
+            }
+            all.sort(order);
+            candidates = all;
+        }
+
+        int skipped = 0;
+        int passed = 0;
+        try {
+            for (Document document : candidates) {
+                if (passed >= limit) {
+                    break;
+                }
+                if (ordered && !(hasOrderFields(document, orders) && filter.test(document))) {
+                    continue;
+                }
+                if (!afterStart.test(document)) {
+                    continue;
+                }
+                if (!beforeEnd.test(document)) {
+                    break;
+                }
+                if (skipped < offset) {
+                    skipped++;
+                    continue;
+                }
+                passed++;
+                sink.accept(document);
+            }
+        } catch (StopScan e) {
+            // The sink has seen enough
+        }
+        return passed;
+    }
+
+    /**
+     * Explicit orderings, then (like the service) the first inequality field if nothing
+     * is ordered, then the document ID in the direction of the last ordering.
+     */
+    private static List<Order> orders(StructuredQuery query) {
+        List<Order> orders = new ArrayList<>();
+        for (StructuredQuery.Order order : query.getOrderByList()) {
+            orders.add(new Order(order.getField().getFieldPath(), order.getDirection() == StructuredQuery.Direction.DESCENDING));
+        }
+        if (orders.isEmpty() && query.hasWhere()) {
+            String inequality = firstInequality(query.getWhere());
+            if (inequality != null && !inequality.equals(DocumentValues.DOCUMENT_ID)) {
+                orders.add(new Order(inequality, false));
+            }
+        }
+        if (orders.isEmpty() || !orders.get(orders.size() - 1).isDocumentId()) {
+            boolean descending = !orders.isEmpty() && orders.get(orders.size() - 1).descending();
+            orders.add(new Order(DocumentValues.DOCUMENT_ID, descending));
+        }
+        return orders;
+    }
+
+    private static String firstInequality(StructuredQuery.Filter filter) {
+        return switch (filter.getFilterTypeCase()) {
+            case COMPOSITE_FILTER -> filter.getCompositeFilter().getFiltersList().stream()
+                .map(InMemoryDocumentStore::firstInequality)
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(null);
+            case FIELD_FILTER -> switch (filter.getFieldFilter().getOp()) {
+                case LESS_THAN, LESS_THAN_OR_EQUAL, GREATER_THAN, GREATER_THAN_OR_EQUAL, NOT_EQUAL, NOT_IN ->
+                    filter.getFieldFilter().getField().getFieldPath();
+                default -> null;
+            };
+            default -> null;
+        };
+    }
+
+    /**
+     * Candidates in query order, or null when the order needs a sort. Orderings on the
+     * document ID scan the collection (or an equality filter's index, whose entries for
+     * one value are in ID order); a single field ordering walks that field's index.
+     */
+    private Iterable<Document> plan(String collection, StructuredQuery query, List<Order> orders) {
+        Order first = orders.get(0);
+        if (orders.size() > 2 || (orders.size() == 2 && orders.get(1).descending() != first.descending())) {
+            return null;
+        }
+        if (first.isDocumentId()) {
+            FieldFilter equality = query.hasWhere() ? firstEquality(query.getWhere()) : null;
+            if (equality != null) {
+                NavigableSet<IndexEntry> index = index(collection, equality.getField().getFieldPath());
+                NavigableSet<IndexEntry> matching = index.subSet(
+                    new IndexEntry(equality.getValue(), MIN_NAME), true, new IndexEntry(equality.getValue(), MAX_NAME), true);
+                return indexed(first.descending() ? matching.descendingSet() : matching, equality.getField().getFieldPath());
+            }
+            if (!first.descending() && query.hasStartAt() && query.getStartAt().getValuesCount() == 1) {
+                Value start = query.getStartAt().getValues(0);
+                if (start.hasReferenceValue()) {
+                    return documents.tailMap(start.getReferenceValue(), true).headMap(collection + "/" + MAX_NAME).values()
+                        .stream().filter(document -> inCollection(document.getName(), collection))::iterator;
+                }
+            }
+            return scan(collection, first.descending());
+        }
+
+        String fieldPath = first.fieldPath();
+        NavigableSet<IndexEntry> index = index(collection, fieldPath);
+        if (first.descending()) {
+            return indexed(index.descendingSet(), fieldPath);
+        }
+        IndexEntry from = new IndexEntry(lowerBound(query, fieldPath), MIN_NAME);
+        if (query.hasStartAt() && query.getStartAt().getValuesCount() >= 1) {
+            IndexEntry cursor = new IndexEntry(query.getStartAt().getValues(0), MIN_NAME);
+            if (from.value() == null || IndexEntry.ORDER.compare(cursor, from) > 0) {
+                from = cursor;
+            }
+        }
+        return indexed(from.value() == null ? index : index.tailSet(from, true), fieldPath);
+    }
+
+    private static FieldFilter firstEquality(StructuredQuery.Filter filter) {
+        if (filter.hasFieldFilter()) {
+            FieldFilter field = filter.getFieldFilter();
+            return field.getOp() == FieldFilter.Operator.EQUAL
+                && !field.getField().getFieldPath().equals(DocumentValues.DOCUMENT_ID) ? field : null;
+        }
+        if (filter.hasCompositeFilter() && filter.getCompositeFilter().getOp() == StructuredQuery.CompositeFilter.Operator.AND) {
+            for (StructuredQuery.Filter child : filter.getCompositeFilter().getFiltersList()) {
+                FieldFilter field = firstEquality(child);
+                if (field != null) {
+                    return field;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Greatest lower bound the top-level filters put on the field, or null
+    private static Value lowerBound(StructuredQuery query, String fieldPath) {
+        if (!query.hasWhere()) {
+            return null;
+        }
+        List<StructuredQuery.Filter> filters = query.getWhere().hasCompositeFilter()
+            && query.getWhere().getCompositeFilter().getOp() == StructuredQuery.CompositeFilter.Operator.AND
+            ? query.getWhere().getCompositeFilter().getFiltersList()
+            : List.of(query.getWhere());
+        Value bound = null;
+        for (StructuredQuery.Filter filter : filters) {
+            if (!filter.hasFieldFilter() || !filter.getFieldFilter().getField().getFieldPath().equals(fieldPath)) {
+                continue;
+            }
+            FieldFilter field = filter.getFieldFilter();
+            switch (field.getOp()) {
+                case EQUAL, GREATER_THAN, GREATER_THAN_OR_EQUAL -> {
+                    if (bound == null || DocumentValues.compare(field.getValue(), bound) > 0) {
+                        bound = field.getValue();
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        return bound;
+    }
+
+    // Index entries can lag a concurrent write; only yield documents that still match them
+    private Iterable<Document> indexed(NavigableSet<IndexEntry> entries, String fieldPath) {
+        List<String> path = DocumentValues.parsePath(fieldPath);
+        return () -> new Iterator<>() {
+            private final Iterator<IndexEntry> delegate = entries.iterator();
+            private Document next = advance();
+
+            private Document advance() {
+                while (delegate.hasNext()) {
+                    IndexEntry entry = delegate.next();
+                    Document document = documents.get(entry.name());
+                    if (document != null) {
+                        Value value = DocumentValues.get(document.getFieldsMap(), path);
+                        if (value != null && value.equals(entry.value())) {
+                            return document;
+                        }
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Document next() {
+                Document current = next;
+                next = advance();
+                return current;
+            }
+        };
+    }
+
+    private NavigableSet<IndexEntry> index(String collection, String fieldPath) {
+        NavigableSet<IndexEntry> index = indexes.getOrDefault(collection, Map.of()).get(fieldPath);
+        if (index != null) {
+            return index;
+        }
+        writeLock.lock();
+        try {
+            Map<String, NavigableSet<IndexEntry>> collectionIndexes = indexes.computeIfAbsent(collection, key -> new ConcurrentHashMap<>());
+            index = collectionIndexes.get(fieldPath);
+            if (index == null) {
+                index = new ConcurrentSkipListSet<>(IndexEntry.ORDER);
+                List<String> path = DocumentValues.parsePath(fieldPath);
+                for (Document document : scan(collection, false)) {
+                    Value value = DocumentValues.get(document.getFieldsMap(), path);
+                    if (value != null) {
+                        index.add(new IndexEntry(value, document.getName()));
+                    }
+                }
+                collectionIndexes.put(fieldPath, index);
+            }
+            return index;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private Iterable<Document> scan(String collection, boolean descending) {
+        NavigableMap<String, Document> range = documents.subMap(collection + "/", true, collection + "/" + MAX_NAME, false);
+        Iterable<Document> values = (descending ? range.descendingMap() : range).values();
+        return () -> new Iterator<>() {
+            private final Iterator<Document> delegate = values.iterator();
+            private Document next = advance();
+
+            private Document advance() {
+                while (delegate.hasNext()) {
+                    Document document = delegate.next();
+                    if (inCollection(document.getName(), collection)) {
+                        return document;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Document next() {
+                Document current = next;
+                next = advance();
+                return current;
+            }
+        };
+    }
+
+    // Direct children only, not documents in subcollections
+    private static boolean inCollection(String name, String collection) {
+        return name.startsWith(collection + "/") && name.indexOf('/', collection.length() + 1) < 0;
+    }
+
+    private static String collectionOf(String name) {
+        return name.substring(0, name.lastIndexOf('/'));
+    }
+
+    // ---- Filters, orderings and cursors ----
+
+    private static boolean matches(Document document, StructuredQuery.Filter filter) {
+        return switch (filter.getFilterTypeCase()) {
+            case COMPOSITE_FILTER -> {
+                List<StructuredQuery.Filter> children = filter.getCompositeFilter().getFiltersList();
+                yield filter.getCompositeFilter().getOp() == StructuredQuery.CompositeFilter.Operator.AND
+                    ? children.stream().allMatch(child -> matches(document, child))
+                    : children.stream().anyMatch(child -> matches(document, child));
+            }
+            case FIELD_FILTER -> matches(field(document, filter.getFieldFilter().getField().getFieldPath()), filter.getFieldFilter());
+            case UNARY_FILTER -> {
+                Value value = field(document, filter.getUnaryFilter().getField().getFieldPath());
+                yield value != null && switch (filter.getUnaryFilter().getOp()) {
+                    case IS_NULL -> value.hasNullValue();
+                    case IS_NOT_NULL -> !value.hasNullValue();
+                    case IS_NAN -> DocumentValues.isNaN(value);
+                    case IS_NOT_NAN -> !DocumentValues.isNaN(value) && !value.hasNullValue();
+                    default -> throw error(Status.INVALID_ARGUMENT, "Unknown unary filter " + filter.getUnaryFilter().getOp());
+                };
+            }
+            case FILTERTYPE_NOT_SET -> true;
+        };
+    }
+
+    private static boolean matches(Value value, FieldFilter filter) {
+        if (value == null) {
+            return false;
+        }
+        Value operand = filter.getValue();
+        return switch (filter.getOp()) {
+            case EQUAL -> DocumentValues.equal(value, operand);
+            case NOT_EQUAL -> !value.hasNullValue() && !DocumentValues.equal(value, operand);
+            case LESS_THAN -> comparable(value, operand) && DocumentValues.compare(value, operand) < 0;
+            case LESS_THAN_OR_EQUAL -> comparable(value, operand) && DocumentValues.compare(value, operand) <= 0;
+            case GREATER_THAN -> comparable(value, operand) && DocumentValues.compare(value, operand) > 0;
+            case GREATER_THAN_OR_EQUAL -> comparable(value, operand) && DocumentValues.compare(value, operand) >= 0;
+            case ARRAY_CONTAINS -> value.hasArrayValue()
+                && value.getArrayValue().getValuesList().stream().anyMatch(element -> DocumentValues.equal(element, operand));
+            case IN -> operand.getArrayValue().getValuesList().stream().anyMatch(element -> DocumentValues.equal(value, element));
+            case ARRAY_CONTAINS_ANY -> value.hasArrayValue() && value.getArrayValue().getValuesList().stream()
+                .anyMatch(element -> operand.getArrayValue().getValuesList().stream().anyMatch(wanted -> DocumentValues.equal(element, wanted)));
+            case NOT_IN -> !value.hasNullValue()
+                && operand.getArrayValue().getValuesList().stream().noneMatch(element -> DocumentValues.equal(value, element));
+            default -> throw error(Status.INVALID_ARGUMENT, "Unknown field filter " + filter.getOp());
+        };
+    }
+
+    // Range filters only match values of the same type
+    private static boolean comparable(Value value, Value operand) {
+        return DocumentValues.typeOrder(value) == DocumentValues.typeOrder(operand)
+            && !DocumentValues.isNaN(value) && !DocumentValues.isNaN(operand);
+    }
+
+    private static Value field(Document document, String fieldPath) {
+        return fieldPath.equals(DocumentValues.DOCUMENT_ID)
+            ? DocumentValues.reference(document.getName())
+            : DocumentValues.get(document.getFieldsMap(), DocumentValues.parsePath(fieldPath));
+    }
+
+    private static Value field(Document document, Order order) {
+        return order.isDocumentId()
+            ? DocumentValues.reference(document.getName())
+            : DocumentValues.get(document.getFieldsMap(), order.path());
+    }
+
+    // A document without an ordered field is left out of the results
+    private static boolean hasOrderFields(Document document, List<Order> orders) {
+        for (Order order : orders) {
+            if (!order.isDocumentId() && DocumentValues.get(document.getFieldsMap(), order.path()) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Comparator<Document> comparator(List<Order> orders) {
+        return (a, b) -> {
+            for (Order order : orders) {
+                int result = DocumentValues.compare(field(a, order), field(b, order));
+                if (result != 0) {
+                    return order.descending() ? -result : result;
+                }
+            }
+            return 0;
+        };
+    }
+
+    // Position of the document relative to a cursor over the leading orderings
+    private static int compareToCursor(Document document, List<Order> orders, Cursor cursor) {
+        for (int i = 0; i < cursor.getValuesCount() && i < orders.size(); i++) {
+            Order order = orders.get(i);
+            int result = DocumentValues.compare(field(document, order), cursor.getValues(i));
+            if (result != 0) {
+                return order.descending() ? -result : result;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean afterStart(Document document, List<Order> orders, Cursor start) {
+        int position = compareToCursor(document, orders, start);
+        return start.getBefore() ? position >= 0 : position > 0;
+    }
+
+    private static boolean beforeEnd(Document document, List<Order> orders, Cursor end) {
+        int position = compareToCursor(document, orders, end);
+        return end.getBefore() ? position < 0 : position <= 0;
+    }
+
+    private static Document project(Document document, List<String> fieldPaths) {
+        Map<String, Value> fields = new HashMap<>();
+        for (String fieldPath : fieldPaths) {
+            if (fieldPath.equals(DocumentValues.DOCUMENT_ID)) {
+                continue;
+            }
+            List<String> path = DocumentValues.parsePath(fieldPath);
+            Value value = DocumentValues.get(document.getFieldsMap(), path);
+            if (value != null) {
+                DocumentValues.set(fields, path, value);
+            }
+        }
+        return document.toBuilder().clearFields().putAllFields(fields).build();
+    }
+
+    private void checkName(String name) {
+        if (!name.startsWith(documentsRoot + "/")) {
+            throw error(Status.INVALID_ARGUMENT, "Document " + name + " is not in " + documentsRoot);
+        }
+    }
+
+    private static Timestamp readTime() {
+        Instant now = Instant.now();
+        return Timestamp.newBuilder().setSeconds(now.getEpochSecond()).setNanos(now.getNano() / 1_000 * 1_000).build();
+    }
+
+    static StatusRuntimeException error(Status status, String description) {
+        return status.withDescription(description).asRuntimeException();
+    }
+}
@@ -0,0 +1,41 @@
+package com.qwervego.label.fake;
+
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.cloud.NoCredentials;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+
+import java.util.Map;
+
+/**
+ * Real {@link Firestore} clients answered by {@link InMemoryFirestoreRpc}, for code
+ * outside this package (tests, benchmarks) that needs its own empty database, e.g.
+ * to inject faults without affecting the {@code fake-firebase} context.
+ */
+public final class InMemoryFirestore {
+    static final String DATABASE_ID = "(default)";
+
+    private InMemoryFirestore() {
+    }
+
+    /**
+     * A client over a new, empty database. {@code operations} maps names from
+     * {@link InMemoryFirestoreRpc#OPERATIONS} to their latency and faults; operations
+     * left out succeed immediately.
+     */
+    public static Firestore create(String projectId, Map<String, SimulatedOperation> operations) {
+        return client(projectId, new InMemoryDocumentStore(projectId, DATABASE_ID), operations, 4);
+    }
+
+    static Firestore client(String projectId, InMemoryDocumentStore store, Map<String, SimulatedOperation> operations, int threads) {
+        InMemoryFirestoreRpc rpc = new InMemoryFirestoreRpc(store, operations, threads);
+        return FirestoreOptions.newBuilder()
+            .setProjectId(projectId)
+            .setDatabaseId(DATABASE_ID)
+            .setCredentials(NoCredentials.getInstance())
+            .setCredentialsProvider(NoCredentialsProvider.create())
+            .setServiceRpcFactory(options -> rpc)
+            .build()
+            .getService();
+    }
+}
@@ -0,0 +1,327 @@
+package com.qwervego.label.fake;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.SettableApiFuture;
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.ApiCallContext;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.ApiExceptionFactory;
+import com.google.api.gax.rpc.BidiStreamingCallable;
+import com.google.api.gax.rpc.PageContext;
+import com.google.api.gax.rpc.PagedListDescriptor;
+import com.google.api.gax.rpc.ResponseObserver;
+import com.google.api.gax.rpc.ServerStreamingCallable;
+import com.google.api.gax.rpc.StreamController;
+import com.google.api.gax.rpc.UnaryCallable;
+import com.google.cloud.firestore.spi.v1.FirestoreRpc;
+import com.google.cloud.firestore.v1.FirestoreClient.ListCollectionIdsPagedResponse;
+import com.google.cloud.firestore.v1.FirestoreClient.ListDocumentsPagedResponse;
+import com.google.cloud.firestore.v1.FirestoreClient.PartitionQueryPagedResponse;
+import com.google.firestore.v1.BatchGetDocumentsRequest;
+import com.google.firestore.v1.BatchGetDocumentsResponse;
+import com.google.firestore.v1.BatchWriteRequest;
+import com.google.firestore.v1.BatchWriteResponse;
+import com.google.firestore.v1.BeginTransactionRequest;
+import com.google.firestore.v1.BeginTransactionResponse;
+import com.google.firestore.v1.CommitRequest;
+import com.google.firestore.v1.CommitResponse;
+import com.google.firestore.v1.ListCollectionIdsRequest;
+import com.google.firestore.v1.ListCollectionIdsResponse;
+import com.google.firestore.v1.ListDocumentsRequest;
+import com.google.firestore.v1.ListenRequest;
+import com.google.firestore.v1.ListenResponse;
+import com.google.firestore.v1.PartitionQueryRequest;
+import com.google.firestore.v1.RollbackRequest;
+import com.google.firestore.v1.RunAggregationQueryRequest;
+import com.google.firestore.v1.RunAggregationQueryResponse;
+import com.google.firestore.v1.RunQueryRequest;
+import com.google.firestore.v1.RunQueryResponse;
+import com.google.protobuf.Empty;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The Firestore client's transport, answered in-process from an
+ * {@link InMemoryDocumentStore} instead of over gRPC. Every call is delayed by its
+ * operation's latency distribution and may fail with an injected status, surfacing to
+ * the client as the same {@link ApiException} a real channel produces.
+ * <p>
+ * Snapshot listeners, partition queries and document listing are not supported.
+ */
+final class InMemoryFirestoreRpc implements FirestoreRpc {
+    static final List<String> OPERATIONS = List.of("commit", "batch-write", "batch-get", "run-query",
+        "run-aggregation-query", "begin-transaction", "rollback", "list-collection-ids");
+    private static final Set<Status.Code> RETRYABLE = Set.of(Status.Code.ABORTED, Status.Code.UNAVAILABLE,
+        Status.Code.DEADLINE_EXCEEDED, Status.Code.RESOURCE_EXHAUSTED, Status.Code.INTERNAL);
+
+    // Delays responses; the work itself runs on the transport pool
+    private final ScheduledExecutorService timer;
+    // Delivers responses, like gRPC's default cached executor, so clients blocking in callbacks cannot starve it
+    private final ExecutorService transport;
+    // The client's own executor for callbacks and transaction bodies
+    private final ScheduledExecutorService executor;
+    private final UnaryCallable<CommitRequest, CommitResponse> commit;
+    private final UnaryCallable<BatchWriteRequest, BatchWriteResponse> batchWrite;
+    private final ServerStreamingCallable<BatchGetDocumentsRequest, BatchGetDocumentsResponse> batchGet;
+    private final ServerStreamingCallable<RunQueryRequest, RunQueryResponse> runQuery;
+    private final ServerStreamingCallable<RunAggregationQueryRequest, RunAggregationQueryResponse> runAggregationQuery;
+    private final UnaryCallable<BeginTransactionRequest, BeginTransactionResponse> beginTransaction;
+    private final UnaryCallable<RollbackRequest, Empty> rollback;
+    private final UnaryCallable<ListCollectionIdsRequest, ListCollectionIdsPagedResponse> listCollectionIds;
+
+    /**
+     * @param threads size of the client executor; the real client uses max(4, cores)
+     */
+    InMemoryFirestoreRpc(InMemoryDocumentStore store, Map<String, SimulatedOperation> operations, int threads) {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, daemonThreads("fake-firestore-timer-"));
+        timer.setRemoveOnCancelPolicy(true);
+        this.timer = timer;
+        this.transport = Executors.newCachedThreadPool(daemonThreads("fake-firestore-transport-"));
+        this.executor = new ScheduledThreadPoolExecutor(threads, daemonThreads("fake-firestore-"));
+
+        Function<String, SimulatedOperation> operation = name -> operations.getOrDefault(name, SimulatedOperation.none(name));
+        commit = unary(operation.apply("commit"), store::commit);
+        batchWrite = unary(operation.apply("batch-write"), store::batchWrite);
+        batchGet = streaming(operation.apply("batch-get"), store::batchGet);
+        runQuery = streaming(operation.apply("run-query"), store::runQuery);
+        runAggregationQuery = streaming(operation.apply("run-aggregation-query"),
+            (request, sink) -> sink.accept(store.runAggregationQuery(request)));
+        beginTransaction = unary(operation.apply("begin-transaction"), store::beginTransaction);
+        rollback = unary(operation.apply("rollback"), request -> {
+            store.rollback(request.getTransaction());
+            return Empty.getDefaultInstance();
+        });
+        UnaryCallable<ListCollectionIdsRequest, ListCollectionIdsResponse> collectionIds =
+            unary(operation.apply("list-collection-ids"), store::listCollectionIds);
+        listCollectionIds = new UnaryCallable<>() {
+            @Override
+            public ApiFuture<ListCollectionIdsPagedResponse> futureCall(ListCollectionIdsRequest request, ApiCallContext context) {
+                PageContext<ListCollectionIdsRequest, ListCollectionIdsResponse, String> page =
+                    PageContext.create(collectionIds, CollectionIdPages.INSTANCE, request, context);
+                return ListCollectionIdsPagedResponse.createAsync(page, collectionIds.futureCall(request, context));
+            }
+        };
+    }
+
+    private <Q, R> UnaryCallable<Q, R> unary(SimulatedOperation operation, Function<Q, R> handler) {
+        return new UnaryCallable<>() {
+            @Override
+            public ApiFuture<R> futureCall(Q request, ApiCallContext context) {
+                SettableApiFuture<R> result = SettableApiFuture.create();
+                simulate(operation, result::setException, () -> {
+                    try {
+                        result.set(handler.apply(request));
+                    } catch (RuntimeException e) {
+                        result.setException(toApiException(e));
+                    }
+                });
+                return result;
+            }
+        };
+    }
+
+    // The whole stream is sent after one sampled delay
+    private <Q, R> ServerStreamingCallable<Q, R> streaming(SimulatedOperation operation, BiConsumer<Q, Consumer<R>> handler) {
+        return new ServerStreamingCallable<>() {
+            @Override
+            public void call(Q request, ResponseObserver<R> observer, ApiCallContext context) {
+                Stream stream = new Stream();
+                observer.onStart(stream);
+                simulate(operation, observer::onError, () -> {
+                    try {
+                        handler.accept(request, response -> {
+                            if (stream.cancelled) {
+                                throw new CancellationException("Stream cancelled by the client");
+                            }
+                            observer.onResponse(response);
+                        });
+                        observer.onComplete();
+                    } catch (CancellationException e) {
+                        observer.onError(e);
+                    } catch (RuntimeException e) {
+                        observer.onError(toApiException(e));
+                    }
+                });
+            }
+        };
+    }
+
+    private void simulate(SimulatedOperation operation, Consumer<Throwable> failure, Runnable call) {
+        Status.Code fault = operation.sampleFault();
+        Runnable task = fault == null
+            ? call
+            : () -> failure.accept(toApiException(InMemoryDocumentStore.error(
+                fault.toStatus(), "Injected " + fault + " on " + operation.name())));
+        long latency = operation.sampleLatencyNanos();
+        if (latency > 0) {
+            timer.schedule(() -> transport.execute(task), latency, TimeUnit.NANOSECONDS);
+        } else {
+            transport.execute(task);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static ApiException toApiException(RuntimeException e) {
+        if (e instanceof ApiException api) {
+            return api;
+        }
+        Status status = e instanceof StatusRuntimeException grpc ? grpc.getStatus() : Status.INTERNAL.withCause(e);
+        String message = status.getDescription() != null ? status.getDescription() : e.getMessage();
+        return ApiExceptionFactory.createException(message, e, GrpcStatusCode.of(status.getCode()),
+            RETRYABLE.contains(status.getCode()));
+    }
+
+    private static final class Stream implements StreamController {
+        private volatile boolean cancelled;
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public void disableAutoInboundFlowControl() {
+        }
+
+        @Override
+        public void request(int count) {
+        }
+    }
+
+    // Every listing fits in one page
+    private enum CollectionIdPages implements PagedListDescriptor<ListCollectionIdsRequest, ListCollectionIdsResponse, String> {
+        INSTANCE;
+
+        @Override
+        public String emptyToken() {
+            return "";
+        }
+
+        @Override
+        public ListCollectionIdsRequest injectToken(ListCollectionIdsRequest request, String token) {
+            return request.toBuilder().setPageToken(token).build();
+        }
+
+        @Override
+        public ListCollectionIdsRequest injectPageSize(ListCollectionIdsRequest request, int pageSize) {
+            return request.toBuilder().setPageSize(pageSize).build();
+        }
+
+        @Override
+        public Integer extractPageSize(ListCollectionIdsRequest request) {
+            return request.getPageSize();
+        }
+
+        @Override
+        public String extractNextToken(ListCollectionIdsResponse response) {
+            return response.getNextPageToken();
+        }
+
+        @Override
+        public Iterable<String> extractResources(ListCollectionIdsResponse response) {
+            return response.getCollectionIdsList();
+        }
+    }
+
+    @Override
+    public UnaryCallable<CommitRequest, CommitResponse> commitCallable() {
+        return commit;
+    }
+
+    @Override
+    public UnaryCallable<BatchWriteRequest, BatchWriteResponse> batchWriteCallable() {
+        return batchWrite;
+    }
+
+    @Override
+    public ServerStreamingCallable<BatchGetDocumentsRequest, BatchGetDocumentsResponse> batchGetDocumentsCallable() {
+        return batchGet;
+    }
+
+    @Override
+    public ScheduledExecutorService getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public ServerStreamingCallable<RunQueryRequest, RunQueryResponse> runQueryCallable() {
+        return runQuery;
+    }
+
+    @Override
+    public ServerStreamingCallable<RunAggregationQueryRequest, RunAggregationQueryResponse> runAggregationQueryCallable() {
+        return runAggregationQuery;
+    }
+
+    @Override
+    public UnaryCallable<BeginTransactionRequest, BeginTransactionResponse> beginTransactionCallable() {
+        return beginTransaction;
+    }
+
+    @Override
+    public UnaryCallable<RollbackRequest, Empty> rollbackCallable() {
+        return rollback;
+    }
+
+    @Override
+    public UnaryCallable<ListCollectionIdsRequest, ListCollectionIdsPagedResponse> listCollectionIdsPagedCallable() {
+        return listCollectionIds;
+    }
+
+    @Override
+    public UnaryCallable<PartitionQueryRequest, PartitionQueryPagedResponse> partitionQueryPagedCallable() {
+        throw new UnsupportedOperationException("Partition queries are not supported by the in-memory Firestore");
+    }
+
+    @Override
+    public UnaryCallable<ListDocumentsRequest, ListDocumentsPagedResponse> listDocumentsPagedCallable() {
+        throw new UnsupportedOperationException("Listing documents is not supported by the in-memory Firestore");
+    }
+
+    @Override
+    public BidiStreamingCallable<ListenRequest, ListenResponse> listenCallable() {
+        throw new UnsupportedOperationException("Snapshot listeners are not supported by the in-memory Firestore");
+    }
+
+    @Override
+    public void shutdownNow() {
+        timer.shutdownNow();
+        transport.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void shutdown() {
+        timer.shutdown();
+        transport.shutdown();
+        executor.shutdown();
+    }
+
+    @Override
+    public void close() {
+        shutdown();
+    }
+}
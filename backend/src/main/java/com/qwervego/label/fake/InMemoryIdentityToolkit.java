@@ -0,0 +1,445 @@
+package com.qwervego.label.fake;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import io.grpc.Status;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Firebase Auth's backend for the Admin SDK, in-process: installed as the
+ * {@link com.google.firebase.FirebaseOptions} HTTP transport, it answers the Identity
+ * Toolkit account calls ({@code accounts:lookup}, create, {@code accounts:update},
+ * {@code accounts:delete}) from memory and serves the certificate of its own token
+ * signing key, so {@code verifyIdToken} works unchanged on the tokens it mints.
+ * <p>
+ * Account calls are delayed and fail like {@link InMemoryFirestoreRpc} calls, per
+ * operation ({@code lookup}, {@code create}, {@code update}, {@code delete}); the
+ * certificate download is not, since the SDK caches it.
+ */
+public final class InMemoryIdentityToolkit extends HttpTransport {
+    static final List<String> OPERATIONS = List.of("lookup", "create", "update", "delete");
+    private static final String ID_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+    private static final long TOKEN_LIFETIME_SECONDS = 3600;
+    private static final TypeReference<Map<String, Object>> CLAIMS = new TypeReference<>() {
+    };
+
+    private final String projectId;
+    private final ObjectMapper objectMapper;
+    private final TokenSigner signer;
+    private final Map<String, SimulatedOperation> operations;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    private final Map<String, String> uidsByEmail = new ConcurrentHashMap<>();
+    private final Map<String, String> uidsByPhoneNumber = new ConcurrentHashMap<>();
+
+    private static final class Account {
+        final String uid;
+        final long createdAt = System.currentTimeMillis();
+        String email;
+        String phoneNumber;
+        String displayName;
+        String photoUrl;
+        boolean emailVerified;
+        boolean disabled;
+        String customAttributes;
+        long validSince = createdAt / 1000;
+
+        Account(String uid) {
+            this.uid = uid;
+        }
+    }
+
+    private static final class AuthError extends RuntimeException {
+        final int httpStatus;
+
+        AuthError(int httpStatus, String code) {
+            super(code, null, false, false);
+            this.httpStatus = httpStatus;
+        }
+    }
+
+    InMemoryIdentityToolkit(String projectId, ObjectMapper objectMapper, Map<String, SimulatedOperation> operations) {
+        this.projectId = projectId;
+        this.objectMapper = objectMapper;
+        this.signer = new TokenSigner(objectMapper);
+        this.operations = Map.copyOf(operations);
+    }
+
+    // ---- Tokens, for clients of the fake ----
+
+    /**
+     * A freshly signed ID token for an existing account, carrying its phone number,
+     * email and custom claims like a token from the Firebase client SDK would.
+     *
+     * @throws IllegalArgumentException if there is no such account
+     */
+    public String idToken(String uid) {
+        Account account = accounts.get(uid);
+        if (account == null) {
+            throw new IllegalArgumentException("No fake Firebase account " + uid);
+        }
+        long now = System.currentTimeMillis() / 1000;
+        Map<String, Object> claims = new LinkedHashMap<>();
+        Map<String, Object> identities = new LinkedHashMap<>();
+        String provider = "custom";
+        synchronized (this) {
+            if (account.customAttributes != null) {
+                try {
+                    claims.putAll(objectMapper.readValue(account.customAttributes, CLAIMS));
+                } catch (IOException e) {
+                    throw new IllegalStateException("Invalid custom claims on " + uid, e);
+                }
+            }
+            if (account.email != null) {
+                claims.put("email", account.email);
+                claims.put("email_verified", account.emailVerified);
+                identities.put("email", List.of(account.email));
+                provider = "password";
+            }
+            if (account.phoneNumber != null) {
+                claims.put("phone_number", account.phoneNumber);
+                identities.put("phone", List.of(account.phoneNumber));
+                provider = "phone";
+            }
+        }
+        claims.put("iss", "https://securetoken.google.com/" + projectId);
+        claims.put("aud", projectId);
+        claims.put("auth_time", now);
+        claims.put("user_id", uid);
+        claims.put("sub", uid);
+        claims.put("iat", now);
+        claims.put("exp", now + TOKEN_LIFETIME_SECONDS);
+        claims.put("firebase", Map.of("identities", identities, "sign_in_provider", provider));
+        return signer.sign(claims);
+    }
+
+    /**
+     * Signs in with a phone number the way phone auth does: the account is created the
+     * first time the number is seen. Returns an ID token.
+     */
+    public String signInWithPhoneNumber(String phoneNumber) {
+        String uid = uidsByPhoneNumber.get(phoneNumber);
+        if (uid == null) {
+            synchronized (this) {
+                uid = uidsByPhoneNumber.get(phoneNumber);
+                if (uid == null) {
+                    uid = newUid();
+                    Account account = new Account(uid);
+                    account.phoneNumber = phoneNumber;
+                    add(account);
+                }
+            }
+        }
+        return idToken(uid);
+    }
+
+    /**
+     * Adds an account directly, for seeding. Null fields are left unset.
+     */
+    public synchronized String createAccount(String uid, String phoneNumber, String email, Map<String, Object> customClaims) {
+        Account account = new Account(uid != null ? uid : newUid());
+        account.phoneNumber = phoneNumber;
+        account.email = emailKey(email);
+        if (customClaims != null && !customClaims.isEmpty()) {
+            try {
+                account.customAttributes = objectMapper.writeValueAsString(customClaims);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Invalid custom claims", e);
+            }
+        }
+        add(account);
+        return account.uid;
+    }
+
+    public int accountCount() {
+        return accounts.size();
+    }
+
+    // ---- HTTP ----
+
+    @Override
+    protected LowLevelHttpRequest buildRequest(String method, String url) {
+        return new MockLowLevelHttpRequest(url) {
+            @Override
+            public LowLevelHttpResponse execute() throws IOException {
+                return handle(method, url, getContentAsString());
+            }
+        };
+    }
+
+    private LowLevelHttpResponse handle(String method, String url, String body) throws IOException {
+        if (method.equals("GET") && url.contains("securetoken@system.gserviceaccount.com")) {
+            return json(200, objectMapper.createObjectNode().put(signer.keyId(), signer.certificatePem()))
+                .addHeader("Cache-Control", "public, max-age=3600");
+        }
+        String path = url.contains("?") ? url.substring(0, url.indexOf('?')) : url;
+        String operation;
+        if (path.endsWith("/accounts:lookup")) {
+            operation = "lookup";
+        } else if (path.endsWith("/accounts")) {
+            operation = "create";
+        } else if (path.endsWith("/accounts:update")) {
+            operation = "update";
+        } else if (path.endsWith("/accounts:delete")) {
+            operation = "delete";
+        } else {
+            return error(new AuthError(501, "UNIMPLEMENTED: " + method + " " + path + " is not supported by the fake"));
+        }
+
+        SimulatedOperation simulated = operations.getOrDefault(operation, SimulatedOperation.none(operation));
+        try {
+            TimeUnit.NANOSECONDS.sleep(simulated.sampleLatencyNanos());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during simulated latency");
+        }
+        Status.Code fault = simulated.sampleFault();
+        if (fault != null) {
+            return error(new AuthError(httpStatus(fault), fault.name()));
+        }
+
+        JsonNode request = body == null || body.isEmpty() ? objectMapper.createObjectNode() : objectMapper.readTree(body);
+        try {
+            return json(200, switch (operation) {
+                case "lookup" -> lookup(request);
+                case "create" -> create(request);
+                case "update" -> update(request);
+                default -> delete(request);
+            });
+        } catch (AuthError e) {
+            return error(e);
+        }
+    }
+
+    private ObjectNode lookup(JsonNode request) {
+        ObjectNode response = objectMapper.createObjectNode().put("kind", "identitytoolkit#GetAccountInfoResponse");
+        ArrayNode users = objectMapper.createArrayNode();
+        request.path("localId").forEach(uid -> addUser(users, accounts.get(uid.asText())));
+        request.path("email").forEach(email -> addUser(users, byKey(uidsByEmail, emailKey(email.asText()))));
+        request.path("phoneNumber").forEach(phone -> addUser(users, byKey(uidsByPhoneNumber, phone.asText())));
+        if (!users.isEmpty()) {
+            response.set("users", users);
+        }
+        return response;
+    }
+
+    private ObjectNode create(JsonNode request) {
+        Account account;
+        synchronized (this) {
+            String uid = request.hasNonNull("localId") ? request.get("localId").asText() : newUid();
+            account = new Account(uid);
+            account.email = emailKey(text(request, "email"));
+            account.phoneNumber = text(request, "phoneNumber");
+            account.displayName = text(request, "displayName");
+            account.photoUrl = text(request, "photoUrl");
+            account.emailVerified = request.path("emailVerified").asBoolean(false);
+            account.disabled = request.path("disabled").asBoolean(false);
+            add(account);
+        }
+        return objectMapper.createObjectNode().put("localId", account.uid);
+    }
+
+    private synchronized ObjectNode update(JsonNode request) {
+        Account account = existing(request);
+        if (request.has("email")) {
+            String email = emailKey(text(request, "email"));
+            move(uidsByEmail, emailKey(account.email), emailKey(email), account.uid, "EMAIL_EXISTS");
+            account.email = email;
+        }
+        if (request.has("phoneNumber")) {
+            String phoneNumber = text(request, "phoneNumber");
+            move(uidsByPhoneNumber, account.phoneNumber, phoneNumber, account.uid, "PHONE_NUMBER_EXISTS");
+            account.phoneNumber = phoneNumber;
+        }
+        if (request.has("displayName")) {
+            account.displayName = text(request, "displayName");
+        }
+        if (request.has("photoUrl")) {
+            account.photoUrl = text(request, "photoUrl");
+        }
+        if (request.has("emailVerified")) {
+            account.emailVerified = request.get("emailVerified").asBoolean();
+        }
+        if (request.has("disableUser")) {
+            account.disabled = request.get("disableUser").asBoolean();
+        }
+        if (request.has("customAttributes")) {
+            String attributes = text(request, "customAttributes");
+            account.customAttributes = attributes == null || attributes.equals("{}") ? null : attributes;
+        }
+        if (request.has("validSince")) {
+            account.validSince = request.get("validSince").asLong();
+        }
+        request.path("deleteAttribute").forEach(attribute -> {
+            switch (attribute.asText()) {
+                case "DISPLAY_NAME" -> account.displayName = null;
+                case "PHOTO_URL" -> account.photoUrl = null;
+                default -> {
+                }
+            }
+        });
+        request.path("deleteProvider").forEach(provider -> {
+            if (provider.asText().equals("phone")) {
+                release(uidsByPhoneNumber, account.phoneNumber, account.uid);
+                account.phoneNumber = null;
+            }
+        });
+        return objectMapper.createObjectNode().put("localId", account.uid);
+    }
+
+    private synchronized ObjectNode delete(JsonNode request) {
+        Account account = existing(request);
+        accounts.remove(account.uid);
+        release(uidsByEmail, emailKey(account.email), account.uid);
+        release(uidsByPhoneNumber, account.phoneNumber, account.uid);
+        return objectMapper.createObjectNode().put("kind", "identitytoolkit#DeleteAccountResponse");
+    }
+
+    // Caller holds the monitor
+    private void add(Account account) {
+        if (accounts.containsKey(account.uid)) {
+            throw new AuthError(400, "DUPLICATE_LOCAL_ID");
+        }
+        String email = emailKey(account.email);
+        if (email != null && uidsByEmail.containsKey(email)) {
+            throw new AuthError(400, "EMAIL_EXISTS");
+        }
+        if (account.phoneNumber != null && uidsByPhoneNumber.containsKey(account.phoneNumber)) {
+            throw new AuthError(400, "PHONE_NUMBER_EXISTS");
+        }
+        if (email != null) {
+            uidsByEmail.put(email, account.uid);
+        }
+        if (account.phoneNumber != null) {
+            uidsByPhoneNumber.put(account.phoneNumber, account.uid);
+        }
+        accounts.put(account.uid, account);
+    }
+
+    private Account existing(JsonNode request) {
+        Account account = accounts.get(request.path("localId").asText());
+        if (account == null) {
+            throw new AuthError(400, "USER_NOT_FOUND");
+        }
+        return account;
+    }
+
+    private static void move(Map<String, String> index, String from, String to, String uid, String conflict) {
+        if (Objects.equals(from, to)) {
+            return;
+        }
+        if (to != null && index.putIfAbsent(to, uid) != null) {
+            throw new AuthError(400, conflict);
+        }
+        release(index, from, uid);
+    }
+
+    private static String emailKey(String email) {
+        return email == null ? null : email.toLowerCase(Locale.ROOT);
+    }
+
+    private static void release(Map<String, String> index, String key, String uid) {
+        if (key != null) {
+            index.remove(key, uid);
+        }
+    }
+
+    private Account byKey(Map<String, String> index, String key) {
+        String uid = index.get(key);
+        return uid == null ? null : accounts.get(uid);
+    }
+
+    private synchronized void addUser(ArrayNode users, Account account) {
+        if (account == null) {
+            return;
+        }
+        ObjectNode user = users.addObject()
+            .put("localId", account.uid)
+            .put("emailVerified", account.emailVerified)
+            .put("disabled", account.disabled)
+            .put("createdAt", String.valueOf(account.createdAt))
+            .put("lastLoginAt", String.valueOf(account.createdAt))
+            .put("validSince", String.valueOf(account.validSince));
+        List<ObjectNode> providers = new ArrayList<>();
+        if (account.email != null) {
+            user.put("email", account.email);
+            providers.add(objectMapper.createObjectNode().put("providerId", "password")
+                .put("rawId", account.email).put("email", account.email));
+        }
+        if (account.phoneNumber != null) {
+            user.put("phoneNumber", account.phoneNumber);
+            providers.add(objectMapper.createObjectNode().put("providerId", "phone")
+                .put("rawId", account.phoneNumber).put("phoneNumber", account.phoneNumber));
+        }
+        if (account.displayName != null) {
+            user.put("displayName", account.displayName);
+        }
+        if (account.photoUrl != null) {
+            user.put("photoUrl", account.photoUrl);
+        }
+        if (account.customAttributes != null) {
+            user.put("customAttributes", account.customAttributes);
+        }
+        user.putArray("providerUserInfo").addAll(providers);
+    }
+
+    private String newUid() {
+        StringBuilder uid = new StringBuilder(28);
+        for (int i = 0; i < 28; i++) {
+            uid.append(ID_CHARACTERS.charAt(random.nextInt(ID_CHARACTERS.length())));
+        }
+        return uid.toString();
+    }
+
+    private static String text(JsonNode request, String field) {
+        JsonNode value = request.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private MockLowLevelHttpResponse json(int status, JsonNode body) throws IOException {
+        return new MockLowLevelHttpResponse()
+            .setStatusCode(status)
+            .setContentType("application/json; charset=UTF-8")
+            .setContent(objectMapper.writeValueAsString(body));
+    }
+
+    private LowLevelHttpResponse error(AuthError e) throws IOException {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.putObject("error").put("code", e.httpStatus).put("message", e.getMessage());
+        return json(e.httpStatus, body);
+    }
+
+    private static int httpStatus(Status.Code code) {
+        return switch (code) {
+            case INVALID_ARGUMENT, FAILED_PRECONDITION, OUT_OF_RANGE -> 400;
+            case UNAUTHENTICATED -> 401;
+            case PERMISSION_DENIED -> 403;
+            case NOT_FOUND -> 404;
+            case ALREADY_EXISTS, ABORTED -> 409;
+            case RESOURCE_EXHAUSTED -> 429;
+            case UNIMPLEMENTED -> 501;
+            case UNAVAILABLE -> 503;
+            case DEADLINE_EXCEEDED -> 504;
+            default -> 500;
+        };
+    }
+}
@@ -0,0 +1,113 @@
+package com.qwervego.label.fake;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Simulated service time of a fake RPC, parsed from a property value:
+ * <ul>
+ *     <li>{@code 0} or empty: no delay</li>
+ *     <li>{@code 5ms}: always the same</li>
+ *     <li>{@code uniform(2ms,10ms)}: uniform between the two</li>
+ *     <li>{@code exponential(5ms)}: exponential with that mean</li>
+ *     <li>{@code lognormal(8ms,40ms)}: log-normal with that median and 99th percentile,
+ *     the usual shape of a remote call's latency</li>
+ * </ul>
+ */
+public abstract class LatencyDistribution {
+    // Standard normal quantile at 0.99
+    private static final double Z_99 = 2.3263478740408408;
+
+    public static final LatencyDistribution NONE = fixed(Duration.ZERO);
+
+    public abstract long sampleNanos();
+
+    public static LatencyDistribution parse(String spec) {
+        String text = spec == null ? "" : spec.replace(" ", "");
+        if (text.isEmpty() || text.equals("0")) {
+            return NONE;
+        }
+        int open = text.indexOf('(');
+        if (open < 0) {
+            return fixed(duration(text));
+        }
+        if (!text.endsWith(")")) {
+            throw new IllegalArgumentException("Invalid latency distribution: " + spec);
+        }
+        String[] args = text.substring(open + 1, text.length() - 1).split(",");
+        String kind = text.substring(0, open);
+        switch (kind) {
+            case "uniform" -> {
+                requireArgs(spec, args, 2);
+                return uniform(duration(args[0]), duration(args[1]));
+            }
+            case "exponential" -> {
+                requireArgs(spec, args, 1);
+                return exponential(duration(args[0]));
+            }
+            case "lognormal" -> {
+                requireArgs(spec, args, 2);
+                return logNormal(duration(args[0]), duration(args[1]));
+            }
+            default -> throw new IllegalArgumentException("Unknown latency distribution '" + kind + "' in: " + spec);
+        }
+    }
+
+    public static LatencyDistribution fixed(Duration latency) {
+        long nanos = latency.toNanos();
+        return describe(() -> nanos, latency.toString());
+    }
+
+    public static LatencyDistribution uniform(Duration min, Duration max) {
+        long low = min.toNanos();
+        long high = max.toNanos();
+        if (high < low) {
+            throw new IllegalArgumentException("uniform latency: " + max + " is below " + min);
+        }
+        return describe(() -> low == high ? low : ThreadLocalRandom.current().nextLong(low, high + 1),
+            "uniform(" + min + ", " + max + ")");
+    }
+
+    public static LatencyDistribution exponential(Duration mean) {
+        double nanos = mean.toNanos();
+        return describe(() -> (long) (-nanos * Math.log(1 - ThreadLocalRandom.current().nextDouble())),
+            "exponential(" + mean + ")");
+    }
+
+    public static LatencyDistribution logNormal(Duration median, Duration p99) {
+        if (median.isZero() || median.isNegative() || p99.compareTo(median) < 0) {
+            throw new IllegalArgumentException("lognormal latency needs 0 < median <= p99, got " + median + ", " + p99);
+        }
+        double mu = Math.log(median.toNanos());
+        double sigma = Math.log((double) p99.toNanos() / median.toNanos()) / Z_99;
+        return describe(() -> (long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian()),
+            "lognormal(median " + median + ", p99 " + p99 + ")");
+    }
+
+    private static LatencyDistribution describe(LongSupplier sampler, String description) {
+        return new LatencyDistribution() {
+            @Override
+            public long sampleNanos() {
+                return sampler.getAsLong();
+            }
+
+            @Override
+            public String toString() {
+                return description;
+            }
+        };
+    }
+
+    private static Duration duration(String text) {
+        return DurationStyle.detectAndParse(text);
+    }
+
+    private static void requireArgs(String spec, String[] args, int count) {
+        if (args.length != count) {
+            throw new IllegalArgumentException("Expected " + count + " argument(s) in latency distribution: " + spec);
+        }
+    }
+}
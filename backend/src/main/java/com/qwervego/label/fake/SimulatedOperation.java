@@ -0,0 +1,75 @@
+package com.qwervego.label.fake;
+
+import io.grpc.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * What a fake RPC costs and how often it fails: a latency distribution, and the
+ * probability of each injected error status. Faults are written as a comma-separated
+ * list of {@code CODE:probability}, e.g. {@code UNAVAILABLE:0.01,ABORTED:0.002}.
+ */
+public record SimulatedOperation(String name, LatencyDistribution latency, List<Fault> faults) {
+
+    public record Fault(Status.Code code, double probability) {
+    }
+
+    public SimulatedOperation {
+        faults = List.copyOf(faults);
+        double total = faults.stream().mapToDouble(Fault::probability).sum();
+        if (total > 1) {
+            throw new IllegalArgumentException("Fault probabilities for " + name + " add up to more than 1: " + faults);
+        }
+    }
+
+    public static SimulatedOperation none(String name) {
+        return new SimulatedOperation(name, LatencyDistribution.NONE, List.of());
+    }
+
+    public static SimulatedOperation parse(String name, String latency, String faults) {
+        List<Fault> parsed = new ArrayList<>();
+        if (faults != null && !faults.isBlank()) {
+            for (String entry : faults.split(",")) {
+                String[] parts = entry.trim().split(":");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Invalid fault '" + entry + "' for " + name + ", expected CODE:probability");
+                }
+                Status.Code code = Status.Code.valueOf(parts[0].trim());
+                double probability = Double.parseDouble(parts[1].trim());
+                if (code == Status.Code.OK || probability < 0 || probability > 1) {
+                    throw new IllegalArgumentException("Invalid fault '" + entry + "' for " + name);
+                }
+                parsed.add(new Fault(code, probability));
+            }
+        }
+        return new SimulatedOperation(name, LatencyDistribution.parse(latency), parsed);
+    }
+
+    public long sampleLatencyNanos() {
+        return Math.max(0, latency.sampleNanos());
+    }
+
+    /**
+     * The error this call fails with, or null when it goes through.
+     */
+    public Status.Code sampleFault() {
+        if (faults.isEmpty()) {
+            return null;
+        }
+        double roll = ThreadLocalRandom.current().nextDouble();
+        for (Fault fault : faults) {
+            roll -= fault.probability();
+            if (roll < 0) {
+                return fault.code();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + latency + (faults.isEmpty() ? "" : ", faults " + faults);
+    }
+}
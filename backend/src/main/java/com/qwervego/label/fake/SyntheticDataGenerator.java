@@ -0,0 +1,204 @@
+package com.qwervego.label.fake;
+
+import com.google.firestore.v1.Value;
+import com.qwervego.label.model.Admin;
+import com.qwervego.label.model.AdminDocumentMapper;
+import com.qwervego.label.model.Qr;
+import com.qwervego.label.model.QrDocumentMapper;
+import com.qwervego.label.model.User;
+import com.qwervego.label.model.UserDocumentMapper;
+import com.qwervego.label.util.PhoneNumbers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+
+/**
+ * Seeds the in-memory Firestore and Firebase Auth with a synthetic dataset shaped like
+ * production: {@code qrs} tags (a share of them activated by an owner), phone
+ * {@code users} with a matching Auth account each, {@code admins} with an email
+ * account and role claim, and {@code qr_stats} counters that agree with the tags.
+ * Documents are written in the same layout the repositories write, straight into the
+ * store rather than through commits, so millions load in seconds.
+ * <p>
+ * The dataset is a function of the plan: IDs, phone numbers and dates all come from
+ * {@code randomSeed}, so a load test can address existing documents through
+ * {@link #qrId}, {@link #userPhoneNumber} and {@link #adminUid} without reading them
+ * first.
+ */
+public final class SyntheticDataGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(SyntheticDataGenerator.class);
+    private static final String ID_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    private static final int ID_LENGTH = 6;
+    private static final long ID_SPACE = 2_176_782_336L; // 36^6
+    // Coprime with 36^6, so index -> ID is a bijection over the ID space
+    private static final long ID_STRIDE = 1_000_003L;
+    private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE.withZone(ZoneOffset.UTC);
+
+    /**
+     * Password of every seeded active tag, stored BCrypt-hashed like a real one.
+     */
+    public static final String QR_PASSWORD = "password";
+
+    public record Plan(long qrs, double activeRatio, long users, long admins, int days, long randomSeed) {
+        public Plan {
+            if (qrs < 0 || users < 0 || admins < 0 || days < 1 || activeRatio < 0 || activeRatio > 1) {
+                throw new IllegalArgumentException("Invalid seed plan: " + this);
+            }
+            if (qrs > ID_SPACE) {
+                throw new IllegalArgumentException("At most " + ID_SPACE + " tags fit the 6-character ID space");
+            }
+        }
+    }
+
+    private final InMemoryDocumentStore store;
+    private final InMemoryIdentityToolkit identityToolkit;
+    private final Plan plan;
+
+    SyntheticDataGenerator(InMemoryDocumentStore store, InMemoryIdentityToolkit identityToolkit, Plan plan) {
+        this.store = store;
+        this.identityToolkit = identityToolkit;
+        this.plan = plan;
+    }
+
+    public Plan plan() {
+        return plan;
+    }
+
+    /**
+     * ID of the {@code index}-th seeded tag, for {@code 0 <= index < plan.qrs()}.
+     */
+    public String qrId(long index) {
+        long value = Math.floorMod(index * ID_STRIDE + plan.randomSeed(), ID_SPACE);
+        char[] id = new char[ID_LENGTH];
+        for (int i = ID_LENGTH - 1; i >= 0; i--) {
+            id[i] = ID_CHARS.charAt((int) (value % ID_CHARS.length()));
+            value /= ID_CHARS.length();
+        }
+        return new String(id);
+    }
+
+    /**
+     * Whether the {@code index}-th seeded tag was activated.
+     */
+    public boolean isActive(long index) {
+        return random(index, 1).nextDouble() < plan.activeRatio();
+    }
+
+    public String userPhoneNumber(long index) {
+        return String.format("+1555%07d", index);
+    }
+
+    public String userUid(long index) {
+        return String.format("user-%09d", index);
+    }
+
+    public String adminUid(long index) {
+        return String.format("admin-%06d", index);
+    }
+
+    public String adminEmail(long index) {
+        return "admin" + index + "@example.com";
+    }
+
+    void generate() {
+        long start = System.nanoTime();
+        String passwordHash = plan.qrs() > 0 && plan.activeRatio() > 0 ? new BCryptPasswordEncoder().encode(QR_PASSWORD) : null;
+        long now = System.currentTimeMillis();
+        long span = Duration.ofDays(plan.days()).toMillis();
+
+        long active = 0;
+        Map<String, Long> createdPerDay = new TreeMap<>();
+        for (long i = 0; i < plan.qrs(); i++) {
+            SplittableRandom random = random(i, 2);
+            Qr qr = new Qr();
+            qr.setId(qrId(i));
+            qr.setPassword("");
+            qr.setCreatedDate(new Date(now - (long) (random.nextDouble() * span)));
+            if (isActive(i)) {
+                active++;
+                long owner = plan.users() > 0 ? Math.floorMod(random.nextLong(), plan.users()) : i;
+                qr.setActive(true);
+                qr.setName("Owner " + owner);
+                qr.setEmail("owner" + owner + "@example.com");
+                qr.setAddress(random.nextInt(1, 10_000) + " Synthetic Street");
+                qr.setPhoneNumber(userPhoneNumber(owner));
+                qr.setPassword(passwordHash);
+                qr.setActivationDate(new Date(qr.getCreatedDate().getTime()
+                    + (long) (random.nextDouble() * (now - qr.getCreatedDate().getTime()))));
+            }
+            Map<String, Object> data = QrDocumentMapper.toMap(qr, 1);
+            data.put("phoneE164", PhoneNumbers.toE164(qr.getPhoneNumber()));
+            store.put("qrs/" + qr.getId(), encode(data));
+            createdPerDay.merge(DAY.format(qr.getCreatedDate().toInstant()), 1L, Long::sum);
+            progress("qrs", i + 1, plan.qrs());
+        }
+        if (plan.qrs() > 0) {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("total", plan.qrs());
+            stats.put("active", active);
+            stats.put("inactive", plan.qrs() - active);
+            stats.put("generated", createdPerDay);
+            store.put("qr_stats/shard-0", encode(stats));
+        }
+
+        for (long i = 0; i < plan.users(); i++) {
+            SplittableRandom random = random(i, 3);
+            User user = new User();
+            user.setId(autoId(random));
+            user.setPhoneNumber(userPhoneNumber(i));
+            user.setCreatedDate(new Date(now - (long) (random.nextDouble() * span)));
+            Map<String, Object> data = UserDocumentMapper.toMap(user, 1);
+            data.put("phoneE164", PhoneNumbers.toE164(user.getPhoneNumber()));
+            store.put("users/" + user.getId(), encode(data));
+            identityToolkit.createAccount(userUid(i), user.getPhoneNumber(), null, null);
+            progress("users", i + 1, plan.users());
+        }
+
+        for (long i = 0; i < plan.admins(); i++) {
+            String role = i == 0 ? "SUPERADMIN" : "ADMIN";
+            Admin admin = new Admin(adminUid(i), "admin" + i, null, adminEmail(i), role,
+                new Date(now - (long) (random(i, 4).nextDouble() * span)), null, true);
+            store.put("admins/" + admin.getId(), encode(AdminDocumentMapper.toMap(admin)));
+            identityToolkit.createAccount(admin.getId(), null, admin.getEmail(), Map.of("role", role));
+        }
+
+        logger.info("Seeded {} qrs ({} active), {} users and {} admins in {} ms",
+            plan.qrs(), active, plan.users(), plan.admins(), Duration.ofNanos(System.nanoTime() - start).toMillis());
+    }
+
+    private SplittableRandom random(long index, int stream) {
+        return new SplittableRandom(plan.randomSeed() * 31 + index * 8 + stream);
+    }
+
+    // Same alphabet and length as the client's auto-generated document IDs
+    private static String autoId(SplittableRandom random) {
+        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+        char[] id = new char[20];
+        for (int i = 0; i < id.length; i++) {
+            id[i] = chars.charAt(random.nextInt(chars.length()));
+        }
+        return new String(id);
+    }
+
+    private static Map<String, Value> encode(Map<String, Object> data) {
+        Map<String, Value> fields = new LinkedHashMap<>();
+        data.forEach((name, value) -> fields.put(name, DocumentValues.encode(value)));
+        return fields;
+    }
+
+    private static void progress(String collection, long done, long total) {
+        if (done % 1_000_000 == 0 && done < total) {
+            logger.info("Seeding {}: {} of {}", collection, done, total);
+        }
+    }
+}
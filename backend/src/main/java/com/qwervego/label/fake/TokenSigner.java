@@ -0,0 +1,124 @@
+package com.qwervego.label.fake;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Signs ID tokens the way the Firebase Auth backend does (RS256 JWTs with a {@code kid}
+ * header), with a key pair generated at startup. The matching certificate is what
+ * {@link InMemoryIdentityToolkit} serves at the public certificate URL, so the Admin
+ * SDK verifies these tokens with its normal code path.
+ */
+final class TokenSigner {
+    private static final byte[] SHA256_WITH_RSA = {0x06, 0x09, 0x2A, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xF7, 0x0D, 0x01, 0x01, 0x0B};
+    private static final byte[] COMMON_NAME = {0x06, 0x03, 0x55, 0x04, 0x03};
+    private static final DateTimeFormatter UTC_TIME = DateTimeFormatter.ofPattern("yyMMddHHmmss'Z'");
+    private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+
+    private final ObjectMapper objectMapper;
+    private final KeyPair keys;
+    private final String keyId = UUID.randomUUID().toString();
+    private final String certificatePem;
+
+    TokenSigner(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            this.keys = generator.generateKeyPair();
+            this.certificatePem = "-----BEGIN CERTIFICATE-----\n"
+                + Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(selfSignedCertificate())
+                + "\n-----END CERTIFICATE-----\n";
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not create the fake token signing key", e);
+        }
+    }
+
+    String keyId() {
+        return keyId;
+    }
+
+    String certificatePem() {
+        return certificatePem;
+    }
+
+    String sign(Map<String, Object> claims) {
+        Map<String, Object> header = new LinkedHashMap<>();
+        header.put("alg", "RS256");
+        header.put("kid", keyId);
+        header.put("typ", "JWT");
+        try {
+            String signingInput = BASE64_URL.encodeToString(objectMapper.writeValueAsBytes(header)) + "."
+                + BASE64_URL.encodeToString(objectMapper.writeValueAsBytes(claims));
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(keys.getPrivate());
+            signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+            return signingInput + "." + BASE64_URL.encodeToString(signature.sign());
+        } catch (JsonProcessingException | GeneralSecurityException e) {
+            throw new IllegalStateException("Could not sign token", e);
+        }
+    }
+
+    // Minimal DER encoding of an X.509 v3 certificate, self-signed, with no extensions
+    private byte[] selfSignedCertificate() throws GeneralSecurityException {
+        byte[] algorithm = sequence(SHA256_WITH_RSA, new byte[]{0x05, 0x00});
+        byte[] name = tlv(0x31, sequence(COMMON_NAME, tlv(0x0C, "fake-securetoken".getBytes(StandardCharsets.UTF_8))));
+        byte[] issuer = sequence(name);
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        byte[] validity = sequence(
+            tlv(0x17, UTC_TIME.format(now.minusDays(1)).getBytes(StandardCharsets.US_ASCII)),
+            tlv(0x17, UTC_TIME.format(now.plusYears(10)).getBytes(StandardCharsets.US_ASCII)));
+        byte[] tbs = sequence(
+            tlv(0xA0, tlv(0x02, BigInteger.TWO.toByteArray())),
+            tlv(0x02, BigInteger.valueOf(now.toEpochSecond()).toByteArray()),
+            algorithm, issuer, validity, issuer,
+            keys.getPublic().getEncoded());
+
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(keys.getPrivate());
+        signature.update(tbs);
+        byte[] signed = signature.sign();
+        byte[] bits = new byte[signed.length + 1];
+        System.arraycopy(signed, 0, bits, 1, signed.length);
+        return sequence(tbs, algorithm, tlv(0x03, bits));
+    }
+
+    private static byte[] sequence(byte[]... parts) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            content.writeBytes(part);
+        }
+        return tlv(0x30, content.toByteArray());
+    }
+
+    private static byte[] tlv(int tag, byte[] content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(tag);
+        int length = content.length;
+        if (length < 0x80) {
+            out.write(length);
+        } else {
+            byte[] bytes = BigInteger.valueOf(length).toByteArray();
+            int start = bytes[0] == 0 ? 1 : 0;
+            out.write(0x80 | (bytes.length - start));
+            out.write(bytes, start, bytes.length - start);
+        }
+        out.writeBytes(content);
+        return out.toByteArray();
+    }
+}
@@ -1,5 +1,7 @@
 package com.qwervego.label.model;
 
+import com.qwervego.label.mapping.DocumentId;
+import com.qwervego.label.mapping.FirestoreDocument;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
@@ -11,7 +13,9 @@ import java.util.Date;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+@FirestoreDocument
 public class Admin {
+    @DocumentId
     private String id;
 
     @NotBlank(message = "Username is required")
@@ -1,6 +1,11 @@
 package com.qwervego.label.model;
 
 import java.util.Date;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.google.cloud.Timestamp;
+import com.qwervego.label.mapping.DocumentId;
+import com.qwervego.label.mapping.DocumentUpdateTime;
+import com.qwervego.label.mapping.FirestoreDocument;
 import jakarta.validation.constraints.NotBlank;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -9,7 +14,9 @@ import lombok.NoArgsConstructor;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+@FirestoreDocument
 public class Qr {
+    @DocumentId
     private String id;
     private boolean isActive;
 
@@ -31,4 +38,9 @@ public class Qr {
 
     private Date createdDate;
     private Date activationDate;
+
+    // Firestore update time of the document this was read from; not a stored field
+    @JsonIgnore
+    @DocumentUpdateTime
+    private Timestamp updateTime;
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.qwervego.label.model;
 
+import com.qwervego.label.mapping.DocumentId;
+import com.qwervego.label.mapping.FirestoreDocument;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
@@ -8,7 +10,9 @@ import java.util.Date;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+@FirestoreDocument
 public class User {
+    @DocumentId
     private String id;
     private String phoneNumber;
     private Date createdDate;
@@ -0,0 +1,218 @@
+package com.qwervego.label.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only key/value log in a memory-mapped file, the storage under
+ * {@link EmbeddedQrStore}. The file is mapped in fixed-size regions, added as the log
+ * grows; a record never spans two regions. A record is
+ * {@code [body length][crc32 of body][op][key length][key][value]}, and a delete is a
+ * record without a value.
+ * <p>
+ * Appends must be serialized by the caller. Reading a {@link Location} is safe from any
+ * thread, also after the log has been closed and replaced by a compacted one: a mapping
+ * stays valid until nothing refers to it.
+ */
+final class AppendLog implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(AppendLog.class);
+    private static final int HEADER_BYTES = 8;
+    private static final int BODY_PREFIX_BYTES = 3;
+    // In the length slot: the rest of this region is unused, continue with the next one
+    private static final int PADDING = -1;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    /**
+     * Where a record's value lives. {@code recordLength} is the whole record, header
+     * included, for garbage accounting.
+     */
+    record Location(AppendLog log, int region, int offset, int length, int recordLength) {
+
+        ByteBuffer value() {
+            return log.regions[region].slice(offset, length);
+        }
+    }
+
+    interface Visitor {
+        void accept(String key, Location location, boolean deleted);
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int regionSize;
+    // Replaced, never modified, when a region is added, so readers need no lock
+    private volatile MappedByteBuffer[] regions;
+    private int region;
+    private int position;
+    private int forcedFrom;
+
+    private AppendLog(Path path, FileChannel channel, int regionSize, MappedByteBuffer[] regions) {
+        this.path = path;
+        this.channel = channel;
+        this.regionSize = regionSize;
+        this.regions = regions;
+    }
+
+    /**
+     * Opens or creates the log and passes every record, oldest first, to
+     * {@code visitor}. A torn record at the end (a crash mid-append) ends the replay and
+     * is cleared, so the next append replaces it.
+     */
+    static AppendLog open(Path path, int regionSize, Visitor visitor) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            int count = (int) Math.max(1, (channel.size() + regionSize - 1) / regionSize);
+            MappedByteBuffer[] regions = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                regions[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * regionSize, regionSize);
+            }
+            AppendLog log = new AppendLog(path, channel, regionSize, regions);
+            log.replay(visitor);
+            return log;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void replay(Visitor visitor) throws IOException {
+        MappedByteBuffer[] mapped = regions;
+        int r = 0;
+        int offset = 0;
+        boolean torn = false;
+        while (true) {
+            MappedByteBuffer buffer = mapped[r];
+            int length = regionSize - offset < HEADER_BYTES ? PADDING : buffer.getInt(offset);
+            if (length == PADDING) {
+                if (r + 1 == mapped.length) {
+                    break;
+                }
+                r++;
+                offset = 0;
+                continue;
+            }
+            if (length == 0) {
+                break;
+            }
+            if (length < BODY_PREFIX_BYTES || length > regionSize - offset - HEADER_BYTES
+                    || buffer.getInt(offset + 4) != crc(buffer, offset + HEADER_BYTES, length)) {
+                torn = true;
+                break;
+            }
+            int body = offset + HEADER_BYTES;
+            byte op = buffer.get(body);
+            int keyLength = buffer.getShort(body + 1) & 0xFFFF;
+            byte[] key = new byte[keyLength];
+            buffer.get(body + BODY_PREFIX_BYTES, key);
+            int valueOffset = body + BODY_PREFIX_BYTES + keyLength;
+            visitor.accept(new String(key, StandardCharsets.UTF_8),
+                new Location(this, r, valueOffset, length - BODY_PREFIX_BYTES - keyLength, HEADER_BYTES + length),
+                op == DELETE);
+            offset += HEADER_BYTES + length;
+        }
+        region = r;
+        position = offset;
+        forcedFrom = r;
+
+        if (torn) {
+            logger.warn("Discarding torn record at the end of {} (region {}, offset {})", path, r, offset);
+            mapped[r].put(offset, new byte[regionSize - offset]);
+            mapped[r].force();
+        }
+        if (r + 1 < mapped.length) {
+            regions = Arrays.copyOf(mapped, r + 1);
+            channel.truncate((long) (r + 1) * regionSize);
+        }
+    }
+
+    /**
+     * Appends a record; a null {@code value} records a delete of {@code key}.
+     */
+    Location append(String key, byte[] value) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Key longer than 65535 bytes: " + key);
+        }
+        int valueLength = value == null ? 0 : value.length;
+        int length = BODY_PREFIX_BYTES + keyBytes.length + valueLength;
+        if (HEADER_BYTES + length > regionSize) {
+            throw new IllegalArgumentException("Record for " + key + " does not fit in a " + regionSize + " byte region");
+        }
+        if (regionSize - position < HEADER_BYTES + length) {
+            if (regionSize - position >= Integer.BYTES) {
+                regions[region].putInt(position, PADDING);
+            }
+            addRegion();
+        }
+
+        MappedByteBuffer buffer = regions[region];
+        int body = position + HEADER_BYTES;
+        buffer.put(body, value == null ? DELETE : PUT);
+        buffer.putShort(body + 1, (short) keyBytes.length);
+        buffer.put(body + BODY_PREFIX_BYTES, keyBytes);
+        if (value != null) {
+            buffer.put(body + BODY_PREFIX_BYTES + keyBytes.length, value);
+        }
+        buffer.putInt(position + 4, crc(buffer, body, length));
+        // Written last: replay stops at a zero length
+        buffer.putInt(position, length);
+
+        Location location = new Location(this, region, body + BODY_PREFIX_BYTES + keyBytes.length, valueLength,
+            HEADER_BYTES + length);
+        position += HEADER_BYTES + length;
+        return location;
+    }
+
+    private void addRegion() throws IOException {
+        MappedByteBuffer[] grown = Arrays.copyOf(regions, region + 2);
+        // Mapping past the end of the file extends it (sparse, zero-filled)
+        grown[region + 1] = channel.map(FileChannel.MapMode.READ_WRITE, (long) (region + 1) * regionSize, regionSize);
+        regions = grown;
+        region++;
+        position = 0;
+    }
+
+    /**
+     * Bytes from the start of the log to the end of the last record.
+     */
+    long size() {
+        return (long) region * regionSize + position;
+    }
+
+    /**
+     * Writes appended records through to the device. Without it they survive a crash
+     * of the process (they are in the page cache) but not of the machine.
+     */
+    void force() {
+        MappedByteBuffer[] mapped = regions;
+        for (int i = forcedFrom; i <= region; i++) {
+            mapped[i].force();
+        }
+        forcedFrom = region;
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private static int crc(ByteBuffer buffer, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,158 @@
+package com.qwervego.label.repository;
+
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldMask;
+import com.google.cloud.firestore.Firestore;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects single-document reads issued within a short window and resolves them
+ * with one {@link Firestore#getAll} call. A batch is sent when the window closes
+ * or as soon as it reaches {@code maxBatchSize} distinct documents. Only the fields
+ * in the given mask are read.
+ */
+public class BatchLoader implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(BatchLoader.class);
+
+    private final Firestore firestore;
+    private final FieldMask fields;
+    private final Duration window;
+    private final int maxBatchSize;
+    private final DistributionSummary batchSizes;
+    private final ScheduledExecutorService scheduler;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Keyed by document path so duplicate keys in one window share a read
+    private Map<String, Pending> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    public BatchLoader(String name, Firestore firestore, FieldMask fields, Duration window, int maxBatchSize,
+                       MeterRegistry meterRegistry) {
+        this.firestore = firestore;
+        this.fields = fields;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.batchSizes = DistributionSummary.builder("repository.batch.size")
+            .tag("name", name)
+            .description("Documents resolved per getAll call")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "batch-loader-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<DocumentSnapshot> load(DocumentReference docRef) {
+        Map<String, Pending> full = null;
+        CompletableFuture<DocumentSnapshot> result;
+        lock.lock();
+        try {
+            Pending entry = pending.computeIfAbsent(docRef.getPath(), path -> new Pending(docRef));
+            result = entry.future;
+            if (pending.size() >= maxBatchSize) {
+                full = drain();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = scheduler.schedule(this::flush, window.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (full != null) {
+            send(full);
+        }
+        return result;
+    }
+
+    private void flush() {
+        Map<String, Pending> batch;
+        lock.lock();
+        try {
+            batch = drain();
+        } finally {
+            lock.unlock();
+        }
+        send(batch);
+    }
+
+    // Caller must hold the lock
+    private Map<String, Pending> drain() {
+        Map<String, Pending> batch = pending;
+        pending = new LinkedHashMap<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    private void send(Map<String, Pending> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        batchSizes.record(batch.size());
+        List<DocumentReference> refs = new ArrayList<>(batch.size());
+        batch.values().forEach(p -> refs.add(p.docRef));
+        logger.debug("Resolving {} batched document reads with getAll", refs.size());
+
+        try {
+            ApiFutures.addCallback(firestore.getAll(refs.toArray(new DocumentReference[0]), fields),
+                new ApiFutureCallback<List<DocumentSnapshot>>() {
+                    @Override
+                    public void onSuccess(List<DocumentSnapshot> documents) {
+                        for (DocumentSnapshot document : documents) {
+                            Pending entry = batch.get(document.getReference().getPath());
+                            if (entry != null) {
+                                entry.future.complete(document);
+                            }
+                        }
+                        // Anything Firestore did not answer for would otherwise hang its caller
+                        batch.values().forEach(p -> p.future.completeExceptionally(
+                            new IllegalStateException("No result for " + p.docRef.getPath() + " in batched read")));
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        batch.values().forEach(p -> p.future.completeExceptionally(t));
+                    }
+                }, MoreExecutors.directExecutor());
+        } catch (RuntimeException e) {
+            batch.values().forEach(p -> p.future.completeExceptionally(e));
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        scheduler.shutdown();
+    }
+
+    private static class Pending {
+        private final DocumentReference docRef;
+        private final CompletableFuture<DocumentSnapshot> future = new CompletableFuture<>();
+
+        Pending(DocumentReference docRef) {
+            this.docRef = docRef;
+        }
+    }
+}
@@ -0,0 +1,833 @@
+package com.qwervego.label.repository;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.qwervego.label.exception.QrConflictException;
+import com.qwervego.label.exception.QrNotFoundException;
+import com.qwervego.label.model.Qr;
+import com.qwervego.label.model.QrDocumentMapper;
+import com.qwervego.label.util.PhoneNumbers;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * {@link QrStore} that serves the whole {@code qrs} dataset from local disk, for
+ * single-instance deployments and as a baseline for measuring Firestore overhead.
+ * Documents live in an {@link AppendLog} (a memory-mapped append-only file); an
+ * in-memory index maps each ID to its latest record, with secondary indexes for the
+ * phone number, email and {@code createdDate} lookups. Reads decode straight from the
+ * mapping and take no lock; writes are serialized.
+ * <p>
+ * Overwritten and deleted records stay in the log as garbage until a compaction
+ * rewrites the live ones into a fresh file, which starts once the garbage passes
+ * {@code compaction-garbage-ratio} of the log. The counters behind {@link #readStats}
+ * are kept from the index, so the stats deltas passed to {@link #save} are not needed.
+ * <p>
+ * The file belongs to one process: running several instances against it, or with
+ * Firestore as well, gives each its own diverging copy of the dataset.
+ */
+@Repository
+@Profile("embedded-store")
+public class EmbeddedQrStore implements QrStore {
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedQrStore.class);
+    private static final String COLLECTION_NAME = "qrs";
+    private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE.withZone(ZoneOffset.UTC);
+    private static final byte FORMAT_VERSION = 1;
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final String ID_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+    private static final SecureRandom ID_RANDOM = new SecureRandom();
+    private static final int IMPORT_PAGE_SIZE = 500;
+
+    // What the index keeps per document: enough to maintain the secondary indexes and counters
+    private record Entry(AppendLog.Location location, boolean active, long createdMillis, String phoneKey, String email) {
+    }
+
+    private record DateKey(long createdMillis, String id) implements Comparable<DateKey> {
+        @Override
+        public int compareTo(DateKey other) {
+            int byDate = Long.compare(createdMillis, other.createdMillis);
+            return byDate != 0 ? byDate : id.compareTo(other.id);
+        }
+    }
+
+    private enum Projection { FULL, PUBLIC, SUMMARY }
+
+    private final Path path;
+    private final Path compactionPath;
+    private final int regionSize;
+    private final boolean sync;
+    private final double compactionGarbageRatio;
+    private final long compactionMinGarbage;
+    private final boolean importFromFirestore;
+    private final Firestore firestore;
+    private final ExecutorService blockingCallExecutor;
+
+    private final ConcurrentSkipListMap<String, Entry> index = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListSet<DateKey> byCreatedDate = new ConcurrentSkipListSet<>();
+    private final ConcurrentHashMap<String, Set<String>> byPhone = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> byEmail = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> createdPerDay = new ConcurrentHashMap<>();
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Guarded by writeLock; volatile where read without it
+    private volatile AppendLog log;
+    private volatile long garbageBytes;
+    private volatile long total;
+    private volatile long active;
+    private long lastUpdateMicros;
+
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final Counter compactions;
+
+    public EmbeddedQrStore(Firestore firestore, MeterRegistry meterRegistry,
+                           @Qualifier("blockingCallExecutor") ExecutorService blockingCallExecutor,
+                           @Value("${qr.embedded-store.path:data/qrs.log}") Path path,
+                           @Value("${qr.embedded-store.region-size:64MB}") DataSize regionSize,
+                           @Value("${qr.embedded-store.sync:false}") boolean sync,
+                           @Value("${qr.embedded-store.compaction-garbage-ratio:0.5}") double compactionGarbageRatio,
+                           @Value("${qr.embedded-store.compaction-min-garbage:16MB}") DataSize compactionMinGarbage,
+                           @Value("${qr.embedded-store.import-from-firestore:false}") boolean importFromFirestore)
+            throws IOException {
+        this.firestore = firestore;
+        this.blockingCallExecutor = blockingCallExecutor;
+        this.path = path.toAbsolutePath();
+        this.compactionPath = this.path.resolveSibling(this.path.getFileName() + ".compact");
+        this.regionSize = Math.toIntExact(regionSize.toBytes());
+        this.sync = sync;
+        this.compactionGarbageRatio = compactionGarbageRatio;
+        this.compactionMinGarbage = compactionMinGarbage.toBytes();
+        this.importFromFirestore = importFromFirestore;
+
+        Files.createDirectories(this.path.getParent());
+        // Left behind by a compaction that did not finish; the log itself is intact
+        Files.deleteIfExists(compactionPath);
+        long start = System.nanoTime();
+        this.log = AppendLog.open(this.path, this.regionSize, this::replay);
+
+        this.compactions = Counter.builder("qr.embedded.compactions")
+            .description("Compactions of the embedded QR store log")
+            .register(meterRegistry);
+        Gauge.builder("qr.embedded.log.bytes", this, store -> store.log.size())
+            .description("Size of the embedded QR store log")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("qr.embedded.log.garbage.bytes", this, store -> store.garbageBytes)
+            .description("Bytes of overwritten and deleted records awaiting compaction")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        logger.info("Opened embedded QR store {} with {} documents in {} ms ({} bytes, {} garbage)",
+            this.path, total, (System.nanoTime() - start) / 1_000_000, log.size(), garbageBytes);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            log.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void replay(String id, AppendLog.Location location, boolean deleted) {
+        if (deleted) {
+            Entry previous = index.remove(id);
+            unindex(id, previous);
+            garbageBytes += location.recordLength() + (previous != null ? previous.location().recordLength() : 0);
+            return;
+        }
+        Qr qr = decode(id, location, Projection.PUBLIC);
+        lastUpdateMicros = Math.max(lastUpdateMicros, micros(qr.getUpdateTime()));
+        Entry previous = reindex(qr, location);
+        if (previous != null) {
+            garbageBytes += previous.location().recordLength();
+        }
+    }
+
+    @Override
+    public Qr save(Qr qr) {
+        return save(qr, QrStatsDelta.NONE);
+    }
+
+    @Override
+    public Qr save(Qr qr, QrStatsDelta statsDelta) {
+        logger.info("Saving QR document with ID: {}", qr.getId());
+        if (qr.getId() == null) {
+            qr.setId(newDocumentId());
+            logger.info("Generated new document ID: {}", qr.getId());
+        }
+        writeLock.lock();
+        try {
+            put(qr);
+        } catch (IOException e) {
+            logger.error("Error saving QR document with ID {}: {}", qr.getId(), e.getMessage(), e);
+            throw new RuntimeException("Error saving QR code", e);
+        } finally {
+            writeLock.unlock();
+        }
+        afterWrite();
+        return qr;
+    }
+
+    @Override
+    public CompletableFuture<Qr> saveAsync(Qr qr, QrStatsDelta statsDelta) {
+        return completed(() -> save(qr, statsDelta));
+    }
+
+    @Override
+    public Qr activate(Qr qr) {
+        logger.info("Activating QR document with ID: {}", qr.getId());
+        writeLock.lock();
+        try {
+            Entry current = index.get(qr.getId());
+            if (current != null && current.active()) {
+                throw new QrConflictException("Tag already active, invalid request");
+            }
+            boolean hasCreatedDate = current != null && current.createdMillis() != NO_DATE;
+            qr.setCreatedDate(hasCreatedDate ? new Date(current.createdMillis()) : new Date());
+            put(qr);
+        } catch (IOException e) {
+            logger.error("Error activating QR document with ID {}: {}", qr.getId(), e.getMessage(), e);
+            throw new RuntimeException("Error activating QR code", e);
+        } finally {
+            writeLock.unlock();
+        }
+        afterWrite();
+        logger.info("Successfully activated QR document with ID: {}", qr.getId());
+        return qr;
+    }
+
+    @Override
+    public CompletableFuture<Qr> activateAsync(Qr qr) {
+        return completed(() -> activate(qr));
+    }
+
+    /**
+     * Creates the documents one by one; there is nothing to throttle, so the rates in
+     * {@code options} are ignored. Every future is already complete on return.
+     */
+    @Override
+    public List<CompletableFuture<Boolean>> createAll(List<Qr> qrs, BulkCreateOptions options) {
+        logger.info("Creating {} QR documents in the embedded store", qrs.size());
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(qrs.size());
+        for (Qr qr : qrs) {
+            writeLock.lock();
+            try {
+                if (index.containsKey(qr.getId())) {
+                    logger.info("QR document ID collision, not overwritten: {}", qr.getId());
+                    results.add(CompletableFuture.completedFuture(false));
+                } else {
+                    put(qr);
+                    results.add(CompletableFuture.completedFuture(true));
+                }
+            } catch (IOException | RuntimeException e) {
+                results.add(CompletableFuture.failedFuture(e));
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        afterWrite();
+        return results;
+    }
+
+    @Override
+    public Optional<Qr> findById(String id) {
+        return find(id, Projection.FULL);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Qr>> findByIdAsync(String id) {
+        return completed(() -> findById(id));
+    }
+
+    @Override
+    public Optional<Qr> findPublicById(String id) {
+        return find(id, Projection.PUBLIC);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Qr>> findPublicByIdAsync(String id) {
+        return completed(() -> findPublicById(id));
+    }
+
+    // Every read decodes a fresh copy from the log; there is no cache to evict
+    @Override
+    public void evict(String id) {
+    }
+
+    private Optional<Qr> find(String id, Projection projection) {
+        Entry entry = index.get(id);
+        if (entry == null) {
+            logger.debug("No QR document found with ID: {}", id);
+            return Optional.empty();
+        }
+        return Optional.of(decode(id, entry.location(), projection));
+    }
+
+    /**
+     * Offset-based listing in ID order. Skipping walks the index, not the log, so deep
+     * pages cost a pointer chase per skipped document.
+     */
+    @Override
+    public Page<Qr> findAll(Pageable pageable) {
+        logger.info("Finding all QR documents with pagination - page: {}, size: {}",
+            pageable.getPageNumber(), pageable.getPageSize());
+        List<Qr> qrs = index.entrySet().stream()
+            .skip(pageable.getOffset())
+            .limit(pageable.getPageSize())
+            .map(e -> decode(e.getKey(), e.getValue().location(), Projection.SUMMARY))
+            .toList();
+        return new PageImpl<>(qrs, pageable, total);
+    }
+
+    @Override
+    public CompletableFuture<Page<Qr>> findAllAsync(Pageable pageable) {
+        return completed(() -> findAll(pageable));
+    }
+
+    /**
+     * Same ordering and {@link PageToken}s as {@link FirestoreQrRepository#findPage}. A date
+     * range walks the {@code createdDate} index; the active filter is checked per
+     * document, so a rare state costs a longer walk.
+     */
+    @Override
+    public KeysetPage<Qr> findPage(QrListFilter filter, String pageToken, int size) {
+        logger.info("Finding QR documents page - filter: {}, size: {}, continued: {}", filter, size, pageToken != null);
+        boolean byDate = filter.hasDateRange();
+        boolean continued = pageToken != null && !pageToken.isEmpty();
+        List<String> ids = new ArrayList<>(size + 1);
+        if (byDate) {
+            long from = filter.createdFrom() != null ? filter.createdFrom().getTime() : Long.MIN_VALUE;
+            long before = filter.createdBefore() != null ? filter.createdBefore().getTime() : Long.MAX_VALUE;
+            // "" sorts before every ID, so this starts at the first document created at `from`
+            DateKey start = new DateKey(from, "");
+            if (continued) {
+                PageToken cursor = PageToken.decode(pageToken, filter);
+                start = new DateKey(cursor.createdDate().toDate().getTime(), cursor.id());
+            }
+            for (DateKey key : byCreatedDate.tailSet(start, !continued)) {
+                if (key.createdMillis() >= before || ids.size() > size) {
+                    break;
+                }
+                if (key.createdMillis() >= from && matchesActive(index.get(key.id()), filter)) {
+                    ids.add(key.id());
+                }
+            }
+        } else {
+            Map<String, Entry> range = continued ? index.tailMap(PageToken.decode(pageToken, filter).id(), false) : index;
+            for (Map.Entry<String, Entry> entry : range.entrySet()) {
+                if (ids.size() > size) {
+                    break;
+                }
+                if (matchesActive(entry.getValue(), filter)) {
+                    ids.add(entry.getKey());
+                }
+            }
+        }
+
+        // One extra document tells us whether there is a next page
+        boolean hasNext = ids.size() > size;
+        List<Qr> qrs = new ArrayList<>(Math.min(ids.size(), size));
+        for (String id : hasNext ? ids.subList(0, size) : ids) {
+            find(id, Projection.SUMMARY).ifPresent(qrs::add);
+        }
+        Qr last = hasNext && !qrs.isEmpty() ? qrs.get(qrs.size() - 1) : null;
+        String nextPageToken = last != null
+            ? PageToken.encode(filter, byDate ? Timestamp.of(last.getCreatedDate()) : null, last.getId())
+            : null;
+        logger.info("Retrieved {} QR documents for page (more: {})", qrs.size(), hasNext);
+        return new KeysetPage<>(qrs, nextPageToken);
+    }
+
+    private static boolean matchesActive(Entry entry, QrListFilter filter) {
+        return entry != null && (filter.active() == null || entry.active() == filter.active());
+    }
+
+    @Override
+    public List<Qr> findAllById(List<String> ids) {
+        return ids.stream()
+            .map(this::findPublicById)
+            .flatMap(Optional::stream)
+            .toList();
+    }
+
+    @Override
+    public CompletableFuture<List<Qr>> findAllByIdAsync(List<String> ids) {
+        return completed(() -> findAllById(ids));
+    }
+
+    /**
+     * Everything is local, so all IDs come back in one already completed chunk.
+     */
+    @Override
+    public List<CompletableFuture<Map<String, Optional<Qr>>>> findPublicByIdChunks(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<String, Optional<Qr>> chunk = new HashMap<>();
+        for (String id : new LinkedHashSet<>(ids)) {
+            chunk.put(id, findPublicById(id));
+        }
+        return List.of(CompletableFuture.completedFuture(chunk));
+    }
+
+    @Override
+    public Timestamp patch(String id, QrPatch patch, Timestamp expectedUpdateTime) {
+        logger.info("Patching QR document with ID: {} (fields: {})", id, patch.fields().keySet());
+        writeLock.lock();
+        try {
+            Entry current = index.get(id);
+            if (current == null) {
+                throw new QrNotFoundException("QR code not found for ID: " + id);
+            }
+            Qr qr = decode(id, current.location(), Projection.FULL);
+            if (expectedUpdateTime != null && !expectedUpdateTime.equals(qr.getUpdateTime())) {
+                throw new QrConflictException("QR code " + id + " was modified by another request");
+            }
+            patch.applyTo(qr);
+            put(qr);
+            return qr.getUpdateTime();
+        } catch (IOException e) {
+            logger.error("Error patching QR document with ID {}: {}", id, e.getMessage(), e);
+            throw new RuntimeException("Error updating QR code", e);
+        } finally {
+            writeLock.unlock();
+            afterWrite();
+        }
+    }
+
+    @Override
+    public void deleteById(String id) {
+        logger.info("Deleting QR document with ID: {}", id);
+        writeLock.lock();
+        try {
+            Entry previous = index.get(id);
+            if (previous == null) {
+                logger.info("No QR document to delete with ID: {}", id);
+                return;
+            }
+            AppendLog.Location tombstone = log.append(id, null);
+            index.remove(id);
+            unindex(id, previous);
+            garbageBytes += tombstone.recordLength() + previous.location().recordLength();
+            if (sync) {
+                log.force();
+            }
+            logger.info("Successfully deleted QR document with ID: {}", id);
+        } catch (IOException e) {
+            logger.error("Error deleting QR document with ID {}: {}", id, e.getMessage(), e);
+            throw new RuntimeException("Error deleting QR code", e);
+        } finally {
+            writeLock.unlock();
+        }
+        afterWrite();
+    }
+
+    @Override
+    public Optional<Qr> findByPhoneNumber(String phoneNumber) {
+        logger.info("Finding QR document by phone number: {}", phoneNumber);
+        return findFirst(byPhone, phoneKey(phoneNumber));
+    }
+
+    @Override
+    public Optional<Qr> findByEmail(String email) {
+        logger.info("Finding QR document by email: {}", email);
+        return findFirst(byEmail, email);
+    }
+
+    private Optional<Qr> findFirst(Map<String, Set<String>> secondary, String key) {
+        Set<String> ids = key == null ? null : secondary.get(key);
+        if (ids != null) {
+            for (String id : ids) {
+                Optional<Qr> qr = find(id, Projection.FULL);
+                if (qr.isPresent()) {
+                    return qr;
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Counters kept up to date by every write. {@code generatedPerDay} counts the
+     * current documents by the UTC day of their {@code createdDate}.
+     */
+    @Override
+    public Map<String, Object> readStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("source", "index");
+        long currentTotal = total;
+        long currentActive = active;
+        stats.put("total", currentTotal);
+        stats.put("active", currentActive);
+        stats.put("inactive", currentTotal - currentActive);
+        stats.put("generatedPerDay", new TreeMap<>(createdPerDay));
+        return stats;
+    }
+
+    @Override
+    public Map<String, Object> countStats() {
+        long counted = 0;
+        long countedActive = 0;
+        for (Entry entry : index.values()) {
+            counted++;
+            if (entry.active()) {
+                countedActive++;
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("source", "scan");
+        stats.put("total", counted);
+        stats.put("active", countedActive);
+        stats.put("inactive", counted - countedActive);
+        return stats;
+    }
+
+    @Override
+    public Map<String, Object> rebuildStats() {
+        logger.info("Rebuilding embedded QR store counters");
+        writeLock.lock();
+        try {
+            long counted = 0;
+            long countedActive = 0;
+            Map<String, Long> perDay = new HashMap<>();
+            for (Entry entry : index.values()) {
+                counted++;
+                if (entry.active()) {
+                    countedActive++;
+                }
+                if (entry.createdMillis() != NO_DATE) {
+                    perDay.merge(day(entry.createdMillis()), 1L, Long::sum);
+                }
+            }
+            total = counted;
+            active = countedActive;
+            createdPerDay.clear();
+            createdPerDay.putAll(perDay);
+        } finally {
+            writeLock.unlock();
+        }
+        return readStats();
+    }
+
+    /**
+     * Copies every document from the Firestore {@code qrs} collection into the store,
+     * in ID order, a page at a time. Existing documents with the same ID are replaced.
+     */
+    public long importFrom(Firestore source) {
+        logger.info("Importing the {} collection from Firestore into {}", COLLECTION_NAME, path);
+        long imported = 0;
+        try {
+            Query query = source.collection(COLLECTION_NAME).orderBy(FieldPath.documentId()).limit(IMPORT_PAGE_SIZE);
+            DocumentSnapshot last = null;
+            QuerySnapshot page;
+            do {
+                page = (last == null ? query : query.startAfter(last)).get().get();
+                writeLock.lock();
+                try {
+                    for (DocumentSnapshot document : page.getDocuments()) {
+                        put(QrDocumentMapper.fromSnapshot(document));
+                        imported++;
+                        last = document;
+                    }
+                } finally {
+                    writeLock.unlock();
+                }
+            } while (page.size() == IMPORT_PAGE_SIZE);
+            afterWrite();
+            logger.info("Imported {} QR documents from Firestore", imported);
+        } catch (Exception e) {
+            logger.error("Error importing QR documents after {} documents: {}", imported, e.getMessage(), e);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return imported;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void importOnStartup() {
+        if (importFromFirestore && total == 0) {
+            CompletableFuture.runAsync(() -> importFrom(firestore), blockingCallExecutor);
+        }
+    }
+
+    /**
+     * Rewrites the live records into a new file and swaps it in. Writes wait while it
+     * runs; reads carry on against the old mapping.
+     */
+    public void compact() {
+        writeLock.lock();
+        try {
+            long before = log.size();
+            long start = System.nanoTime();
+            Map<String, AppendLog.Location> moved = new HashMap<>();
+            AppendLog compacted = AppendLog.open(compactionPath, regionSize, (id, location, deleted) -> {
+            });
+            try {
+                for (Map.Entry<String, Entry> entry : index.entrySet()) {
+                    ByteBuffer value = entry.getValue().location().value();
+                    byte[] bytes = new byte[value.remaining()];
+                    value.get(bytes);
+                    moved.put(entry.getKey(), compacted.append(entry.getKey(), bytes));
+                }
+                compacted.force();
+                Files.move(compactionPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | RuntimeException e) {
+                compacted.close();
+                Files.deleteIfExists(compactionPath);
+                throw e;
+            }
+
+            moved.forEach((id, location) -> index.computeIfPresent(id,
+                (key, entry) -> new Entry(location, entry.active(), entry.createdMillis(), entry.phoneKey(), entry.email())));
+            AppendLog previous = log;
+            log = compacted;
+            garbageBytes = 0;
+            previous.close();
+            compactions.increment();
+            logger.info("Compacted embedded QR store from {} to {} bytes in {} ms",
+                before, compacted.size(), (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            logger.error("Error compacting embedded QR store: {}", e.getMessage(), e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Caller must hold writeLock
+    private void put(Qr qr) throws IOException {
+        lastUpdateMicros = Math.max(micros(Timestamp.now()), lastUpdateMicros + 1);
+        // Strictly increasing, so an update time identifies one version of a document (If-Match)
+        qr.setUpdateTime(Timestamp.ofTimeMicroseconds(lastUpdateMicros));
+        AppendLog.Location location = log.append(qr.getId(), encode(qr));
+        Entry previous = reindex(qr, location);
+        if (previous != null) {
+            garbageBytes += previous.location().recordLength();
+        }
+        if (sync) {
+            log.force();
+        }
+    }
+
+    // Caller must hold writeLock (or be replaying). Returns the entry it replaced
+    private Entry reindex(Qr qr, AppendLog.Location location) {
+        String id = qr.getId();
+        Entry entry = new Entry(location, qr.isActive(),
+            qr.getCreatedDate() != null ? qr.getCreatedDate().getTime() : NO_DATE,
+            phoneKey(qr.getPhoneNumber()), qr.getEmail());
+        Entry previous = index.put(id, entry);
+        unindex(id, previous);
+        if (entry.createdMillis() != NO_DATE) {
+            byCreatedDate.add(new DateKey(entry.createdMillis(), id));
+            createdPerDay.merge(day(entry.createdMillis()), 1L, Long::sum);
+        }
+        link(byPhone, entry.phoneKey(), id);
+        link(byEmail, entry.email(), id);
+        total++;
+        if (entry.active()) {
+            active++;
+        }
+        return previous;
+    }
+
+    private void unindex(String id, Entry previous) {
+        if (previous == null) {
+            return;
+        }
+        if (previous.createdMillis() != NO_DATE) {
+            byCreatedDate.remove(new DateKey(previous.createdMillis(), id));
+            createdPerDay.computeIfPresent(day(previous.createdMillis()), (day, count) -> count > 1 ? count - 1 : null);
+        }
+        unlink(byPhone, previous.phoneKey(), id);
+        unlink(byEmail, previous.email(), id);
+        total--;
+        if (previous.active()) {
+            active--;
+        }
+    }
+
+    private static void link(Map<String, Set<String>> secondary, String key, String id) {
+        if (key != null) {
+            secondary.computeIfAbsent(key, k -> new ConcurrentSkipListSet<>()).add(id);
+        }
+    }
+
+    private static void unlink(Map<String, Set<String>> secondary, String key, String id) {
+        if (key != null) {
+            secondary.computeIfPresent(key, (k, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    // Numbers without digits are indexed as written, like the phoneNumber fallback query in Firestore
+    private static String phoneKey(String phoneNumber) {
+        String e164 = PhoneNumbers.toE164(phoneNumber);
+        return e164 != null ? e164 : phoneNumber;
+    }
+
+    private void afterWrite() {
+        long garbage = garbageBytes;
+        if (garbage >= compactionMinGarbage && garbage > log.size() * compactionGarbageRatio
+                && compacting.compareAndSet(false, true)) {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    compact();
+                } finally {
+                    compacting.set(false);
+                }
+            }, blockingCallExecutor);
+        }
+    }
+
+    // Record value, version 1: flags, the five strings, the two dates, then the update time
+    private static byte[] encode(Qr qr) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeByte(qr.isActive() ? 1 : 0);
+            writeString(out, qr.getName());
+            writeString(out, qr.getEmail());
+            writeString(out, qr.getAddress());
+            writeString(out, qr.getPhoneNumber());
+            writeString(out, qr.getPassword());
+            out.writeLong(qr.getCreatedDate() != null ? qr.getCreatedDate().getTime() : NO_DATE);
+            out.writeLong(qr.getActivationDate() != null ? qr.getActivationDate().getTime() : NO_DATE);
+            out.writeLong(qr.getUpdateTime().getSeconds());
+            out.writeInt(qr.getUpdateTime().getNanos());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static Qr decode(String id, AppendLog.Location location, Projection projection) {
+        ByteBuffer in = location.value();
+        byte version = in.get();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalStateException("Unknown record format " + version + " for QR document " + id);
+        }
+        Qr qr = new Qr();
+        qr.setId(id);
+        qr.setActive(in.get() != 0);
+        boolean summary = projection == Projection.SUMMARY;
+        qr.setName(readString(in, summary));
+        qr.setEmail(readString(in, summary));
+        qr.setAddress(readString(in, summary));
+        qr.setPhoneNumber(readString(in, summary));
+        qr.setPassword(readString(in, projection != Projection.FULL));
+        qr.setCreatedDate(readDate(in));
+        qr.setActivationDate(readDate(in));
+        qr.setUpdateTime(Timestamp.ofTimeSecondsAndNanos(in.getLong(), in.getInt()));
+        return qr;
+    }
+
+    // Skipped fields are stepped over without decoding and read as null
+    private static String readString(ByteBuffer in, boolean skip) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (skip) {
+            in.position(in.position() + length);
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static Date readDate(ByteBuffer in) {
+        long millis = in.getLong();
+        return millis == NO_DATE ? null : new Date(millis);
+    }
+
+    private static long micros(Timestamp timestamp) {
+        return timestamp == null ? 0 : timestamp.getSeconds() * 1_000_000 + timestamp.getNanos() / 1_000;
+    }
+
+    private static String day(long millis) {
+        return DAY.format(Instant.ofEpochMilli(millis));
+    }
+
+    // Same alphabet and length as Firestore's auto IDs
+    private static String newDocumentId() {
+        char[] id = new char[20];
+        for (int i = 0; i < id.length; i++) {
+            id[i] = ID_CHARS.charAt(ID_RANDOM.nextInt(ID_CHARS.length()));
+        }
+        return new String(id);
+    }
+
+    // The store is synchronous; the async variants only adapt it to the QrStore contract
+    private static <T> CompletableFuture<T> completed(Supplier<T> call) {
+        try {
+            return CompletableFuture.completedFuture(call.get());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
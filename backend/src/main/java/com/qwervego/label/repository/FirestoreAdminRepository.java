@@ -3,11 +3,15 @@ package com.qwervego.label.repository;
 import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.*;
 import com.qwervego.label.model.Admin;
+import com.qwervego.label.model.AdminDocumentMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
@@ -16,11 +20,18 @@ import java.util.stream.Collectors;
 public class FirestoreAdminRepository {
     private static final Logger logger = LoggerFactory.getLogger(FirestoreAdminRepository.class);
     private final Firestore firestore;
+    private final WritePipeline writePipeline;
     private final String COLLECTION_NAME = "admins";
+    private final SingleFlight<String, Optional<Admin>> idLoads;
+    private final SingleFlight<String, Optional<Admin>> usernameLoads;
 
     @Autowired
-    public FirestoreAdminRepository(Firestore firestore) {
+    public FirestoreAdminRepository(Firestore firestore, WritePipeline writePipeline, MeterRegistry meterRegistry,
+                                    @Value("${repository.single-flight.max-wait:5s}") Duration singleFlightMaxWait) {
         this.firestore = firestore;
+        this.writePipeline = writePipeline;
+        this.idLoads = new SingleFlight<>("admin.findById", singleFlightMaxWait, meterRegistry);
+        this.usernameLoads = new SingleFlight<>("admin.findByUsername", singleFlightMaxWait, meterRegistry);
         logger.info("Initialized FirestoreAdminRepository with collection: {}", COLLECTION_NAME);
     }
 
@@ -37,13 +48,23 @@ public class FirestoreAdminRepository {
         
         Map<String, Object> data = convertToMap(admin);
         logger.debug("Document data to save: {}", data);
-        docRef.set(data);
+        try {
+            writePipeline.writeIdempotent(docRef, batch -> batch.set(docRef, data));
+        } catch (RuntimeException e) {
+            logger.error("Error saving admin document with ID {}: {}", admin.getId(), e.getMessage(), e);
+            throw new RuntimeException("Error saving admin", e);
+        }
         logger.info("Successfully saved admin document with ID: {}", admin.getId());
         
         return admin;
     }
 
     public Optional<Admin> findById(String id) {
+        // Coalesced callers share the loaded Admin, and callers mutate it before saving
+        return idLoads.execute(id, () -> loadById(id)).map(this::copyOf);
+    }
+
+    private Optional<Admin> loadById(String id) {
         logger.info("Finding admin document by ID: {}", id);
         try {
             DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(id);
@@ -85,6 +106,10 @@ public class FirestoreAdminRepository {
     }
 
     public Optional<Admin> findByUsername(String username) {
+        return usernameLoads.execute(username, () -> loadByUsername(username)).map(this::copyOf);
+    }
+
+    private Optional<Admin> loadByUsername(String username) {
         logger.info("Finding admin document by username: {}", username);
         try {
             QuerySnapshot querySnapshot = firestore.collection(COLLECTION_NAME)
@@ -158,34 +183,19 @@ public class FirestoreAdminRepository {
     }
 
     private Map<String, Object> convertToMap(Admin admin) {
-        Map<String, Object> data = new HashMap<>();
-        data.put("id", admin.getId());
-        data.put("username", admin.getUsername());
-        data.put("email", admin.getEmail());
-        data.put("password", admin.getPassword());
-        data.put("role", admin.getRole());
-        data.put("createdAt", admin.getCreatedAt());
-        data.put("lastLogin", admin.getLastLogin());
-        data.put("active", admin.isActive());
-        return data;
+        return AdminDocumentMapper.toMap(admin);
     }
 
     private Admin convertToAdmin(DocumentSnapshot document) {
-        Map<String, Object> data = document.getData();
-        if (data == null) {
+        if (!document.exists()) {
             logger.warn("Document {} has no data", document.getId());
             return null;
         }
+        return AdminDocumentMapper.fromSnapshot(document);
+    }
 
-        Admin admin = new Admin();
-        admin.setId(document.getId());
-        admin.setUsername(document.getString("username"));
-        admin.setEmail(document.getString("email"));
-        admin.setPassword(document.getString("password"));
-        admin.setRole(document.getString("role"));
-        admin.setCreatedAt(document.getDate("createdAt"));
-        admin.setLastLogin(document.getDate("lastLogin"));
-        admin.setActive(document.getBoolean("active"));
-        return admin;
+    private Admin copyOf(Admin admin) {
+        return new Admin(admin.getId(), admin.getUsername(), admin.getPassword(), admin.getEmail(),
+            admin.getRole(), admin.getCreatedAt(), admin.getLastLogin(), admin.isActive());
     }
-} 
\ No newline at end of file
+} 
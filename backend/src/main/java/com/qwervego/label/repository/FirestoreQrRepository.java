@@ -1,82 +1,447 @@
 package com.qwervego.label.repository;
 
-import com.google.api.core.ApiFuture;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.google.cloud.Timestamp;
 import com.google.cloud.firestore.*;
+import com.qwervego.label.exception.QrConflictException;
+import com.qwervego.label.exception.QrNotFoundException;
 import com.qwervego.label.model.Qr;
+import com.qwervego.label.model.QrDocumentMapper;
+import com.qwervego.label.util.CompletableFutures;
+import com.qwervego.label.util.PhoneNumbers;
+import io.grpc.Status;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Repository
-public class FirestoreQrRepository {
+@Profile("!embedded-store")
+public class FirestoreQrRepository implements QrStore {
     private static final Logger logger = LoggerFactory.getLogger(FirestoreQrRepository.class);
     private final Firestore firestore;
     private final String COLLECTION_NAME = "qrs";
 
+    // What scans and /batch return: everything except the password hash
+    static final FieldMask PUBLIC_FIELDS = FieldMask.of(
+        "isActive", "name", "email", "address", "phoneNumber", "createdDate", "activationDate");
+    // Bulk create failures worth another attempt; anything else fails the write
+    private static final Set<Status.Code> RETRYABLE_CODES = EnumSet.of(Status.Code.UNAVAILABLE, Status.Code.ABORTED,
+        Status.Code.RESOURCE_EXHAUSTED, Status.Code.DEADLINE_EXCEEDED, Status.Code.INTERNAL);
+    // What /all lists
+    private static final String[] SUMMARY_FIELDS = {"isActive", "createdDate", "activationDate"};
+
+    // Read-through cache for scans; misses are cached too, but for a much shorter time
+    private final LoadingCache<String, Optional<Qr>> scanCache;
+    private final QrIdFilter idFilter;
+    private final QrStatsRepository statsRepository;
+    private final WritePipeline writePipeline;
+    private final LegacyPhoneLookup legacyPhoneLookup;
+    private final ExecutorService blockingCallExecutor;
+    private final SingleFlight<String, Optional<Qr>> publicLoads;
+    private final SingleFlight<String, Optional<Qr>> fullLoads;
+    // Only set when qr.batch-loader.enabled=true
+    private final BatchLoader batchLoader;
+    private final int multiGetChunkSize;
+    private final int multiGetConcurrency;
+
     @Autowired
-    public FirestoreQrRepository(Firestore firestore) {
+    public FirestoreQrRepository(Firestore firestore, QrIdFilter idFilter, QrStatsRepository statsRepository,
+                                 WritePipeline writePipeline, LegacyPhoneLookup legacyPhoneLookup, MeterRegistry meterRegistry,
+                                 @Qualifier("blockingCallExecutor") ExecutorService blockingCallExecutor,
+                                 @Value("${qr.cache.maximum-size:20000}") long maximumSize,
+                                 @Value("${qr.cache.expire-after-write:30m}") Duration expireAfterWrite,
+                                 @Value("${qr.cache.negative-expire-after-write:30s}") Duration negativeExpireAfterWrite,
+                                 @Value("${qr.cache.refresh-after-write:5m}") Duration refreshAfterWrite,
+                                 @Value("${repository.single-flight.max-wait:5s}") Duration singleFlightMaxWait,
+                                 @Value("${qr.batch-loader.enabled:false}") boolean batchLoaderEnabled,
+                                 @Value("${qr.batch-loader.window:2ms}") Duration batchWindow,
+                                 @Value("${qr.batch-loader.max-batch-size:100}") int maxBatchSize,
+                                 @Value("${qr.multi-get.chunk-size:100}") int multiGetChunkSize,
+                                 @Value("${qr.multi-get.concurrency:4}") int multiGetConcurrency) {
+        // Zero would never advance through the IDs, or never start a chunk
+        if (multiGetChunkSize < 1 || multiGetConcurrency < 1) {
+            throw new IllegalArgumentException("qr.multi-get.chunk-size and qr.multi-get.concurrency must be at least 1, got "
+                + multiGetChunkSize + " and " + multiGetConcurrency);
+        }
         this.firestore = firestore;
-        logger.info("Initialized FirestoreQrRepository with collection: {}", COLLECTION_NAME);
+        this.multiGetChunkSize = multiGetChunkSize;
+        this.multiGetConcurrency = multiGetConcurrency;
+        this.idFilter = idFilter;
+        this.statsRepository = statsRepository;
+        this.writePipeline = writePipeline;
+        this.legacyPhoneLookup = legacyPhoneLookup;
+        this.blockingCallExecutor = blockingCallExecutor;
+        this.publicLoads = new SingleFlight<>("qr.findPublicById", singleFlightMaxWait, meterRegistry);
+        this.fullLoads = new SingleFlight<>("qr.findById", singleFlightMaxWait, meterRegistry);
+        this.batchLoader = batchLoaderEnabled
+            ? new BatchLoader("qr", firestore, PUBLIC_FIELDS, batchWindow, maxBatchSize, meterRegistry)
+            : null;
+        this.scanCache = Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfter(new ScanExpiry(expireAfterWrite, negativeExpireAfterWrite))
+            .refreshAfterWrite(refreshAfterWrite)
+            .executor(blockingCallExecutor)
+            .recordStats()
+            .build(id -> loadById(id, PUBLIC_FIELDS));
+        CaffeineCacheMetrics.monitor(meterRegistry, scanCache, "qrScan");
+        logger.info("Initialized FirestoreQrRepository with collection: {} (scan cache size: {}, ttl: {}, refresh: {})",
+            COLLECTION_NAME, maximumSize, expireAfterWrite, refreshAfterWrite);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (batchLoader != null) {
+            batchLoader.close();
+        }
     }
 
+    @Override
     public Qr save(Qr qr) {
+        return save(qr, QrStatsDelta.NONE);
+    }
+
+    /**
+     * Saves the document and applies the statistics delta in the same commit, so the
+     * counters move only if the document write lands. Returns once Firestore has
+     * acknowledged the write.
+     */
+    @Override
+    public Qr save(Qr qr, QrStatsDelta statsDelta) {
+        try {
+            return saveAsync(qr, statsDelta).get();
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Error saving QR document with ID {}: {}", qr.getId(), e.getMessage(), e);
+            throw new RuntimeException("Error saving QR code", e);
+        }
+    }
+
+    /**
+     * Saves the document through the {@link WritePipeline} and completes once Firestore
+     * has acknowledged the write.
+     */
+    @Override
+    public CompletableFuture<Qr> saveAsync(Qr qr, QrStatsDelta statsDelta) {
         logger.info("Saving QR document with ID: {}", qr.getId());
-        DocumentReference docRef = qr.getId() == null ? 
+        DocumentReference docRef = qr.getId() == null ?
             firestore.collection(COLLECTION_NAME).document() :
             firestore.collection(COLLECTION_NAME).document(qr.getId());
-        
+
         if (qr.getId() == null) {
             qr.setId(docRef.getId());
             logger.info("Generated new document ID: {}", docRef.getId());
         }
-        
+
         Map<String, Object> data = convertToMap(qr);
         logger.debug("Document data to save: {}", data);
-        docRef.set(data);
-        logger.info("Successfully saved QR document with ID: {}", qr.getId());
-        
+        Consumer<WriteBatch> writes = batch -> {
+            batch.set(docRef, data);
+            statsRepository.apply(batch, statsDelta);
+        };
+        // The stats increments must not be replayed; a plain set may be
+        return (statsDelta.isEmpty() ? writePipeline.submitIdempotent(docRef, writes) : writePipeline.submit(docRef, writes))
+            .thenApply(result -> {
+                qr.setUpdateTime(result.getUpdateTime());
+                idFilter.put(qr.getId());
+                scanCache.put(qr.getId(), Optional.of(publicCopyOf(qr)));
+                logger.info("Successfully saved QR document with ID: {}", qr.getId());
+                return qr;
+            });
+    }
+
+    /**
+     * Moves a tag from inactive to active, or creates it already active if it does not
+     * exist, keeping the stored {@code createdDate}. Returns once the write is acknowledged.
+     *
+     * @throws QrConflictException if the tag is already active, including when another
+     *                             activation of the same tag won a race with this one
+     */
+    @Override
+    public Qr activate(Qr qr) {
+        try {
+            return activateAsync(qr).get();
+        } catch (InterruptedException | ExecutionException e) {
+            if (CompletableFutures.unwrap(e) instanceof QrConflictException conflict) {
+                throw conflict;
+            }
+            logger.error("Error activating QR document with ID {}: {}", qr.getId(), e.getMessage(), e);
+            throw new RuntimeException("Error activating QR code", e);
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #activate}. When the scan cache holds the inactive
+     * tag (the owner usually scanned it just before registering) this is one update,
+     * guarded by the cached update time and committed with the stats change. Otherwise,
+     * or if that version is stale, the tag is read and activated in a transaction.
+     */
+    @Override
+    public CompletableFuture<Qr> activateAsync(Qr qr) {
+        logger.info("Activating QR document with ID: {}", qr.getId());
+        DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(qr.getId());
+        Optional<Qr> cached = scanCache.getIfPresent(qr.getId());
+        if (cached == null || cached.isEmpty() || cached.get().isActive() || cached.get().getUpdateTime() == null) {
+            return activateInTransaction(docRef, qr);
+        }
+
+        Qr known = cached.get();
+        Timestamp knownUpdateTime = known.getUpdateTime();
+        qr.setCreatedDate(known.getCreatedDate() != null ? known.getCreatedDate() : new Date());
+        Map<String, Object> data = convertToMap(qr);
+        return writePipeline.submit(docRef, batch -> {
+                batch.update(docRef, data, Precondition.updatedAt(knownUpdateTime));
+                statsRepository.apply(batch, QrStatsDelta.activeChanged(false, true));
+            })
+            .thenApply(result -> activated(qr, result.getUpdateTime()))
+            .exceptionallyCompose(e -> {
+                if (WritePipeline.isAmbiguous(e)) {
+                    // The commit may have landed before the error: if so the tag carries this
+                    // registration's password hash, which is salted and so unique to it
+                    return CompletableFutures.from(docRef.get()).thenCompose(document ->
+                        Boolean.TRUE.equals(document.getBoolean("isActive"))
+                                && Objects.equals(document.getString("password"), data.get("password"))
+                            ? CompletableFuture.completedFuture(activated(qr, document.getUpdateTime()))
+                            : activateInTransaction(docRef, qr));
+                }
+                if (WritePipeline.statusCode(e) != Status.Code.FAILED_PRECONDITION) {
+                    return CompletableFuture.failedFuture(CompletableFutures.unwrap(e));
+                }
+                // Changed since it was cached: let the transaction decide whether this lost a race
+                logger.info("Cached version of QR document {} is stale; activating in a transaction", qr.getId());
+                return activateInTransaction(docRef, qr);
+            });
+    }
+
+    private CompletableFuture<Qr> activateInTransaction(DocumentReference docRef, Qr qr) {
+        return CompletableFutures.from(firestore.runTransaction(transaction -> {
+                DocumentSnapshot document = transaction.get(docRef).get();
+                if (!document.exists()) {
+                    qr.setCreatedDate(new Date());
+                    transaction.create(docRef, convertToMap(qr));
+                    statsRepository.apply(transaction, QrStatsDelta.created(qr));
+                    return qr;
+                }
+                if (Boolean.TRUE.equals(document.getBoolean("isActive"))) {
+                    throw new QrConflictException("Tag already active, invalid request");
+                }
+                Date createdDate = document.getDate("createdDate");
+                qr.setCreatedDate(createdDate != null ? createdDate : new Date());
+                transaction.set(docRef, convertToMap(qr));
+                statsRepository.apply(transaction, QrStatsDelta.activeChanged(false, true));
+                return qr;
+            }))
+            // The transaction does not report the commit time, so the cached copy has no ETag until reloaded
+            .thenApply(activated -> activated(activated, null))
+            .exceptionallyCompose(e -> {
+                Throwable cause = CompletableFutures.unwrap(e);
+                if (cause instanceof QrConflictException) {
+                    scanCache.invalidate(qr.getId());
+                }
+                return CompletableFuture.failedFuture(cause);
+            });
+    }
+
+    private Qr activated(Qr qr, Timestamp updateTime) {
+        qr.setUpdateTime(updateTime);
+        idFilter.put(qr.getId());
+        scanCache.put(qr.getId(), Optional.of(publicCopyOf(qr)));
+        logger.info("Successfully activated QR document with ID: {}", qr.getId());
         return qr;
     }
 
+    /**
+     * Creates the documents through a {@link BulkWriter} with create-only semantics: an ID
+     * that already exists fails with ALREADY_EXISTS instead of being overwritten.
+     * Transient failures are retried with the writer's backoff, up to {@code maxAttempts}.
+     * Each future completes with true once its create is acknowledged, false on an ID
+     * collision, or exceptionally on any other failure. The stats are updated once for
+     * all acknowledged creates after every write has settled.
+     */
+    @Override
+    public List<CompletableFuture<Boolean>> createAll(List<Qr> qrs, BulkCreateOptions options) {
+        logger.info("Creating {} QR documents with BulkWriter", qrs.size());
+        BulkWriter writer = firestore.bulkWriter(BulkWriterOptions.builder()
+            .setInitialOpsPerSecond(options.initialOpsPerSecond())
+            .setMaxOpsPerSecond(options.maxOpsPerSecond())
+            .build());
+        writer.addWriteErrorListener(error -> error.getFailedAttempts() < options.maxAttempts()
+            && RETRYABLE_CODES.contains(error.getStatus().getCode()));
+
+        AtomicInteger created = new AtomicInteger();
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(qrs.size());
+        for (Qr qr : qrs) {
+            DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(qr.getId());
+            results.add(CompletableFutures.from(writer.create(docRef, convertToMap(qr)))
+                .handle((result, error) -> {
+                    if (error == null) {
+                        created.incrementAndGet();
+                        idFilter.put(qr.getId());
+                        return true;
+                    }
+                    Throwable cause = CompletableFutures.unwrap(error);
+                    if (cause instanceof BulkWriterException e && e.getStatus().getCode() == Status.Code.ALREADY_EXISTS) {
+                        logger.info("QR document ID collision, not overwritten: {}", qr.getId());
+                        return false;
+                    }
+                    throw new CompletionException(cause);
+                }));
+        }
+        writer.flush();
+
+        Date createdDate = qrs.isEmpty() ? new Date() : qrs.get(0).getCreatedDate();
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0]))
+            .whenCompleteAsync((done, error) -> {
+                try {
+                    writer.close();
+                    if (created.get() > 0) {
+                        WriteBatch batch = firestore.batch();
+                        statsRepository.apply(batch, QrStatsDelta.generated(created.get(), createdDate));
+                        batch.commit().get();
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    logger.error("Error finishing bulk create of {} QR documents: {}", qrs.size(), e.getMessage(), e);
+                }
+            }, blockingCallExecutor);
+        return results;
+    }
+
+    /**
+     * Full document, including the password hash, for the owner and admin flows that
+     * rewrite it. Not served from the scan cache.
+     */
+    @Override
     public Optional<Qr> findById(String id) {
-        logger.info("Finding QR document by ID: {}", id);
+        if (!idFilter.mightContain(id)) {
+            logger.info("QR document ID {} rejected by ID filter", id);
+            return Optional.empty();
+        }
+        // Coalesced callers share the loaded Qr, and callers mutate it before saving
+        return fullLoads.execute(id, () -> loadById(id, null)).map(this::copyOf);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Qr>> findByIdAsync(String id) {
+        if (!idFilter.mightContain(id)) {
+            logger.info("QR document ID {} rejected by ID filter", id);
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        return fullLoads.executeAsync(id, () -> loadByIdAsync(id, null))
+            .thenApply(qr -> qr.map(this::copyOf));
+    }
+
+    /**
+     * Public projection of the document ({@link #PUBLIC_FIELDS}) used by scans and
+     * batch lookups. Served from the scan cache; the password is never read.
+     */
+    @Override
+    public Optional<Qr> findPublicById(String id) {
+        if (!idFilter.mightContain(id)) {
+            logger.info("QR document ID {} rejected by ID filter", id);
+            return Optional.empty();
+        }
+        Optional<Qr> qr = scanCache.getIfPresent(id);
+        if (qr == null) {
+            // Concurrent misses share one Firestore read. putIfAbsent lets a save or delete
+            // that landed while the read was in flight win over the (older) loaded value
+            Optional<Qr> loaded = publicLoads.execute(id, () -> loadById(id, PUBLIC_FIELDS));
+            qr = Objects.requireNonNullElse(scanCache.asMap().putIfAbsent(id, loaded), loaded);
+        }
+        // Never hand out the cached instance
+        return qr.map(this::copyOf);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Qr>> findPublicByIdAsync(String id) {
+        if (!idFilter.mightContain(id)) {
+            logger.info("QR document ID {} rejected by ID filter", id);
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        Optional<Qr> cached = scanCache.getIfPresent(id);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.map(this::copyOf));
+        }
+        return publicLoads.executeAsync(id, () -> loadByIdAsync(id, PUBLIC_FIELDS))
+            .thenApply(loaded -> Objects.requireNonNullElse(scanCache.asMap().putIfAbsent(id, loaded), loaded)
+                .map(this::copyOf));
+    }
+
+    @Override
+    public void evict(String id) {
+        logger.debug("Evicting QR document from scan cache: {}", id);
+        scanCache.invalidate(id);
+    }
+
+    private Optional<Qr> loadById(String id, FieldMask fields) {
         try {
-            DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(id);
-            ApiFuture<DocumentSnapshot> future = docRef.get();
-            DocumentSnapshot document = future.get();
-            
+            return loadByIdAsync(id, fields).get();
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Error fetching QR document with ID {}: {}", id, e.getMessage(), e);
+            throw new RuntimeException("Error fetching QR code", e);
+        }
+    }
+
+    // A null field mask reads the whole document
+    private CompletableFuture<Optional<Qr>> loadByIdAsync(String id, FieldMask fields) {
+        logger.info("Finding QR document by ID: {}", id);
+        DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(id);
+        CompletableFuture<DocumentSnapshot> future;
+        if (fields == null) {
+            future = CompletableFutures.from(docRef.get());
+        } else if (batchLoader != null) {
+            future = batchLoader.load(docRef);
+        } else {
+            future = CompletableFutures.from(firestore.getAll(new DocumentReference[]{docRef}, fields))
+                .thenApply(documents -> documents.get(0));
+        }
+        return future.thenApply(document -> {
             if (document.exists()) {
                 logger.info("Found QR document with ID: {}", id);
+                idFilter.recordFound(id);
                 return Optional.of(convertToQr(document));
             }
             logger.info("No QR document found with ID: {}", id);
             return Optional.empty();
-        } catch (InterruptedException | ExecutionException e) {
-            logger.error("Error fetching QR document with ID {}: {}", id, e.getMessage(), e);
-            throw new RuntimeException("Error fetching QR code", e);
-        }
+        });
     }
 
+    /**
+     * Offset-based listing, kept for clients that still page by number. Firestore reads
+     * (and bills) every skipped document, so deep pages get slower; new clients should
+     * use {@link #findPage}.
+     */
+    @Override
     public Page<Qr> findAll(Pageable pageable) {
         logger.info("Finding all QR documents with pagination - page: {}, size: {}", 
             pageable.getPageNumber(), pageable.getPageSize());
         try {
             Query query = firestore.collection(COLLECTION_NAME)
+                .select(SUMMARY_FIELDS)
                 .offset(pageable.getPageNumber() * pageable.getPageSize())
                 .limit(pageable.getPageSize());
             
             // Get total count
-            long total = firestore.collection(COLLECTION_NAME)
-                .get().get().getDocuments().size();
+            long total = firestore.collection(COLLECTION_NAME).count().get().get().getCount();
             logger.info("Total QR documents count: {}", total);
             
             // Get paginated results
@@ -92,27 +457,295 @@ public class FirestoreQrRepository {
         }
     }
 
-    public List<Qr> findAllById(Iterable<String> ids) {
-        List<Qr> results = new ArrayList<>();
-        for (String id : ids) {
-            findById(id).ifPresent(results::add);
+    /**
+     * Cursor-based listing: each page starts after the last document of the previous
+     * one, so a page costs {@code size} reads however deep it is. Ordered by document ID,
+     * or by {@code createdDate} then ID when a date range is given (Firestore requires
+     * the range field to be ordered first; documents without a createdDate are then
+     * left out). Filtering on both {@code isActive} and a date range uses the composite
+     * index in {@code firestore.indexes.json}.
+     */
+    @Override
+    public KeysetPage<Qr> findPage(QrListFilter filter, String pageToken, int size) {
+        logger.info("Finding QR documents page - filter: {}, size: {}, continued: {}", filter, size, pageToken != null);
+        boolean byDate = filter.hasDateRange();
+        Query query = firestore.collection(COLLECTION_NAME).select(SUMMARY_FIELDS);
+        if (filter.active() != null) {
+            query = query.whereEqualTo("isActive", filter.active());
+        }
+        if (filter.createdFrom() != null) {
+            query = query.whereGreaterThanOrEqualTo("createdDate", filter.createdFrom());
+        }
+        if (filter.createdBefore() != null) {
+            query = query.whereLessThan("createdDate", filter.createdBefore());
+        }
+        if (byDate) {
+            query = query.orderBy("createdDate");
+        }
+        query = query.orderBy(FieldPath.documentId());
+        if (pageToken != null && !pageToken.isEmpty()) {
+            query = query.startAfter(startAfter(pageToken, filter));
+        }
+
+        try {
+            // One extra document tells us whether there is a next page
+            List<QueryDocumentSnapshot> documents = query.limit(size + 1).get().get().getDocuments();
+            boolean hasNext = documents.size() > size;
+            List<QueryDocumentSnapshot> page = hasNext ? documents.subList(0, size) : documents;
+            List<Qr> qrs = page.stream().map(this::convertToQr).collect(Collectors.toList());
+            QueryDocumentSnapshot last = hasNext ? page.get(page.size() - 1) : null;
+            String nextPageToken = last != null
+                ? PageToken.encode(filter, byDate ? last.getTimestamp("createdDate") : null, last.getId())
+                : null;
+            logger.info("Retrieved {} QR documents for page (more: {})", qrs.size(), hasNext);
+            return new KeysetPage<>(qrs, nextPageToken);
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Error fetching QR documents page: {}", e.getMessage(), e);
+            throw new RuntimeException("Error fetching QR codes", e);
         }
-        return results;
     }
 
+    private Object[] startAfter(String pageToken, QrListFilter filter) {
+        PageToken cursor = PageToken.decode(pageToken, filter);
+        DocumentReference last = firestore.collection(COLLECTION_NAME).document(cursor.id());
+        return cursor.createdDate() != null ? new Object[]{cursor.createdDate(), last} : new Object[]{last};
+    }
+
+    @Override
+    public List<Qr> findAllById(List<String> ids) {
+        try {
+            return findAllByIdAsync(ids).get();
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Error fetching {} QR documents by ID: {}", ids.size(), e.getMessage(), e);
+            throw new RuntimeException("Error fetching QR codes", e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Page<Qr>> findAllAsync(Pageable pageable) {
+        logger.info("Finding all QR documents with pagination (async) - page: {}, size: {}",
+            pageable.getPageNumber(), pageable.getPageSize());
+        CompletableFuture<Long> total = CompletableFutures.from(firestore.collection(COLLECTION_NAME).count().get())
+            .thenApply(AggregateQuerySnapshot::getCount);
+        CompletableFuture<List<Qr>> page = CompletableFutures.from(firestore.collection(COLLECTION_NAME)
+                .select(SUMMARY_FIELDS)
+                .offset(pageable.getPageNumber() * pageable.getPageSize())
+                .limit(pageable.getPageSize())
+                .get())
+            .thenApply(snapshot -> snapshot.getDocuments().stream()
+                .map(this::convertToQr)
+                .collect(Collectors.toList()));
+        return page.thenCombine(total, (qrs, count) -> new PageImpl<>(qrs, pageable, count));
+    }
+
+    /**
+     * Public projections of the given IDs, in the caller's order; IDs with no document
+     * are left out. See {@link #findPublicByIdChunks} for how the reads are issued.
+     */
+    @Override
+    public CompletableFuture<List<Qr>> findAllByIdAsync(List<String> ids) {
+        List<CompletableFuture<Map<String, Optional<Qr>>>> chunks = findPublicByIdChunks(ids);
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0]))
+            .thenApply(done -> {
+                Map<String, Optional<Qr>> found = new HashMap<>();
+                chunks.forEach(chunk -> found.putAll(chunk.join()));
+                return ids.stream()
+                    .map(found::get)
+                    .filter(Objects::nonNull)
+                    .flatMap(Optional::stream)
+                    .collect(Collectors.toList());
+            });
+    }
+
+    /**
+     * Resolves the public projections of the given IDs, one future per chunk, each
+     * completing (in any order) as its chunk arrives. IDs rejected by the ID filter or
+     * held in the scan cache come back in an already completed first chunk; the rest
+     * are read with {@code getAll} in chunks of {@code qr.multi-get.chunk-size}, with at
+     * most {@code qr.multi-get.concurrency} chunks in flight.
+     */
+    @Override
+    public List<CompletableFuture<Map<String, Optional<Qr>>>> findPublicByIdChunks(Collection<String> ids) {
+        Map<String, Optional<Qr>> resolved = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(ids)) {
+            if (!idFilter.mightContain(id)) {
+                resolved.put(id, Optional.empty());
+                continue;
+            }
+            Optional<Qr> cached = scanCache.getIfPresent(id);
+            if (cached != null) {
+                resolved.put(id, cached.map(this::copyOf));
+            } else {
+                misses.add(id);
+            }
+        }
+
+        List<List<String>> parts = new ArrayList<>();
+        for (int i = 0; i < misses.size(); i += multiGetChunkSize) {
+            parts.add(misses.subList(i, Math.min(i + multiGetChunkSize, misses.size())));
+        }
+        List<CompletableFuture<Map<String, Optional<Qr>>>> pending = new ArrayList<>(parts.size());
+        parts.forEach(part -> pending.add(new CompletableFuture<>()));
+        AtomicInteger next = new AtomicInteger();
+        for (int lane = 0; lane < Math.min(multiGetConcurrency, parts.size()); lane++) {
+            fetchNextChunk(parts, pending, next);
+        }
+        logger.info("Multi-get of {} QR IDs: {} resolved locally, {} chunks to fetch", ids.size(), resolved.size(), parts.size());
+
+        List<CompletableFuture<Map<String, Optional<Qr>>>> chunks = new ArrayList<>(pending.size() + 1);
+        if (!resolved.isEmpty()) {
+            chunks.add(CompletableFuture.completedFuture(resolved));
+        }
+        chunks.addAll(pending);
+        return chunks;
+    }
+
+    // Each lane picks up the next unfetched chunk as soon as its previous one completes
+    private void fetchNextChunk(List<List<String>> parts, List<CompletableFuture<Map<String, Optional<Qr>>>> results,
+                                AtomicInteger next) {
+        int index = next.getAndIncrement();
+        if (index >= parts.size()) {
+            return;
+        }
+        fetchChunk(parts.get(index)).whenComplete((chunk, error) -> {
+            if (error != null) {
+                results.get(index).completeExceptionally(CompletableFutures.unwrap(error));
+            } else {
+                results.get(index).complete(chunk);
+            }
+            fetchNextChunk(parts, results, next);
+        });
+    }
+
+    private CompletableFuture<Map<String, Optional<Qr>>> fetchChunk(List<String> ids) {
+        DocumentReference[] refs = ids.stream()
+            .map(id -> firestore.collection(COLLECTION_NAME).document(id))
+            .toArray(DocumentReference[]::new);
+        CompletableFuture<List<DocumentSnapshot>> documents;
+        try {
+            documents = CompletableFutures.from(firestore.getAll(refs, PUBLIC_FIELDS));
+        } catch (RuntimeException e) {
+            documents = CompletableFuture.failedFuture(e);
+        }
+        return documents.thenApply(snapshots -> {
+            Map<String, Optional<Qr>> chunk = new HashMap<>();
+            for (DocumentSnapshot document : snapshots) {
+                if (document.exists()) {
+                    idFilter.recordFound(document.getId());
+                }
+                Optional<Qr> loaded = document.exists() ? Optional.of(convertToQr(document)) : Optional.empty();
+                Optional<Qr> current = Objects.requireNonNullElse(
+                    scanCache.asMap().putIfAbsent(document.getId(), loaded), loaded);
+                chunk.put(document.getId(), current.map(this::copyOf));
+            }
+            return chunk;
+        });
+    }
+
+    /**
+     * Applies a merge patch as one field-masked update. With {@code expectedUpdateTime}
+     * the update lands only if the document is unchanged since that version; without it
+     * the document only has to exist. A patch that changes {@code isActive} reads the
+     * current state in a transaction instead, since the stats need the previous value.
+     * Returns the new update time, or null when it is not known (transactional path).
+     *
+     * @throws QrNotFoundException if there is no such tag
+     * @throws QrConflictException if the tag changed after {@code expectedUpdateTime}
+     */
+    @Override
+    public Timestamp patch(String id, QrPatch patch, Timestamp expectedUpdateTime) {
+        logger.info("Patching QR document with ID: {} (fields: {})", id, patch.fields().keySet());
+        DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(id);
+        Map<String, Object> updates = patch.toFieldUpdates();
+        try {
+            if (patch.active() == null) {
+                // update() on its own already requires the document to exist
+                if (expectedUpdateTime != null) {
+                    return writePipeline.write(docRef,
+                        batch -> batch.update(docRef, updates, Precondition.updatedAt(expectedUpdateTime))).getUpdateTime();
+                }
+                return writePipeline.writeIdempotent(docRef, batch -> batch.update(docRef, updates)).getUpdateTime();
+            }
+            firestore.runTransaction(transaction -> {
+                DocumentSnapshot document = transaction.get(docRef).get();
+                if (!document.exists()) {
+                    throw new QrNotFoundException("QR code not found for ID: " + id);
+                }
+                if (expectedUpdateTime != null && !expectedUpdateTime.equals(document.getUpdateTime())) {
+                    throw new QrConflictException("QR code " + id + " was modified by another request");
+                }
+                boolean wasActive = Boolean.TRUE.equals(document.getBoolean("isActive"));
+                transaction.update(docRef, updates);
+                statsRepository.apply(transaction, QrStatsDelta.activeChanged(wasActive, patch.active()));
+                return null;
+            }).get();
+            return null;
+        } catch (InterruptedException | ExecutionException | RuntimeException e) {
+            Throwable cause = CompletableFutures.unwrap(e);
+            if (cause instanceof QrNotFoundException || cause instanceof QrConflictException) {
+                throw (RuntimeException) cause;
+            }
+            Status.Code code = WritePipeline.statusCode(cause);
+            if (code == Status.Code.NOT_FOUND) {
+                throw new QrNotFoundException("QR code not found for ID: " + id);
+            }
+            if (code == Status.Code.FAILED_PRECONDITION) {
+                throw new QrConflictException("QR code " + id + " was modified by another request");
+            }
+            logger.error("Error patching QR document with ID {}: {}", id, e.getMessage(), e);
+            throw new RuntimeException("Error updating QR code", e);
+        } finally {
+            // The cached copy is either stale or unknown; the next scan reads the new version
+            scanCache.invalidate(id);
+        }
+    }
+
+    @Override
     public void deleteById(String id) {
         logger.info("Deleting QR document with ID: {}", id);
-        firestore.collection(COLLECTION_NAME).document(id).delete();
-        logger.info("Successfully deleted QR document with ID: {}", id);
+        DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(id);
+        try {
+            // The stats need to know whether the deleted tag was active, so read and delete together
+            boolean deleted = firestore.runTransaction(transaction -> {
+                DocumentSnapshot document = transaction.get(docRef).get();
+                if (!document.exists()) {
+                    return false;
+                }
+                transaction.delete(docRef);
+                statsRepository.apply(transaction, QrStatsDelta.deleted(Boolean.TRUE.equals(document.getBoolean("isActive"))));
+                return true;
+            }).get();
+            scanCache.put(id, Optional.empty());
+            if (deleted) {
+                idFilter.recordDelete();
+                logger.info("Successfully deleted QR document with ID: {}", id);
+            } else {
+                logger.info("No QR document to delete with ID: {}", id);
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Error deleting QR document with ID {}: {}", id, e.getMessage(), e);
+            throw new RuntimeException("Error deleting QR code", e);
+        }
     }
 
+    @Override
     public Optional<Qr> findByPhoneNumber(String phoneNumber) {
         logger.info("Finding QR document by phone number: {}", phoneNumber);
         try {
             QuerySnapshot querySnapshot = firestore.collection(COLLECTION_NAME)
-                .whereEqualTo("phoneNumber", phoneNumber)
+                .whereEqualTo("phoneE164", PhoneNumbers.toE164(phoneNumber))
+                .limit(1)
                 .get()
                 .get();
+            if (querySnapshot.isEmpty() && legacyPhoneLookup.needed()) {
+                // Documents written before phoneE164 existed, until PhoneNumberBackfill has run
+                querySnapshot = firestore.collection(COLLECTION_NAME)
+                    .whereEqualTo("phoneNumber", phoneNumber)
+                    .limit(1)
+                    .get()
+                    .get();
+            }
             
             if (!querySnapshot.isEmpty()) {
                 logger.info("Found QR document with phone number: {}", phoneNumber);
@@ -126,6 +759,7 @@ public class FirestoreQrRepository {
         }
     }
 
+    @Override
     public Optional<Qr> findByEmail(String email) {
         logger.info("Finding QR document by email: {}", email);
         try {
@@ -146,49 +780,68 @@ public class FirestoreQrRepository {
         }
     }
 
+    @Override
+    public Map<String, Object> readStats() {
+        return statsRepository.read();
+    }
+
+    @Override
+    public Map<String, Object> countStats() {
+        return statsRepository.count();
+    }
+
+    @Override
+    public Map<String, Object> rebuildStats() {
+        return statsRepository.rebuild();
+    }
+
     private Map<String, Object> convertToMap(Qr qr) {
-        Map<String, Object> data = new HashMap<>();
-        data.put("id", qr.getId());
-        data.put("isActive", qr.isActive());
-        data.put("name", qr.getName());
-        data.put("email", qr.getEmail());
-        data.put("address", qr.getAddress());
-        data.put("phoneNumber", qr.getPhoneNumber());
-        data.put("password", qr.getPassword());
-        data.put("createdDate", qr.getCreatedDate());
-        data.put("activationDate", qr.getActivationDate());
+        Map<String, Object> data = QrDocumentMapper.toMap(qr, 1);
+        data.put("phoneE164", PhoneNumbers.toE164(qr.getPhoneNumber()));
         return data;
     }
 
     private Qr convertToQr(DocumentSnapshot document) {
-        Map<String, Object> data = document.getData();
-        if (data == null) {
+        if (!document.exists()) {
             logger.warn("Document {} has no data", document.getId());
             return null;
         }
+        return QrDocumentMapper.fromSnapshot(document);
+    }
 
-        Qr qr = new Qr();
-        qr.setId(document.getId());
-        
-        Boolean active = document.getBoolean("isActive");
-        qr.setActive(active != null ? active : false);
-        
-        qr.setName(document.getString("name"));
-        qr.setEmail(document.getString("email"));
-        qr.setAddress(document.getString("address"));
-        qr.setPhoneNumber(document.getString("phoneNumber"));
-        qr.setPassword(document.getString("password"));
-        
-        Timestamp createdTimestamp = document.getTimestamp("createdDate");
-        if (createdTimestamp != null) {
-            qr.setCreatedDate(createdTimestamp.toDate());
-        }
-        
-        Timestamp activationTimestamp = document.getTimestamp("activationDate");
-        if (activationTimestamp != null) {
-            qr.setActivationDate(activationTimestamp.toDate());
-        }
-        
-        return qr;
+    private Qr publicCopyOf(Qr qr) {
+        Qr copy = copyOf(qr);
+        copy.setPassword(null);
+        return copy;
+    }
+
+    private Qr copyOf(Qr qr) {
+        return new Qr(qr.getId(), qr.isActive(), qr.getName(), qr.getEmail(), qr.getAddress(),
+            qr.getPhoneNumber(), qr.getPassword(), qr.getCreatedDate(), qr.getActivationDate(), qr.getUpdateTime());
+    }
+
+    private static class ScanExpiry implements Expiry<String, Optional<Qr>> {
+        private final long foundNanos;
+        private final long missingNanos;
+
+        ScanExpiry(Duration found, Duration missing) {
+            this.foundNanos = found.toNanos();
+            this.missingNanos = missing.toNanos();
+        }
+
+        @Override
+        public long expireAfterCreate(String id, Optional<Qr> qr, long currentTime) {
+            return qr.isPresent() ? foundNanos : missingNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String id, Optional<Qr> qr, long currentTime, long currentDuration) {
+            return expireAfterCreate(id, qr, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String id, Optional<Qr> qr, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
 } 
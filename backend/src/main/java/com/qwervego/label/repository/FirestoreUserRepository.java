@@ -3,6 +3,8 @@ package com.qwervego.label.repository;
 import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.*;
 import com.qwervego.label.model.User;
+import com.qwervego.label.model.UserDocumentMapper;
+import com.qwervego.label.util.PhoneNumbers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,11 +17,15 @@ import java.util.concurrent.ExecutionException;
 public class FirestoreUserRepository {
     private static final Logger logger = LoggerFactory.getLogger(FirestoreUserRepository.class);
     private final Firestore firestore;
+    private final WritePipeline writePipeline;
+    private final LegacyPhoneLookup legacyPhoneLookup;
     private final String COLLECTION_NAME = "users";
 
     @Autowired
-    public FirestoreUserRepository(Firestore firestore) {
+    public FirestoreUserRepository(Firestore firestore, WritePipeline writePipeline, LegacyPhoneLookup legacyPhoneLookup) {
         this.firestore = firestore;
+        this.writePipeline = writePipeline;
+        this.legacyPhoneLookup = legacyPhoneLookup;
         logger.info("Initialized FirestoreUserRepository with collection: {}", COLLECTION_NAME);
     }
 
@@ -35,7 +41,12 @@ public class FirestoreUserRepository {
         }
 
         Map<String, Object> data = convertToMap(user);
-        docRef.set(data);
+        try {
+            writePipeline.writeIdempotent(docRef, batch -> batch.set(docRef, data));
+        } catch (RuntimeException e) {
+            logger.error("Error saving User document with ID {}: {}", user.getId(), e.getMessage(), e);
+            throw new RuntimeException("Error saving User", e);
+        }
         logger.info("Successfully saved User document with ID: {}", user.getId());
         return user;
     }
@@ -44,9 +55,18 @@ public class FirestoreUserRepository {
         logger.info("Finding User document by phone number: {}", phoneNumber);
         try {
             QuerySnapshot querySnapshot = firestore.collection(COLLECTION_NAME)
-                .whereEqualTo("phoneNumber", phoneNumber)
+                .whereEqualTo("phoneE164", PhoneNumbers.toE164(phoneNumber))
+                .limit(1)
                 .get()
                 .get();
+            if (querySnapshot.isEmpty() && legacyPhoneLookup.needed()) {
+                // Documents written before phoneE164 existed, until PhoneNumberBackfill has run
+                querySnapshot = firestore.collection(COLLECTION_NAME)
+                    .whereEqualTo("phoneNumber", phoneNumber)
+                    .limit(1)
+                    .get()
+                    .get();
+            }
 
             if (!querySnapshot.isEmpty()) {
                 logger.info("Found User document with phone number: {}", phoneNumber);
@@ -61,23 +81,16 @@ public class FirestoreUserRepository {
     }
 
     private Map<String, Object> convertToMap(User user) {
-        Map<String, Object> data = new HashMap<>();
-        data.put("id", user.getId());
-        data.put("phoneNumber", user.getPhoneNumber());
-        data.put("createdDate", user.getCreatedDate());
+        Map<String, Object> data = UserDocumentMapper.toMap(user, 1);
+        data.put("phoneE164", PhoneNumbers.toE164(user.getPhoneNumber()));
         return data;
     }
 
     private User convertToUser(DocumentSnapshot document) {
-        Map<String, Object> data = document.getData();
-        if (data == null) {
+        if (!document.exists()) {
             logger.warn("Document {} has no data", document.getId());
             return null;
         }
-        User user = new User();
-        user.setId(document.getId());
-        user.setPhoneNumber(document.getString("phoneNumber"));
-        user.setCreatedDate(document.getDate("createdDate"));
-        return user;
+        return UserDocumentMapper.fromSnapshot(document);
     }
 } 
\ No newline at end of file
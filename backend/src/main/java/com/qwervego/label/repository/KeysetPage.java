@@ -0,0 +1,10 @@
+package com.qwervego.label.repository;
+
+import java.util.List;
+
+/**
+ * One page of a cursor-paginated listing. {@code nextPageToken} is opaque to callers
+ * and null on the last page.
+ */
+public record KeysetPage<T>(List<T> items, String nextPageToken) {
+}
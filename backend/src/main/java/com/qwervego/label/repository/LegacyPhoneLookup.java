@@ -0,0 +1,69 @@
+package com.qwervego.label.repository;
+
+import com.google.cloud.firestore.Firestore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Whether phone lookups that miss on {@code phoneE164} still have to retry on the raw
+ * {@code phoneNumber} field, for documents written before {@code phoneE164} existed.
+ * {@link com.qwervego.label.config.PhoneNumberBackfill} records its completion in the
+ * {@code migrations/phoneE164} document; once an instance sees it, a genuine miss
+ * costs one query instead of two.
+ */
+@Component
+public class LegacyPhoneLookup {
+    private static final Logger logger = LoggerFactory.getLogger(LegacyPhoneLookup.class);
+    private static final String COLLECTION_NAME = "migrations";
+    private static final String MARKER_ID = "phoneE164";
+
+    private final Firestore firestore;
+    private volatile boolean needed;
+
+    public LegacyPhoneLookup(Firestore firestore,
+                             @Value("${phone.legacy-lookup.enabled:true}") boolean enabled) {
+        this.firestore = firestore;
+        this.needed = enabled;
+    }
+
+    public boolean needed() {
+        return needed;
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${phone.legacy-lookup.check-interval:10m}")
+    public void checkBackfill() {
+        if (!needed) {
+            return;
+        }
+        try {
+            if (firestore.collection(COLLECTION_NAME).document(MARKER_ID).get().get().exists()) {
+                needed = false;
+                logger.info("phoneE164 backfill has completed; phone lookups no longer fall back to phoneNumber");
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            logger.warn("Could not check for the phoneE164 backfill marker: {}", e.getMessage());
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Records that every document has a {@code phoneE164}, for this and all other instances.
+     */
+    public void markBackfilled(Map<String, Long> updatedPerCollection) throws InterruptedException, ExecutionException {
+        Map<String, Object> marker = new LinkedHashMap<>();
+        marker.put("completedAt", new Date());
+        marker.put("updated", updatedPerCollection);
+        firestore.collection(COLLECTION_NAME).document(MARKER_ID).set(marker).get();
+        needed = false;
+    }
+}
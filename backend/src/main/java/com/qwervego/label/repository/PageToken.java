@@ -0,0 +1,64 @@
+package com.qwervego.label.repository;
+
+import com.google.cloud.Timestamp;
+import com.qwervego.label.exception.InvalidPageTokenException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Cursor of a keyset page, shared by the {@link QrStore} implementations: the last
+ * document of the page, and its {@code createdDate} when the listing is ordered by date.
+ * <p>
+ * Layout before base64url: {@code <filter>|i|<id>} or {@code <filter>|d|<seconds>.<nanos>|<id>},
+ * where {@code <filter>} is the {@link QrListFilter} the page was listed with. A token is
+ * only accepted by a query with the same filter; under another it would skip or repeat
+ * documents.
+ */
+record PageToken(Timestamp createdDate, String id) {
+    private static final Logger logger = LoggerFactory.getLogger(PageToken.class);
+
+    static String encode(QrListFilter filter, Timestamp createdDate, String id) {
+        String cursor = filter.hasDateRange()
+            ? fingerprint(filter) + "|d|" + createdDate.getSeconds() + "." + createdDate.getNanos() + "|" + id
+            : fingerprint(filter) + "|i|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws InvalidPageTokenException if the token is malformed or was issued for a different filter
+     */
+    static PageToken decode(String pageToken, QrListFilter filter) {
+        try {
+            String cursor = new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.UTF_8);
+            String[] parts = cursor.split("\\|", 3);
+            if (parts.length == 3 && parts[0].equals(fingerprint(filter))) {
+                if (filter.hasDateRange() && parts[1].equals("d")) {
+                    String[] rest = parts[2].split("\\|", 2);
+                    String[] time = rest[0].split("\\.", 2);
+                    return new PageToken(Timestamp.ofTimeSecondsAndNanos(Long.parseLong(time[0]), Integer.parseInt(time[1])),
+                        rest[1]);
+                }
+                if (!filter.hasDateRange() && parts[1].equals("i")) {
+                    return new PageToken(null, parts[2]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            logger.warn("Malformed page token: {}", e.getMessage());
+        }
+        throw new InvalidPageTokenException("Invalid page token for this query. Start again without a pageToken.");
+    }
+
+    // e.g. "t,1700000000000," for active tags created from that instant on
+    private static String fingerprint(QrListFilter filter) {
+        return (filter.active() == null ? "*" : filter.active() ? "t" : "f") + ","
+            + millis(filter.createdFrom()) + "," + millis(filter.createdBefore());
+    }
+
+    private static String millis(Date date) {
+        return date == null ? "" : Long.toString(date.getTime());
+    }
+}
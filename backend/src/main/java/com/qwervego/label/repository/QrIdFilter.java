@@ -0,0 +1,287 @@
+package com.qwervego.label.repository;
+
+import com.google.api.gax.rpc.ApiStreamObserver;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * In-memory membership filter over the IDs of the {@code qrs} collection.
+ * <p>
+ * The filter only knows the IDs it has seen: a full scan at startup and every
+ * {@code qr.id-filter.rebuild-interval}, writes made through this instance, and a
+ * periodic incremental scan on {@code createdDate}. Every writer (this service and
+ * generateQRs/file.py) sets {@code createdDate}, so a miss is answered as not found
+ * without a read. A tag written elsewhere without one stays unknown until the next
+ * full rebuild; if such writers exist, set {@code qr.id-filter.confirm-negatives=true}
+ * to confirm every negative with a Firestore read instead.
+ * <p>
+ * Bloom filters cannot forget, so deleted IDs stay "maybe present" until the next
+ * full rebuild.
+ * <p>
+ * Not used with the {@code embedded-store} profile, whose in-memory index already
+ * answers every lookup without a read.
+ */
+@Component
+@Profile("!embedded-store")
+public class QrIdFilter {
+    private static final Logger logger = LoggerFactory.getLogger(QrIdFilter.class);
+    private static final String COLLECTION_NAME = "qrs";
+
+    private final Firestore firestore;
+    private final ExecutorService blockingCallExecutor;
+    private final boolean enabled;
+    private final boolean confirmNegatives;
+    private final double falsePositiveRate;
+    private final long minimumCapacity;
+    private final Duration refreshOverlap;
+
+    private volatile BloomFilter<CharSequence> current;
+    private volatile BloomFilter<CharSequence> building;
+    private volatile long capacity;
+    private volatile boolean ready;
+    private volatile Timestamp watermark;
+    private volatile Timestamp lastRebuild;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final AtomicLong deletedSinceRebuild = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong falseNegatives = new AtomicLong();
+
+    public QrIdFilter(Firestore firestore, MeterRegistry meterRegistry,
+                      @Qualifier("blockingCallExecutor") ExecutorService blockingCallExecutor,
+                      @Value("${qr.id-filter.enabled:true}") boolean enabled,
+                      @Value("${qr.id-filter.confirm-negatives:false}") boolean confirmNegatives,
+                      @Value("${qr.id-filter.false-positive-rate:0.01}") double falsePositiveRate,
+                      @Value("${qr.id-filter.minimum-capacity:100000}") long minimumCapacity,
+                      @Value("${qr.id-filter.refresh-overlap:5m}") Duration refreshOverlap) {
+        this.firestore = firestore;
+        this.blockingCallExecutor = blockingCallExecutor;
+        this.enabled = enabled;
+        this.confirmNegatives = confirmNegatives;
+        this.falsePositiveRate = falsePositiveRate;
+        this.minimumCapacity = minimumCapacity;
+        this.refreshOverlap = refreshOverlap;
+
+        Gauge.builder("qr.id.filter.bytes", this, QrIdFilter::memoryBytes)
+            .description("Approximate memory held by the QR ID membership filter")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("qr.id.filter.entries", this, f -> f.current == null ? 0 : f.current.approximateElementCount())
+            .register(meterRegistry);
+        Gauge.builder("qr.id.filter.rejected", rejected, AtomicLong::get)
+            .description("Lookups answered as not found without a Firestore read")
+            .register(meterRegistry);
+        Gauge.builder("qr.id.filter.false.negatives", falseNegatives, AtomicLong::get)
+            .description("Documents found that the filter did not know about")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Returns false when a lookup of the ID can be answered as not found without a
+     * Firestore read: the filter has not seen the ID and negatives are not being
+     * confirmed. Until the first rebuild completes every ID is reported as possibly present.
+     */
+    public boolean mightContain(String id) {
+        if (!enabled || !ready || confirmNegatives) {
+            return true;
+        }
+        if (current.mightContain(id)) {
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Called with the ID of every document a lookup found, so IDs the filter missed
+     * (written elsewhere without a {@code createdDate}) are learned and counted.
+     */
+    public void recordFound(String id) {
+        BloomFilter<CharSequence> filter = current;
+        if (!enabled || !ready || filter.mightContain(id)) {
+            return;
+        }
+        falseNegatives.incrementAndGet();
+        logger.debug("QR ID {} was found but missing from the ID filter", id);
+        put(id);
+    }
+
+    public void put(String id) {
+        if (!enabled) {
+            return;
+        }
+        BloomFilter<CharSequence> next = building;
+        if (next != null) {
+            next.put(id);
+        }
+        BloomFilter<CharSequence> filter = current;
+        if (filter == null) {
+            return;
+        }
+        filter.put(id);
+        if (filter.approximateElementCount() > capacity && !rebuilding.get()) {
+            logger.info("QR ID filter is over capacity ({} entries), scheduling rebuild", capacity);
+            CompletableFuture.runAsync(this::rebuild, blockingCallExecutor);
+        }
+    }
+
+    public void recordDelete() {
+        deletedSinceRebuild.incrementAndGet();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (enabled) {
+            CompletableFuture.runAsync(this::rebuild, blockingCallExecutor);
+        }
+    }
+
+    // Also drops deleted IDs, and picks up documents the incremental scan cannot see
+    @Scheduled(initialDelayString = "${qr.id-filter.rebuild-interval:6h}",
+               fixedDelayString = "${qr.id-filter.rebuild-interval:6h}")
+    public void rebuildPeriodically() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    @Scheduled(initialDelayString = "${qr.id-filter.refresh-interval:60s}",
+               fixedDelayString = "${qr.id-filter.refresh-interval:60s}")
+    public void refreshRecent() {
+        Timestamp since = watermark;
+        if (!enabled || !ready || since == null || rebuilding.get()) {
+            return;
+        }
+        Timestamp startedAt = Timestamp.now();
+        try {
+            long added = scan(firestore.collection(COLLECTION_NAME)
+                .whereGreaterThanOrEqualTo("createdDate", since.toDate())
+                .select(FieldPath.documentId()), this::put);
+            watermark = minus(startedAt, refreshOverlap);
+            logger.debug("QR ID filter picked up {} recently created documents", added);
+        } catch (Exception e) {
+            logger.warn("Incremental QR ID filter refresh failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Rebuilds the filter from a streaming scan of document IDs, sized from the
+     * current collection count and the configured false-positive rate.
+     */
+    public Map<String, Object> rebuild() {
+        if (!enabled || !rebuilding.compareAndSet(false, true)) {
+            return stats();
+        }
+        try {
+            Timestamp startedAt = Timestamp.now();
+            long count = firestore.collection(COLLECTION_NAME).count().get().get().getCount();
+            long size = Math.max(minimumCapacity, count * 2);
+            logger.info("Rebuilding QR ID filter for {} documents (capacity {}, fpp {})", count, size, falsePositiveRate);
+
+            BloomFilter<CharSequence> next = BloomFilter.create(
+                Funnels.stringFunnel(StandardCharsets.UTF_8), size, falsePositiveRate);
+            building = next;
+            long scanned = scan(firestore.collection(COLLECTION_NAME).select(FieldPath.documentId()), next::put);
+
+            current = next;
+            capacity = size;
+            building = null;
+            watermark = minus(startedAt, refreshOverlap);
+            lastRebuild = startedAt;
+            deletedSinceRebuild.set(0);
+            ready = true;
+            logger.info("QR ID filter rebuilt with {} IDs ({} bytes)", scanned, memoryBytes());
+        } catch (Exception e) {
+            building = null;
+            logger.error("Error rebuilding QR ID filter: {}", e.getMessage(), e);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            rebuilding.set(false);
+        }
+        return stats();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("confirmNegatives", confirmNegatives);
+        stats.put("ready", ready);
+        stats.put("capacity", capacity);
+        stats.put("entries", current == null ? 0 : current.approximateElementCount());
+        stats.put("configuredFalsePositiveRate", falsePositiveRate);
+        stats.put("expectedFalsePositiveRate", current == null ? 0 : current.expectedFpp());
+        stats.put("memoryBytes", memoryBytes());
+        stats.put("rejected", rejected.get());
+        stats.put("falseNegatives", falseNegatives.get());
+        stats.put("deletedSinceRebuild", deletedSinceRebuild.get());
+        stats.put("lastRebuild", lastRebuild == null ? null : lastRebuild.toString());
+        return stats;
+    }
+
+    // Same sizing formula Guava uses internally: m = -n ln(p) / (ln 2)^2, rounded up to whole longs
+    private long memoryBytes() {
+        if (current == null) {
+            return 0;
+        }
+        long bits = (long) (-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        return ((bits + 63) / 64) * Long.BYTES;
+    }
+
+    private long scan(Query query, Consumer<String> sink)
+            throws InterruptedException, ExecutionException {
+        CompletableFuture<Long> done = new CompletableFuture<>();
+        AtomicLong seen = new AtomicLong();
+        query.stream(new ApiStreamObserver<DocumentSnapshot>() {
+            @Override
+            public void onNext(DocumentSnapshot document) {
+                sink.accept(document.getId());
+                seen.incrementAndGet();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                done.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                done.complete(seen.get());
+            }
+        });
+        return done.get();
+    }
+
+    private static Timestamp minus(Timestamp timestamp, Duration duration) {
+        return Timestamp.ofTimeMicroseconds((timestamp.getSeconds() - duration.getSeconds()) * 1_000_000L
+            + timestamp.getNanos() / 1_000L);
+    }
+}
@@ -0,0 +1,14 @@
+package com.qwervego.label.repository;
+
+import java.util.Date;
+
+/**
+ * Server-side filters for listing QR codes. Null fields do not filter.
+ * {@code createdFrom} is inclusive and {@code createdBefore} exclusive.
+ */
+public record QrListFilter(Boolean active, Date createdFrom, Date createdBefore) {
+
+    public boolean hasDateRange() {
+        return createdFrom != null || createdBefore != null;
+    }
+}
@@ -0,0 +1,82 @@
+package com.qwervego.label.repository;
+
+import com.qwervego.label.model.Qr;
+import com.qwervego.label.util.PhoneNumbers;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JSON merge patch for the owner-editable fields of a tag. Only the fields present in
+ * the request are written; a null value clears the field. Unknown fields are ignored.
+ */
+public record QrPatch(Map<String, Object> fields) {
+    private static final Set<String> TEXT_FIELDS = Set.of("name", "email", "address", "phoneNumber");
+    private static final String ACTIVE_FIELD = "isActive";
+
+    public QrPatch {
+        fields = Collections.unmodifiableMap(new LinkedHashMap<>(fields));
+    }
+
+    /**
+     * Picks the patchable fields out of a request body.
+     *
+     * @throws IllegalArgumentException if a field has the wrong JSON type
+     */
+    public static QrPatch from(Map<String, Object> body) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        body.forEach((name, value) -> {
+            if (TEXT_FIELDS.contains(name)) {
+                if (value != null && !(value instanceof String)) {
+                    throw new IllegalArgumentException(name + " must be a string");
+                }
+                fields.put(name, value);
+            } else if (ACTIVE_FIELD.equals(name)) {
+                if (value instanceof Boolean) {
+                    fields.put(name, value);
+                } else if (value instanceof String text && (text.equalsIgnoreCase("true") || text.equalsIgnoreCase("false"))) {
+                    fields.put(name, Boolean.parseBoolean(text));
+                } else {
+                    throw new IllegalArgumentException(name + " must be true or false");
+                }
+            }
+        });
+        return new QrPatch(fields);
+    }
+
+    public boolean isEmpty() {
+        return fields.isEmpty();
+    }
+
+    /**
+     * The new active state, or null when the patch leaves it alone.
+     */
+    public Boolean active() {
+        return (Boolean) fields.get(ACTIVE_FIELD);
+    }
+
+    // Firestore field updates, keeping the derived phoneE164 lookup field in step
+    Map<String, Object> toFieldUpdates() {
+        Map<String, Object> updates = new LinkedHashMap<>(fields);
+        if (fields.containsKey("phoneNumber")) {
+            updates.put("phoneE164", PhoneNumbers.toE164((String) fields.get("phoneNumber")));
+        }
+        return updates;
+    }
+
+    // For stores that patch the decoded document instead of sending field updates
+    void applyTo(Qr qr) {
+        fields.forEach((name, value) -> {
+            switch (name) {
+                case "name" -> qr.setName((String) value);
+                case "email" -> qr.setEmail((String) value);
+                case "address" -> qr.setAddress((String) value);
+                case "phoneNumber" -> qr.setPhoneNumber((String) value);
+                case ACTIVE_FIELD -> qr.setActive((Boolean) value);
+                default -> throw new IllegalStateException("Unexpected patch field " + name);
+            }
+        });
+    }
+}
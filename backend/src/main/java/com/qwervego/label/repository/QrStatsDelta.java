@@ -0,0 +1,42 @@
+package com.qwervego.label.repository;
+
+import com.qwervego.label.model.Qr;
+
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+
+/**
+ * Change to the QR statistics caused by a write. {@code createdDay} (yyyyMMdd, UTC) is
+ * set only when the write creates documents; its per-day counter grows by {@code total}.
+ */
+public record QrStatsDelta(long total, long active, long inactive, String createdDay) {
+
+    public static final QrStatsDelta NONE = new QrStatsDelta(0, 0, 0, null);
+
+    private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE.withZone(ZoneOffset.UTC);
+
+    public static QrStatsDelta created(Qr qr) {
+        Date createdDate = qr.getCreatedDate() != null ? qr.getCreatedDate() : new Date();
+        return new QrStatsDelta(1, qr.isActive() ? 1 : 0, qr.isActive() ? 0 : 1, DAY.format(createdDate.toInstant()));
+    }
+
+    public static QrStatsDelta generated(long count, Date createdDate) {
+        return new QrStatsDelta(count, 0, count, DAY.format(createdDate.toInstant()));
+    }
+
+    public static QrStatsDelta activeChanged(boolean wasActive, boolean isActive) {
+        if (wasActive == isActive) {
+            return NONE;
+        }
+        return isActive ? new QrStatsDelta(0, 1, -1, null) : new QrStatsDelta(0, -1, 1, null);
+    }
+
+    public static QrStatsDelta deleted(boolean wasActive) {
+        return new QrStatsDelta(-1, wasActive ? -1 : 0, wasActive ? 0 : -1, null);
+    }
+
+    public boolean isEmpty() {
+        return total == 0 && active == 0 && inactive == 0 && createdDay == null;
+    }
+}
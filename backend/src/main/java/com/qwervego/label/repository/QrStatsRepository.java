@@ -0,0 +1,186 @@
+package com.qwervego.label.repository;
+
+import com.google.api.gax.rpc.ApiStreamObserver;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.UpdateBuilder;
+import com.google.cloud.firestore.WriteBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Counters for the {@code qrs} collection (total, active, inactive, created per day),
+ * kept in {@code qr_stats/shard-N} documents. Each write increments one randomly chosen
+ * shard in the same batch or transaction as the document it counts, which spreads the
+ * load past Firestore's per-document write rate; reads sum all shards.
+ */
+@Repository
+public class QrStatsRepository {
+    private static final Logger logger = LoggerFactory.getLogger(QrStatsRepository.class);
+    private static final String COLLECTION_NAME = "qr_stats";
+    private static final String QR_COLLECTION_NAME = "qrs";
+    private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE.withZone(ZoneOffset.UTC);
+
+    private final Firestore firestore;
+    private final int shards;
+
+    @Autowired
+    public QrStatsRepository(Firestore firestore, @Value("${qr.stats.shards:10}") int shards) {
+        this.firestore = firestore;
+        this.shards = shards;
+    }
+
+    /**
+     * Adds the delta to a random shard as part of the caller's batch or transaction.
+     */
+    public <T> void apply(UpdateBuilder<T> writes, QrStatsDelta delta) {
+        if (delta.isEmpty()) {
+            return;
+        }
+        Map<String, Object> increments = new HashMap<>();
+        increments.put("total", FieldValue.increment(delta.total()));
+        increments.put("active", FieldValue.increment(delta.active()));
+        increments.put("inactive", FieldValue.increment(delta.inactive()));
+        if (delta.createdDay() != null) {
+            increments.put("generated", Map.of(delta.createdDay(), FieldValue.increment(delta.total())));
+        }
+        writes.set(shard(ThreadLocalRandom.current().nextInt(shards)), increments, SetOptions.merge());
+    }
+
+    /**
+     * Current counters, summed over all shards ({@code shards} document reads).
+     */
+    public Map<String, Object> read() {
+        try {
+            DocumentReference[] refs = IntStream.range(0, shards).mapToObj(this::shard).toArray(DocumentReference[]::new);
+            long total = 0;
+            long active = 0;
+            long inactive = 0;
+            Map<String, Long> generated = new TreeMap<>();
+            for (DocumentSnapshot shard : firestore.getAll(refs).get()) {
+                if (!shard.exists()) {
+                    continue;
+                }
+                total += longValue(shard.get("total"));
+                active += longValue(shard.get("active"));
+                inactive += longValue(shard.get("inactive"));
+                Object days = shard.get("generated");
+                if (days instanceof Map<?, ?> perDay) {
+                    perDay.forEach((day, count) -> generated.merge(day.toString(), longValue(count), Long::sum));
+                }
+            }
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("source", "shards");
+            stats.put("total", total);
+            stats.put("active", active);
+            stats.put("inactive", inactive);
+            stats.put("generatedPerDay", generated);
+            return stats;
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Error reading QR stats: {}", e.getMessage(), e);
+            throw new RuntimeException("Error reading QR stats", e);
+        }
+    }
+
+    /**
+     * Exact totals from Firestore count() aggregations over the {@code qrs} collection.
+     * Billed at one read per 1000 index entries; use it to check the shards.
+     */
+    public Map<String, Object> count() {
+        try {
+            long total = firestore.collection(QR_COLLECTION_NAME).count().get().get().getCount();
+            long active = firestore.collection(QR_COLLECTION_NAME).whereEqualTo("isActive", true).count().get().get().getCount();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("source", "aggregate");
+            stats.put("total", total);
+            stats.put("active", active);
+            stats.put("inactive", total - active);
+            return stats;
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Error counting QR documents: {}", e.getMessage(), e);
+            throw new RuntimeException("Error counting QR documents", e);
+        }
+    }
+
+    /**
+     * Recomputes the shards from the collection: counts from aggregations, per-day
+     * creations from a streaming scan of {@code createdDate}. Writes that land while it
+     * runs may be counted twice or not at all, so run it when generation is idle.
+     */
+    public Map<String, Object> rebuild() {
+        logger.info("Rebuilding QR stats shards");
+        try {
+            Map<String, Object> counts = count();
+            Map<String, Long> generated = createdPerDay();
+
+            WriteBatch batch = firestore.batch();
+            Map<String, Object> first = new HashMap<>();
+            first.put("total", counts.get("total"));
+            first.put("active", counts.get("active"));
+            first.put("inactive", counts.get("inactive"));
+            first.put("generated", generated);
+            batch.set(shard(0), first);
+            for (int i = 1; i < shards; i++) {
+                batch.delete(shard(i));
+            }
+            batch.commit().get();
+            logger.info("Rebuilt QR stats: {} documents over {} days", counts.get("total"), generated.size());
+            return read();
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Error rebuilding QR stats: {}", e.getMessage(), e);
+            throw new RuntimeException("Error rebuilding QR stats", e);
+        }
+    }
+
+    private Map<String, Long> createdPerDay() throws InterruptedException, ExecutionException {
+        Map<String, Long> perDay = new HashMap<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        firestore.collection(QR_COLLECTION_NAME).select("createdDate").stream(new ApiStreamObserver<DocumentSnapshot>() {
+            @Override
+            public void onNext(DocumentSnapshot document) {
+                Timestamp createdDate = document.getTimestamp("createdDate");
+                if (createdDate != null) {
+                    perDay.merge(DAY.format(createdDate.toDate().toInstant()), 1L, Long::sum);
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                done.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                done.complete(null);
+            }
+        });
+        done.get();
+        return perDay;
+    }
+
+    private DocumentReference shard(int index) {
+        return firestore.collection(COLLECTION_NAME).document("shard-" + index);
+    }
+
+    private static long longValue(Object value) {
+        return value instanceof Number number ? number.longValue() : 0L;
+    }
+}
@@ -0,0 +1,132 @@
+package com.qwervego.label.repository;
+
+import com.google.cloud.Timestamp;
+import com.qwervego.label.exception.QrConflictException;
+import com.qwervego.label.exception.QrNotFoundException;
+import com.qwervego.label.model.Qr;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage for the {@code qrs} dataset. {@link FirestoreQrRepository} is the default;
+ * the {@code embedded-store} profile swaps in {@link EmbeddedQrStore}, which serves the
+ * whole dataset from a memory-mapped file on local disk.
+ * <p>
+ * Reads come in two shapes: the full document (including the password hash) for the
+ * flows that rewrite it, and the public projection without it for scans and batch
+ * lookups. Listings return summaries (ID, {@code isActive} and the two dates).
+ */
+public interface QrStore {
+
+    /**
+     * Rate and retry settings for {@link #createAll}. Stores that do not throttle
+     * ignore the rates.
+     */
+    record BulkCreateOptions(int initialOpsPerSecond, int maxOpsPerSecond, int maxAttempts) {
+    }
+
+    Qr save(Qr qr);
+
+    /**
+     * Saves the document and applies the statistics delta with it. Returns once the
+     * write is durable in the store's terms, with {@code updateTime} set.
+     */
+    Qr save(Qr qr, QrStatsDelta statsDelta);
+
+    CompletableFuture<Qr> saveAsync(Qr qr, QrStatsDelta statsDelta);
+
+    /**
+     * Moves a tag from inactive to active, or creates it already active if it does not
+     * exist, keeping the stored {@code createdDate}.
+     *
+     * @throws QrConflictException if the tag is already active
+     */
+    Qr activate(Qr qr);
+
+    CompletableFuture<Qr> activateAsync(Qr qr);
+
+    /**
+     * Creates the documents without overwriting: each future completes with true once
+     * its create is stored, false if the ID already exists, or exceptionally on any
+     * other failure.
+     */
+    List<CompletableFuture<Boolean>> createAll(List<Qr> qrs, BulkCreateOptions options);
+
+    Optional<Qr> findById(String id);
+
+    CompletableFuture<Optional<Qr>> findByIdAsync(String id);
+
+    Optional<Qr> findPublicById(String id);
+
+    CompletableFuture<Optional<Qr>> findPublicByIdAsync(String id);
+
+    /**
+     * Drops any cached copy of the document, so the next read sees the stored one.
+     */
+    void evict(String id);
+
+    Page<Qr> findAll(Pageable pageable);
+
+    CompletableFuture<Page<Qr>> findAllAsync(Pageable pageable);
+
+    /**
+     * Cursor-based listing ordered by ID, or by {@code createdDate} then ID when the
+     * filter has a date range.
+     *
+     * @throws com.qwervego.label.exception.InvalidPageTokenException if the token does
+     *                                                                not fit the query
+     */
+    KeysetPage<Qr> findPage(QrListFilter filter, String pageToken, int size);
+
+    List<Qr> findAllById(List<String> ids);
+
+    /**
+     * Public projections of the given IDs, in the caller's order; IDs with no document
+     * are left out.
+     */
+    CompletableFuture<List<Qr>> findAllByIdAsync(List<String> ids);
+
+    /**
+     * Public projections of the given IDs, one future per chunk, each completing (in any
+     * order) as its chunk is read. Every requested ID appears in exactly one chunk.
+     */
+    List<CompletableFuture<Map<String, Optional<Qr>>>> findPublicByIdChunks(Collection<String> ids);
+
+    /**
+     * Applies a merge patch. With {@code expectedUpdateTime} it lands only if the
+     * document is unchanged since that version. Returns the new update time, or null
+     * when it is not known.
+     *
+     * @throws QrNotFoundException if there is no such tag
+     * @throws QrConflictException if the tag changed after {@code expectedUpdateTime}
+     */
+    Timestamp patch(String id, QrPatch patch, Timestamp expectedUpdateTime);
+
+    void deleteById(String id);
+
+    Optional<Qr> findByPhoneNumber(String phoneNumber);
+
+    Optional<Qr> findByEmail(String email);
+
+    /**
+     * Current counters (total, active, inactive, generatedPerDay), cheap enough to
+     * serve on every request.
+     */
+    Map<String, Object> readStats();
+
+    /**
+     * Exact counters (total, active, inactive) computed from the documents themselves.
+     */
+    Map<String, Object> countStats();
+
+    /**
+     * Recomputes the counters behind {@link #readStats} from the documents.
+     */
+    Map<String, Object> rebuildStats();
+}
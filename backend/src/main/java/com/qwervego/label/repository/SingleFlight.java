@@ -0,0 +1,121 @@
+package com.qwervego.label.repository;
+
+import com.qwervego.label.exception.InFlightLoadTimeoutException;
+import com.qwervego.label.util.CompletableFutures;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent loads of the same key into a single call. The first caller
+ * runs the loader on its own thread; callers arriving while it is in flight wait
+ * (for at most {@code maxWait}) and receive the same result or the same failure.
+ * Blocking and non-blocking callers share the same in-flight calls. A waiter that gives
+ * up gets an {@link InFlightLoadTimeoutException}, or a {@link TimeoutException} on the
+ * non-blocking path; both are answered with 503.
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Duration maxWait;
+    private final Counter executed;
+    private final Counter coalesced;
+    private final Counter timedOut;
+
+    public SingleFlight(String name, Duration maxWait, MeterRegistry meterRegistry) {
+        this.maxWait = maxWait;
+        this.executed = Counter.builder("repository.singleflight.calls")
+            .tag("name", name).tag("result", "executed")
+            .description("Remote loads actually issued")
+            .register(meterRegistry);
+        this.coalesced = Counter.builder("repository.singleflight.calls")
+            .tag("name", name).tag("result", "coalesced")
+            .description("Loads that joined an in-flight call instead of issuing their own")
+            .register(meterRegistry);
+        this.timedOut = Counter.builder("repository.singleflight.calls")
+            .tag("name", name).tag("result", "timed_out")
+            .register(meterRegistry);
+    }
+
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            coalesced.increment();
+            return await(key, existing);
+        }
+
+        executed.increment();
+        try {
+            V value = loader.get();
+            created.complete(value);
+            return value;
+        } catch (Throwable e) {
+            // Errors too, or the waiters would hang for maxWait
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> loader) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            coalesced.increment();
+            return existing.copy()
+                .orTimeout(maxWait.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((value, error) -> {
+                    if (error instanceof TimeoutException) {
+                        timedOut.increment();
+                    }
+                });
+        }
+
+        executed.increment();
+        CompletableFuture<V> load;
+        try {
+            load = loader.get();
+        } catch (Throwable e) {
+            load = CompletableFuture.failedFuture(e);
+        }
+        load.whenComplete((value, error) -> {
+            inFlight.remove(key, created);
+            if (error != null) {
+                created.completeExceptionally(CompletableFutures.unwrap(error));
+            } else {
+                created.complete(value);
+            }
+        });
+        // Hand out a copy so no caller can complete the shared future
+        return created.copy();
+    }
+
+    private V await(K key, CompletableFuture<V> future) {
+        try {
+            return future.get(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timedOut.increment();
+            throw new InFlightLoadTimeoutException("Timed out after " + maxWait + " waiting for in-flight load of " + key, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for in-flight load of " + key, e);
+        } catch (ExecutionException e) {
+            // Every waiter sees the leader's failure, with the same type the leader threw
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
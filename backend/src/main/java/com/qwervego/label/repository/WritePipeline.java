@@ -0,0 +1,378 @@
+package com.qwervego.label.repository;
+
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.rpc.ApiException;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreException;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.cloud.firestore.WriteResult;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.qwervego.label.util.CompletableFutures;
+import io.grpc.Status;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Group commit for repository writes. Each caller submits the writes that must land
+ * together; submissions that queue up while earlier commits are in flight are sent as
+ * one {@link WriteBatch}, up to {@code maxBatchWrites} writes and {@code maxInFlight}
+ * concurrent commits. An idle pipeline commits a submission straight away, so batching
+ * only adds latency when there is already a commit to wait for.
+ * <p>
+ * A submission's future completes only once Firestore has acknowledged the commit that
+ * carried it, with the result of its first write. Transient failures are retried with
+ * backoff up to {@code maxAttempts}; a group that fails for any other reason is split
+ * and each submission committed alone, so one bad write cannot fail its neighbours.
+ * <p>
+ * A commit that fails with UNAVAILABLE, DEADLINE_EXCEEDED or INTERNAL may still have
+ * been applied. Only submissions made with {@link #submitIdempotent} are replayed after
+ * those; any other submission fails with the error, because replaying an increment
+ * would count it twice and replaying a precondition would fail against its own result.
+ */
+@Component
+public class WritePipeline {
+    private static final Logger logger = LoggerFactory.getLogger(WritePipeline.class);
+    // The commit was rejected before it was applied
+    private static final Set<Status.Code> RETRYABLE_CODES = EnumSet.of(Status.Code.ABORTED, Status.Code.RESOURCE_EXHAUSTED);
+    // The commit may or may not have been applied
+    private static final Set<Status.Code> AMBIGUOUS_CODES = EnumSet.of(Status.Code.UNAVAILABLE,
+        Status.Code.DEADLINE_EXCEEDED, Status.Code.INTERNAL);
+
+    private final Firestore firestore;
+    private final int maxBatchWrites;
+    private final int maxInFlight;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final ScheduledExecutorService retryScheduler;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Guarded by lock
+    private final ArrayDeque<Submission> queue = new ArrayDeque<>();
+    private int inFlight;
+
+    private final Timer commitSuccess;
+    private final Timer commitFailure;
+    private final DistributionSummary batchSizes;
+    private final Counter retries;
+
+    public WritePipeline(Firestore firestore, MeterRegistry meterRegistry,
+                         @Value("${repository.write-pipeline.max-batch-writes:500}") int maxBatchWrites,
+                         @Value("${repository.write-pipeline.max-in-flight:4}") int maxInFlight,
+                         @Value("${repository.write-pipeline.max-attempts:3}") int maxAttempts,
+                         @Value("${repository.write-pipeline.initial-backoff:100ms}") Duration initialBackoff) {
+        this.firestore = firestore;
+        this.maxBatchWrites = maxBatchWrites;
+        this.maxInFlight = maxInFlight;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "write-pipeline-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.commitSuccess = Timer.builder("repository.write.commit")
+            .tag("outcome", "success")
+            .description("Time from sending a group commit to its acknowledgment")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        this.commitFailure = Timer.builder("repository.write.commit")
+            .tag("outcome", "failure")
+            .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("repository.write.batch.size")
+            .description("Submissions carried by one group commit")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        this.retries = Counter.builder("repository.write.retries")
+            .description("Submissions re-queued after a transient commit failure")
+            .register(meterRegistry);
+        Gauge.builder("repository.write.queue.depth", this, WritePipeline::queueDepth)
+            .description("Submissions waiting for a commit slot")
+            .register(meterRegistry);
+        Gauge.builder("repository.write.in.flight", this, WritePipeline::inFlightCommits)
+            .description("Group commits awaiting acknowledgment")
+            .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void close() {
+        retryScheduler.shutdown();
+    }
+
+    /**
+     * Queues the writes added by {@code writes} for the next group commit. They are
+     * committed atomically with each other; the returned future completes with the
+     * result of the first write once the commit is acknowledged. {@code document} is the
+     * one the submission is about: two submissions for the same document never share a
+     * commit, so each one's preconditions are checked against the other's result.
+     * The writes are not replayed after a failure that leaves their outcome unknown.
+     */
+    public CompletableFuture<WriteResult> submit(DocumentReference document, Consumer<WriteBatch> writes) {
+        return submit(document, writes, false);
+    }
+
+    /**
+     * Like {@link #submit}, for writes that leave the same result however often they are
+     * applied (no increments or preconditions), so they are also retried after a failure
+     * that leaves their outcome unknown.
+     */
+    public CompletableFuture<WriteResult> submitIdempotent(DocumentReference document, Consumer<WriteBatch> writes) {
+        return submit(document, writes, true);
+    }
+
+    private CompletableFuture<WriteResult> submit(DocumentReference document, Consumer<WriteBatch> writes, boolean idempotent) {
+        // Built once up front to size it for grouping and to fail malformed writes immediately;
+        // the writes are rebuilt into the group batch for every commit attempt
+        WriteBatch scratch = firestore.batch();
+        try {
+            writes.accept(scratch);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        Submission submission = new Submission(document.getPath(), writes, scratch.getMutationsSize(), idempotent);
+        enqueue(submission);
+        return submission.result;
+    }
+
+    /**
+     * Blocking variant of {@link #submit}.
+     */
+    public WriteResult write(DocumentReference document, Consumer<WriteBatch> writes) {
+        return await(submit(document, writes));
+    }
+
+    /**
+     * Blocking variant of {@link #submitIdempotent}.
+     */
+    public WriteResult writeIdempotent(DocumentReference document, Consumer<WriteBatch> writes) {
+        return await(submitIdempotent(document, writes));
+    }
+
+    private static WriteResult await(CompletableFuture<WriteResult> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for write acknowledgment", e);
+        } catch (ExecutionException e) {
+            Throwable cause = CompletableFutures.unwrap(e);
+            throw cause instanceof RuntimeException runtime ? runtime : new IllegalStateException(cause);
+        }
+    }
+
+    private void enqueue(Submission submission) {
+        lock.lock();
+        try {
+            queue.add(submission);
+        } finally {
+            lock.unlock();
+        }
+        dispatch();
+    }
+
+    // Sends queued submissions while commit slots are free
+    private void dispatch() {
+        while (true) {
+            List<Submission> group;
+            lock.lock();
+            try {
+                if (queue.isEmpty() || inFlight >= maxInFlight) {
+                    return;
+                }
+                group = drain();
+                inFlight++;
+            } finally {
+                lock.unlock();
+            }
+            commit(group);
+        }
+    }
+
+    // Caller must hold the lock. Always takes at least one submission, however large
+    private List<Submission> drain() {
+        List<Submission> group = new ArrayList<>();
+        Set<String> documents = new HashSet<>();
+        int writes = 0;
+        while (!queue.isEmpty()) {
+            Submission next = queue.peek();
+            if (!group.isEmpty() && (next.isolated || writes + next.writeCount > maxBatchWrites
+                    || documents.contains(next.document))) {
+                break;
+            }
+            queue.poll();
+            group.add(next);
+            documents.add(next.document);
+            writes += next.writeCount;
+            if (next.isolated) {
+                break;
+            }
+        }
+        return group;
+    }
+
+    private void commit(List<Submission> group) {
+        WriteBatch batch = firestore.batch();
+        int[] firstWrite = new int[group.size()];
+        try {
+            for (int i = 0; i < group.size(); i++) {
+                firstWrite[i] = batch.getMutationsSize();
+                group.get(i).writes.accept(batch);
+            }
+        } catch (RuntimeException e) {
+            releaseSlot();
+            failOrSplit(group, e);
+            dispatch();
+            return;
+        }
+
+        batchSizes.record(group.size());
+        long start = System.nanoTime();
+        ApiFutures.addCallback(batch.commit(), new ApiFutureCallback<List<WriteResult>>() {
+            @Override
+            public void onSuccess(List<WriteResult> results) {
+                commitSuccess.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                releaseSlot();
+                for (int i = 0; i < group.size(); i++) {
+                    group.get(i).result.complete(results.get(firstWrite[i]));
+                }
+                dispatch();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                commitFailure.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                releaseSlot();
+                failOrSplit(group, t);
+                dispatch();
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private void failOrSplit(List<Submission> group, Throwable t) {
+        Status.Code code = statusCode(t);
+        boolean ambiguous = AMBIGUOUS_CODES.contains(code);
+        if (ambiguous || RETRYABLE_CODES.contains(code)) {
+            for (Submission submission : group) {
+                if (ambiguous && !submission.idempotent) {
+                    logger.warn("Write to {} may or may not have been applied ({}); not retrying", submission.document, code);
+                    submission.result.completeExceptionally(t);
+                } else if (++submission.attempts < maxAttempts) {
+                    retries.increment();
+                    retryScheduler.schedule(() -> enqueue(submission), backoff(submission.attempts), TimeUnit.MILLISECONDS);
+                } else {
+                    logger.error("Write failed after {} attempts: {}", submission.attempts, t.getMessage());
+                    submission.result.completeExceptionally(t);
+                }
+            }
+            return;
+        }
+        if (group.size() == 1) {
+            group.get(0).result.completeExceptionally(t);
+            return;
+        }
+        logger.warn("Group commit of {} submissions failed ({}); committing each on its own", group.size(), t.getMessage());
+        for (Submission submission : group) {
+            submission.isolated = true;
+            enqueue(submission);
+        }
+    }
+
+    // Exponential backoff with full jitter
+    private long backoff(int attempt) {
+        long ceiling = initialBackoff.toMillis() << Math.min(attempt - 1, 10);
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    private void releaseSlot() {
+        lock.lock();
+        try {
+            inFlight--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether a failed commit may nevertheless have been applied.
+     */
+    static boolean isAmbiguous(Throwable t) {
+        return AMBIGUOUS_CODES.contains(statusCode(t));
+    }
+
+    /**
+     * gRPC status of a failed Firestore call, or null when the failure did not come from
+     * Firestore. Commits fail with either a FirestoreException or a gax ApiException.
+     */
+    static Status.Code statusCode(Throwable t) {
+        Throwable cause = CompletableFutures.unwrap(t);
+        if (cause instanceof FirestoreException e && e.getStatus() != null) {
+            return e.getStatus().getCode();
+        }
+        if (cause instanceof ApiException e) {
+            return Status.Code.valueOf(e.getStatusCode().getCode().name());
+        }
+        return null;
+    }
+
+    private int queueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int inFlightCommits() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class Submission {
+        private final String document;
+        private final Consumer<WriteBatch> writes;
+        private final int writeCount;
+        private final boolean idempotent;
+        private final CompletableFuture<WriteResult> result = new CompletableFuture<>();
+        private int attempts;
+        // Set after a failed group commit: commit this one without neighbours
+        private boolean isolated;
+
+        Submission(String document, Consumer<WriteBatch> writes, int writeCount, boolean idempotent) {
+            this.document = document;
+            this.writes = writes;
+            this.writeCount = writeCount;
+            this.idempotent = idempotent;
+        }
+    }
+}
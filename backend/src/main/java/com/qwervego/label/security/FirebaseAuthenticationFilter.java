@@ -1,29 +1,38 @@
 package com.qwervego.label.security;
 
 import com.google.firebase.auth.FirebaseAuthException;
-import com.qwervego.label.service.FirebaseAuthService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextHolderStrategy;
 import org.springframework.stereotype.Component;
+import org.springframework.util.function.SingletonSupplier;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
+/**
+ * Authenticates bearer Firebase ID tokens lazily. The filter only installs a deferred
+ * security context; the token is verified the first time an authorization rule or a
+ * controller asks for the authentication, and the result is reused for the rest of
+ * the request. Requests to {@code permitAll} paths that never look at the principal
+ * (e.g. scans) therefore never verify the token.
+ */
 @Component
 public class FirebaseAuthenticationFilter extends OncePerRequestFilter {
 
-    private final FirebaseAuthService firebaseAuthService;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final SecurityContextHolderStrategy securityContextHolderStrategy = SecurityContextHolder.getContextHolderStrategy();
 
-    public FirebaseAuthenticationFilter(FirebaseAuthService firebaseAuthService) {
-        this.firebaseAuthService = firebaseAuthService;
+    public FirebaseAuthenticationFilter(VerifiedTokenCache verifiedTokenCache) {
+        this.verifiedTokenCache = verifiedTokenCache;
     }
 
     @Override
@@ -37,25 +46,32 @@ public class FirebaseAuthenticationFilter extends OncePerRequestFilter {
             return;
         }
 
+        String idToken = authHeader.substring(7);
+        Supplier<SecurityContext> previous = securityContextHolderStrategy.getDeferredContext();
+        securityContextHolderStrategy.setDeferredContext(SingletonSupplier.of(() -> authenticate(idToken, previous)));
+
+        filterChain.doFilter(request, response);
+    }
+
+    private SecurityContext authenticate(String idToken, Supplier<SecurityContext> previous) {
         try {
-            String idToken = authHeader.substring(7);
-            String uid = firebaseAuthService.verifyIdToken(idToken);
-            Map<String, Object> claims = firebaseAuthService.getUserClaims(uid);
+            FirebasePrincipal principal = FirebasePrincipal.of(verifiedTokenCache.verify(idToken));
             
+            // Custom claims are embedded in the ID token, so no getUser round trip is needed
             List<SimpleGrantedAuthority> authorities = List.of(
-                new SimpleGrantedAuthority("ROLE_" + claims.getOrDefault("role", "USER"))
+                new SimpleGrantedAuthority("ROLE_" + principal.role())
             );
 
             UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
-                uid, null, authorities
+                principal, null, authorities
             );
             
-            SecurityContextHolder.getContext().setAuthentication(authentication);
-            
+            SecurityContext context = securityContextHolderStrategy.createEmptyContext();
+            context.setAuthentication(authentication);
+            return context;
         } catch (FirebaseAuthException e) {
             logger.error("Firebase authentication failed", e);
+            return previous.get();
         }
-
-        filterChain.doFilter(request, response);
     }
 } 
@@ -0,0 +1,28 @@
+package com.qwervego.label.security;
+
+import com.google.firebase.auth.FirebaseToken;
+
+import java.security.Principal;
+import java.util.Map;
+
+/**
+ * What a verified Firebase ID token says about its bearer. Everything here comes
+ * from the token itself, so building one costs no Firebase Auth round trip.
+ * This is the principal of authenticated requests; {@link #getName()} is the uid.
+ */
+public record FirebasePrincipal(String uid, String phoneNumber, Map<String, Object> claims) implements Principal {
+
+    public static FirebasePrincipal of(FirebaseToken token) {
+        Map<String, Object> claims = token.getClaims();
+        return new FirebasePrincipal(token.getUid(), (String) claims.get("phone_number"), claims);
+    }
+
+    public String role() {
+        return String.valueOf(claims.getOrDefault("role", "USER"));
+    }
+
+    @Override
+    public String getName() {
+        return uid;
+    }
+}
@@ -0,0 +1,160 @@
+package com.qwervego.label.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseToken;
+import com.qwervego.label.util.CompletableFutures;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decoded Firebase ID tokens, keyed by a SHA-256 of the raw token and kept until the
+ * token's own {@code exp}. A token is verified with a revocation check the first time
+ * it is seen and again once every {@code revocation-check-interval}; in between it is
+ * answered from memory.
+ * <p>
+ * Roles come from the custom claims embedded in the token, so a role change takes
+ * effect when the client next refreshes its token (at most an hour).
+ */
+@Component
+public class VerifiedTokenCache {
+    private static final Logger logger = LoggerFactory.getLogger(VerifiedTokenCache.class);
+
+    private final FirebaseAuth firebaseAuth;
+    private final long revocationCheckIntervalNanos;
+    private final Cache<String, Entry> tokens;
+
+    public VerifiedTokenCache(FirebaseAuth firebaseAuth, MeterRegistry meterRegistry,
+                              @Value("${auth.token-cache.maximum-size:10000}") long maximumSize,
+                              @Value("${auth.token-cache.revocation-check-interval:5m}") Duration revocationCheckInterval) {
+        this.firebaseAuth = firebaseAuth;
+        this.revocationCheckIntervalNanos = revocationCheckInterval.toNanos();
+        this.tokens = Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfter(new UntilTokenExpiry())
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, tokens, "verifiedTokens");
+    }
+
+    /**
+     * Returns the decoded token, verifying it against Firebase Auth only when it is not
+     * cached or its last revocation check is older than the configured interval.
+     */
+    public FirebaseToken verify(String idToken) throws FirebaseAuthException {
+        String key = hash(idToken);
+        Entry entry = tokens.getIfPresent(key);
+        if (entry == null) {
+            FirebaseToken token = firebaseAuth.verifyIdToken(idToken, true);
+            tokens.put(key, new Entry(token, System.nanoTime()));
+            return token;
+        }
+
+        if (claimRevocationCheck(entry)) {
+            try {
+                firebaseAuth.verifyIdToken(idToken, true);
+            } catch (FirebaseAuthException e) {
+                logger.info("Cached token for uid {} failed revocation check: {}", entry.token.getUid(), e.getMessage());
+                tokens.invalidate(key);
+                throw e;
+            }
+        }
+        return entry.token;
+    }
+
+    /**
+     * Non-blocking variant of {@link #verify}; a cached token completes immediately.
+     */
+    public CompletableFuture<FirebaseToken> verifyAsync(String idToken) {
+        String key = hash(idToken);
+        Entry entry = tokens.getIfPresent(key);
+        if (entry == null) {
+            return CompletableFutures.from(firebaseAuth.verifyIdTokenAsync(idToken, true))
+                .thenApply(token -> {
+                    tokens.put(key, new Entry(token, System.nanoTime()));
+                    return token;
+                });
+        }
+        if (!claimRevocationCheck(entry)) {
+            return CompletableFuture.completedFuture(entry.token);
+        }
+        return CompletableFutures.from(firebaseAuth.verifyIdTokenAsync(idToken, true))
+            .handle((token, error) -> {
+                if (error != null) {
+                    logger.info("Cached token for uid {} failed revocation check: {}", entry.token.getUid(), error.getMessage());
+                    tokens.invalidate(key);
+                    throw new CompletionException(CompletableFutures.unwrap(error));
+                }
+                return entry.token;
+            });
+    }
+
+    public void invalidate(String idToken) {
+        tokens.invalidate(hash(idToken));
+    }
+
+    // Only one request re-checks a given token; the others keep using the cached result
+    private boolean claimRevocationCheck(Entry entry) {
+        long checkedAt = entry.revocationCheckedAt.get();
+        return System.nanoTime() - checkedAt >= revocationCheckIntervalNanos
+            && entry.revocationCheckedAt.compareAndSet(checkedAt, System.nanoTime());
+    }
+
+    private static String hash(String idToken) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(idToken.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static final class Entry {
+        private final FirebaseToken token;
+        private final AtomicLong revocationCheckedAt;
+
+        Entry(FirebaseToken token, long revocationCheckedAt) {
+            this.token = token;
+            this.revocationCheckedAt = new AtomicLong(revocationCheckedAt);
+        }
+    }
+
+    private static class UntilTokenExpiry implements Expiry<String, Entry> {
+        @Override
+        public long expireAfterCreate(String key, Entry entry, long currentTime) {
+            Object exp = entry.token.getClaims().get("exp");
+            if (!(exp instanceof Number seconds)) {
+                return 0;
+            }
+            long remainingMillis = TimeUnit.SECONDS.toMillis(seconds.longValue()) - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, entry, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.qwervego.label.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseAuthException;
 import com.google.firebase.auth.UserRecord;
@@ -7,19 +9,39 @@ import com.google.firebase.auth.UserRecord.CreateRequest;
 import com.google.firebase.auth.UserRecord.UpdateRequest;
 import com.qwervego.label.dto.AdminCreateRequest;
 import com.qwervego.label.model.Admin;
+import com.qwervego.label.security.FirebasePrincipal;
+import com.qwervego.label.security.VerifiedTokenCache;
+import com.qwervego.label.util.CompletableFutures;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class FirebaseAuthService {
     private final FirebaseAuth firebaseAuth;
+    private final VerifiedTokenCache verifiedTokenCache;
+    // Short-lived copies of getUser results, for data the ID token does not carry
+    private final Cache<String, UserRecord> userRecords;
 
     @Autowired
-    public FirebaseAuthService(FirebaseAuth firebaseAuth) {
+    public FirebaseAuthService(FirebaseAuth firebaseAuth, VerifiedTokenCache verifiedTokenCache, MeterRegistry meterRegistry,
+                               @Value("${auth.user-cache.maximum-size:10000}") long userCacheSize,
+                               @Value("${auth.user-cache.expire-after-write:5m}") Duration userCacheTtl) {
         this.firebaseAuth = firebaseAuth;
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.userRecords = Caffeine.newBuilder()
+            .maximumSize(userCacheSize)
+            .expireAfterWrite(userCacheTtl)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, userRecords, "firebaseUsers");
     }
 
     public UserRecord createUser(AdminCreateRequest request) throws FirebaseAuthException {
@@ -52,6 +74,7 @@ public class FirebaseAuthService {
         }
         
         firebaseAuth.updateUser(updateRequest);
+        userRecords.invalidate(uid);
         
         if (request.getRole() != null) {
             Map<String, Object> claims = new HashMap<>();
@@ -62,21 +85,61 @@ public class FirebaseAuthService {
 
     public void deleteUser(String uid) throws FirebaseAuthException {
         firebaseAuth.deleteUser(uid);
+        userRecords.invalidate(uid);
     }
 
     public UserRecord getUserByEmail(String email) throws FirebaseAuthException {
         return firebaseAuth.getUserByEmail(email);
     }
 
-    public String verifyIdToken(String idToken) throws FirebaseAuthException {
-        return firebaseAuth.verifyIdToken(idToken).getUid();
+    /**
+     * Verifies the ID token (through {@link VerifiedTokenCache}) and returns what it says
+     * about the caller: uid, verified phone number and custom claims.
+     */
+    public FirebasePrincipal verify(String idToken) throws FirebaseAuthException {
+        return FirebasePrincipal.of(verifiedTokenCache.verify(idToken));
     }
 
-    public Map<String, Object> getUserClaims(String uid) throws FirebaseAuthException {
-        return firebaseAuth.getUser(uid).getCustomClaims();
+    public CompletableFuture<FirebasePrincipal> verifyAsync(String idToken) {
+        return verifiedTokenCache.verifyAsync(idToken).thenApply(FirebasePrincipal::of);
     }
 
-    public String getPhoneNumber(String uid) throws FirebaseAuthException {
-        return firebaseAuth.getUser(uid).getPhoneNumber();
+    /**
+     * Phone number from the token's {@code phone_number} claim, falling back to the
+     * (cached) user record for tokens that were not issued by phone sign-in.
+     */
+    public String getPhoneNumber(FirebasePrincipal principal) throws FirebaseAuthException {
+        if (principal.phoneNumber() != null) {
+            return principal.phoneNumber();
+        }
+        return getUser(principal.uid()).getPhoneNumber();
+    }
+
+    public CompletableFuture<String> getPhoneNumberAsync(FirebasePrincipal principal) {
+        if (principal.phoneNumber() != null) {
+            return CompletableFuture.completedFuture(principal.phoneNumber());
+        }
+        return getUserAsync(principal.uid()).thenApply(UserRecord::getPhoneNumber);
+    }
+
+    public UserRecord getUser(String uid) throws FirebaseAuthException {
+        UserRecord user = userRecords.getIfPresent(uid);
+        if (user == null) {
+            user = firebaseAuth.getUser(uid);
+            userRecords.put(uid, user);
+        }
+        return user;
+    }
+
+    public CompletableFuture<UserRecord> getUserAsync(String uid) {
+        UserRecord user = userRecords.getIfPresent(uid);
+        if (user != null) {
+            return CompletableFuture.completedFuture(user);
+        }
+        return CompletableFutures.from(firebaseAuth.getUserAsync(uid))
+            .thenApply(loaded -> {
+                userRecords.put(uid, loaded);
+                return loaded;
+            });
     }
-} 
\ No newline at end of file
+} 
@@ -0,0 +1,121 @@
+package com.qwervego.label.service;
+
+import com.qwervego.label.exception.PasswordHashingUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs BCrypt on a small fixed pool so a burst of password resets cannot occupy every
+ * core. At most {@code threads} hashes run at once and {@code queue-capacity} wait;
+ * anything beyond that is rejected immediately with
+ * {@link PasswordHashingUnavailableException} (mapped to 503) instead of queueing.
+ */
+@Component
+public class PasswordHasher {
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHasher.class);
+    // The first hash runs before the JIT has compiled BCrypt and takes ~3x longer
+    private static final int CALIBRATION_ROUNDS = 3;
+
+    private final BCryptPasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final Duration targetDuration;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Counter rejected;
+
+    public PasswordHasher(BCryptPasswordEncoder passwordEncoder, MeterRegistry meterRegistry,
+                          @Value("${security.password.hash-threads:0}") int threads,
+                          @Value("${security.password.hash-queue-capacity:32}") int queueCapacity,
+                          @Value("${security.password.target-duration:250ms}") Duration targetDuration) {
+        this.passwordEncoder = passwordEncoder;
+        this.targetDuration = targetDuration;
+        // Default to half the cores so scans keep the rest
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            Thread.ofPlatform().name("password-hash-", 0).daemon(true).factory(),
+            new ThreadPoolExecutor.AbortPolicy());
+
+        this.encodeTimer = Timer.builder("password.hash.duration").tag("operation", "encode")
+            .publishPercentileHistogram().register(meterRegistry);
+        this.matchesTimer = Timer.builder("password.hash.duration").tag("operation", "matches")
+            .publishPercentileHistogram().register(meterRegistry);
+        this.rejected = Counter.builder("password.hash.rejected")
+            .description("Hash requests refused because the pool and its queue were full")
+            .register(meterRegistry);
+        Gauge.builder("password.hash.queue.depth", executor, e -> e.getQueue().size()).register(meterRegistry);
+        logger.info("Password hashing pool: {} threads, queue capacity {}", poolSize, queueCapacity);
+    }
+
+    public String encode(String rawPassword) {
+        return run(() -> encodeTimer.record(() -> passwordEncoder.encode(rawPassword)));
+    }
+
+    public boolean matches(String rawPassword, String encodedPassword) {
+        return run(() -> matchesTimer.record(() -> passwordEncoder.matches(rawPassword, encodedPassword)));
+    }
+
+    /**
+     * Times a hash at the configured cost on this instance (the fastest of a few, so
+     * the warm cost), so the log shows whether the strength suits the machine the
+     * service was deployed on.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void calibrate() {
+        executor.execute(() -> {
+            long fastest = Long.MAX_VALUE;
+            for (int round = 0; round < CALIBRATION_ROUNDS; round++) {
+                long start = System.nanoTime();
+                passwordEncoder.encode("calibration");
+                fastest = Math.min(fastest, System.nanoTime() - start);
+            }
+            Duration took = Duration.ofNanos(fastest);
+            if (took.compareTo(targetDuration) > 0) {
+                logger.warn("One BCrypt hash takes {} ms on this instance, above the {} ms target; consider lowering security.password.bcrypt-strength",
+                    took.toMillis(), targetDuration.toMillis());
+            } else {
+                logger.info("One BCrypt hash takes {} ms on this instance (target {} ms)", took.toMillis(), targetDuration.toMillis());
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private <T> T run(Callable<T> task) {
+        try {
+            return executor.submit(task).get();
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new PasswordHashingUnavailableException("Too many password operations in progress. Please try again shortly.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for password hashing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
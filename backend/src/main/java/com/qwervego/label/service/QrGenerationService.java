@@ -0,0 +1,124 @@
+package com.qwervego.label.service;
+
+import com.qwervego.label.model.Qr;
+import com.qwervego.label.repository.QrStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Generates unactivated QR tags in bulk. Tags are created with create-only writes, so
+ * an ID that collides with an existing tag is never overwritten; a fresh ID is drawn
+ * for it in the next round. Each tag is reported to the caller once Firestore has
+ * acknowledged it.
+ */
+@Service
+public class QrGenerationService {
+    private static final Logger logger = LoggerFactory.getLogger(QrGenerationService.class);
+    private static final String ID_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    private static final int ID_LENGTH = 6;
+    private static final int MAX_ROUNDS = 5;
+
+    private final QrStore qrRepository;
+    private final QrStore.BulkCreateOptions createOptions;
+
+    public QrGenerationService(QrStore qrRepository,
+                               @Value("${qr.generate.initial-ops-per-second:500}") int initialOpsPerSecond,
+                               @Value("${qr.generate.max-ops-per-second:10000}") int maxOpsPerSecond,
+                               @Value("${qr.generate.max-attempts:5}") int maxAttempts) {
+        this.qrRepository = qrRepository;
+        this.createOptions = new QrStore.BulkCreateOptions(initialOpsPerSecond, maxOpsPerSecond, maxAttempts);
+    }
+
+    public record Report(int requested, int created, int collisions, int failed, long elapsedMillis, double writesPerSecond) {
+    }
+
+    /**
+     * Creates {@code quantity} tags, calling {@code onCreated} on the calling thread with
+     * each ID as its write is acknowledged. Returns once every write has settled.
+     */
+    public Report generate(int quantity, Consumer<String> onCreated) {
+        long start = System.nanoTime();
+        String datePrefix = LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE);
+        Set<String> used = new HashSet<>();
+        int created = 0;
+        int collisions = 0;
+        int failed = 0;
+
+        for (int round = 1; round <= MAX_ROUNDS && created + failed < quantity; round++) {
+            Date createdDate = new Date();
+            List<Qr> qrs = new ArrayList<>();
+            while (qrs.size() < quantity - created - failed) {
+                String id = datePrefix + "-" + randomId();
+                if (used.add(id)) {
+                    Qr qr = new Qr();
+                    qr.setId(id);
+                    qr.setActive(false);
+                    qr.setPassword("");
+                    qr.setCreatedDate(createdDate);
+                    qrs.add(qr);
+                }
+            }
+
+            List<CompletableFuture<Boolean>> writes = qrRepository.createAll(qrs, createOptions);
+            BlockingQueue<Integer> settled = new LinkedBlockingQueue<>();
+            for (int i = 0; i < writes.size(); i++) {
+                int index = i;
+                writes.get(i).whenComplete((result, error) -> settled.add(index));
+            }
+            for (int i = 0; i < writes.size(); i++) {
+                int index;
+                try {
+                    index = settled.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while generating QR codes", e);
+                }
+                try {
+                    if (writes.get(index).join()) {
+                        created++;
+                        onCreated.accept(qrs.get(index).getId());
+                    } else {
+                        collisions++;
+                    }
+                } catch (CompletionException e) {
+                    failed++;
+                    logger.error("Failed to create QR document {}: {}", qrs.get(index).getId(), e.getCause().getMessage());
+                }
+            }
+        }
+
+        // IDs still colliding after the last round count as failures
+        failed = quantity - created;
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        double writesPerSecond = elapsed.isZero() ? 0 : created / (elapsed.toNanos() / 1e9);
+        logger.info("Generated {} of {} QR codes in {} ms ({} collisions, {} failed): {} writes/s",
+            created, quantity, elapsed.toMillis(), collisions, failed, String.format("%.1f", writesPerSecond));
+        return new Report(quantity, created, collisions, failed, elapsed.toMillis(), writesPerSecond);
+    }
+
+    static String randomId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] id = new char[ID_LENGTH];
+        for (int i = 0; i < ID_LENGTH; i++) {
+            id[i] = ID_CHARS.charAt(random.nextInt(ID_CHARS.length()));
+        }
+        return new String(id);
+    }
+}
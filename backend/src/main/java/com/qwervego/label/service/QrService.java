@@ -1,5 +1,6 @@
 package com.qwervego.label.service;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -7,25 +8,28 @@ import java.util.Optional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.validation.BindingResult;
 
+import com.google.cloud.Timestamp;
 import com.qwervego.label.dto.ErrorResponse;
 import com.qwervego.label.dto.QrResponse;
+import com.qwervego.label.exception.QrConflictException;
 import com.qwervego.label.exception.QrNotFoundException;
 import com.qwervego.label.model.Qr;
-import com.qwervego.label.repository.FirestoreQrRepository;
+import com.qwervego.label.repository.QrPatch;
+import com.qwervego.label.repository.QrStatsDelta;
+import com.qwervego.label.repository.QrStore;
 
 @Service
 public class QrService {
 
-    private final BCryptPasswordEncoder passwordEncoder;
-    private final FirestoreQrRepository qrRepository;
+    private final PasswordHasher passwordHasher;
+    private final QrStore qrRepository;
 
     @Autowired
-    public QrService(BCryptPasswordEncoder passwordEncoder, FirestoreQrRepository qrRepository) {
-        this.passwordEncoder = passwordEncoder;
+    public QrService(PasswordHasher passwordHasher, QrStore qrRepository) {
+        this.passwordHasher = passwordHasher;
         this.qrRepository = qrRepository;
     }
 
@@ -43,7 +47,7 @@ public class QrService {
         // Only hash password if it's provided (for backwards compatibility)
         // Phone OTP authentication is now the primary method
         if (qr.getPassword() != null && !qr.getPassword().trim().isEmpty()) {
-            String hashedPassword = passwordEncoder.encode(qr.getPassword());
+            String hashedPassword = passwordHasher.encode(qr.getPassword());
             qr.setPassword(hashedPassword);
         }
     }
@@ -52,12 +56,16 @@ public class QrService {
         return qrRepository.save(qr);
     }
 
+    public Qr saveQrData(Qr qr, QrStatsDelta statsDelta) {
+        return qrRepository.save(qr, statsDelta);
+    }
+
     public Optional<Qr> findById(String id) {
         return qrRepository.findById(id);
     }
 
     public QrResponse getQrById(String id) {
-        Qr qrData = qrRepository.findById(id)
+        Qr qrData = qrRepository.findPublicById(id)
                 .orElseThrow(() -> new QrNotFoundException("QR code not found for ID: " + id));
 
         return new QrResponse(
@@ -72,52 +80,58 @@ public class QrService {
         );
     }
 
-    public ResponseEntity<Object> processQrUpdate(Map<String, Object> updates) {
+    /**
+     * Applies the fields present in {@code updates} as a merge patch with one Firestore
+     * update, without reading the tag first. When {@code ifMatch} carries the ETag the
+     * client read, the update only lands if the tag is unchanged since; otherwise the
+     * response is 409 and the client should re-read and retry.
+     */
+    public ResponseEntity<Object> processQrUpdate(Map<String, Object> updates, String ifMatch) {
         if (!updates.containsKey("id")) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body(new ErrorResponse("ID is required."));
         }
-        
-        String id = updates.get("id").toString();
-        Optional<Qr> existingQrOpt = findById(id);
 
-        if (existingQrOpt.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                    .body(new ErrorResponse("QR code not found for ID: " + id));
+        String id = updates.get("id").toString();
+        QrPatch patch;
+        try {
+            patch = QrPatch.from(updates);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ErrorResponse(e.getMessage()));
+        }
+        if (patch.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(new ErrorResponse("No updatable fields provided."));
+        }
+        Timestamp expectedUpdateTime = null;
+        if (ifMatch != null) {
+            expectedUpdateTime = ScanPayloadCache.updateTimeFor(ifMatch);
+            if (expectedUpdateTime == null) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body(new ErrorResponse("If-Match must be an ETag returned by GET /api/qr."));
+            }
         }
-        
-        Qr existingQr = existingQrOpt.get();
-        applyUpdates(existingQr, updates);
 
         try {
-            Qr updatedQr = saveQrData(existingQr);
-            return ResponseEntity.ok(updatedQr);
+            Timestamp updateTime = qrRepository.patch(id, patch, expectedUpdateTime);
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("id", id);
+            body.putAll(patch.fields());
+            String etag = ScanPayloadCache.etagFor(updateTime);
+            return etag == null ? ResponseEntity.ok(body) : ResponseEntity.ok().eTag(etag).body(body);
+        } catch (QrNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new ErrorResponse("QR code not found for ID: " + id));
+        } catch (QrConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new ErrorResponse(e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(new ErrorResponse("Failed to update QR code: " + e.getMessage()));
         }
     }
 
-    private void applyUpdates(Qr existingQr, Map<String, Object> updates) {
-        if (updates.containsKey("name")) {
-            existingQr.setName(updates.get("name").toString());
-        }
-        if (updates.containsKey("email")) {
-            existingQr.setEmail(updates.get("email").toString());
-        }
-        if (updates.containsKey("address")) {
-            existingQr.setAddress(updates.get("address").toString());
-        }
-        if (updates.containsKey("phoneNumber")) {
-            existingQr.setPhoneNumber(updates.get("phoneNumber").toString());
-        }
-        if (updates.containsKey("isActive")) {
-            existingQr.setActive(Boolean.parseBoolean(updates.get("isActive").toString()));
-        }
-    }
-
     public boolean checkPassword(String rawPassword, String hashedPassword) {
-        return passwordEncoder.matches(rawPassword, hashedPassword);
+        return passwordHasher.matches(rawPassword, hashedPassword);
     }
 
     public Optional<Qr> findByPhoneNumber(String phoneNumber) {
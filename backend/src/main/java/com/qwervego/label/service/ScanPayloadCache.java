@@ -0,0 +1,247 @@
+package com.qwervego.label.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.cloud.Timestamp;
+import com.qwervego.label.model.Qr;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.connector.CoyoteOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Ready-to-write UTF-8 JSON for public scan responses, kept in a fixed direct-memory
+ * slab split into equal slots. Only the small index (ID, ETag, slot) lives on the heap.
+ * <p>
+ * Entries are validated by ETag on every read, so a payload for an older version of a
+ * document is simply replaced the next time the newer version is scanned. When the
+ * slab is full the oldest entry gives up its slot.
+ */
+@Component
+public class ScanPayloadCache {
+    private static final Logger logger = LoggerFactory.getLogger(ScanPayloadCache.class);
+
+    private final ObjectMapper objectMapper;
+    private final ByteBuffer slab;
+    private final int slotSize;
+
+    // Guarded by lock; insertion order doubles as eviction order
+    private final LinkedHashMap<String, Slot> index = new LinkedHashMap<>();
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+    private final StampedLock lock = new StampedLock();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public ScanPayloadCache(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                            @Value("${qr.scan-payload.slab-size:16MB}") DataSize slabSize,
+                            @Value("${qr.scan-payload.slot-size:1KB}") DataSize slotSize) {
+        this.objectMapper = objectMapper;
+        this.slotSize = (int) slotSize.toBytes();
+        int slotCount = (int) (slabSize.toBytes() / this.slotSize);
+        this.slab = ByteBuffer.allocateDirect(slotCount * this.slotSize);
+        for (int i = 0; i < slotCount; i++) {
+            freeSlots.add(i);
+        }
+
+        this.hits = Counter.builder("qr.scan.payload.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("qr.scan.payload.requests").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("qr.scan.payload.slots.used", this, ScanPayloadCache::usedSlots).register(meterRegistry);
+        Gauge.builder("qr.scan.payload.slab.bytes", slab, ByteBuffer::capacity).baseUnit("bytes").register(meterRegistry);
+        logger.info("Allocated {} bytes of direct memory for {} scan payload slots", slab.capacity(), slotCount);
+    }
+
+    /**
+     * Public fields returned by {@code GET /api/qr}; never includes the password.
+     */
+    public static Map<String, Object> toPayload(Qr qr) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("id", qr.getId());
+        response.put("isActive", qr.isActive());
+        response.put("name", qr.getName());
+        response.put("email", qr.getEmail());
+        response.put("address", qr.getAddress());
+        response.put("phoneNumber", qr.getPhoneNumber());
+        response.put("createdDate", qr.getCreatedDate());
+        response.put("activationDate", qr.getActivationDate());
+        return response;
+    }
+
+    /**
+     * Strong ETag derived from the document update time, or null when the update time
+     * is not known.
+     */
+    public static String etagFor(Qr qr) {
+        return etagFor(qr.getUpdateTime());
+    }
+
+    public static String etagFor(Timestamp updateTime) {
+        if (updateTime == null) {
+            return null;
+        }
+        return "\"" + Long.toHexString(updateTime.getSeconds()) + "." + Integer.toHexString(updateTime.getNanos()) + "\"";
+    }
+
+    /**
+     * Inverse of {@link #etagFor}: the update time named by an {@code If-Match} value, or
+     * null when it is not one of our ETags.
+     */
+    public static Timestamp updateTimeFor(String etag) {
+        if (etag == null) {
+            return null;
+        }
+        String value = etag.strip();
+        if (value.length() < 2 || !value.startsWith("\"") || !value.endsWith("\"")) {
+            return null;
+        }
+        int dot = value.indexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        try {
+            long seconds = Long.parseLong(value, 1, dot, 16);
+            int nanos = Integer.parseInt(value, dot + 1, value.length() - 1, 16);
+            return Timestamp.ofTimeSecondsAndNanos(seconds, nanos);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the payload for the given tag to the response, serializing and storing
+     * it first if the slab does not hold the current version.
+     */
+    public void writeTo(Qr qr, String etag, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setHeader(HttpHeaders.ETAG, etag);
+
+        long stamp = lock.readLock();
+        try {
+            Slot slot = index.get(qr.getId());
+            // Holding the read lock while writing is fine: the payload is smaller than the
+            // response buffer, so this is a memory copy, not a socket write
+            if (slot != null && slot.etag.equals(etag) && slot.length <= response.getBufferSize()) {
+                hits.increment();
+                response.setContentLength(slot.length);
+                write(response.getOutputStream(), slot);
+                return;
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+
+        misses.increment();
+        byte[] payload = serialize(qr);
+        store(qr.getId(), etag, payload);
+        response.setContentLength(payload.length);
+        response.getOutputStream().write(payload);
+    }
+
+    /**
+     * Same as {@link #writeTo} for callers that cannot write to the servlet response
+     * directly (the non-blocking endpoints); returns a copy of the stored bytes.
+     */
+    public byte[] bytesFor(Qr qr, String etag) {
+        long stamp = lock.readLock();
+        try {
+            Slot slot = index.get(qr.getId());
+            if (slot != null && slot.etag.equals(etag)) {
+                hits.increment();
+                byte[] copy = new byte[slot.length];
+                slab.get(slot.index * slotSize, copy);
+                return copy;
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+
+        misses.increment();
+        byte[] payload = serialize(qr);
+        store(qr.getId(), etag, payload);
+        return payload;
+    }
+
+    public void evict(String id) {
+        long stamp = lock.writeLock();
+        try {
+            Slot slot = index.remove(id);
+            if (slot != null) {
+                freeSlots.add(slot.index);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private byte[] serialize(Qr qr) {
+        try {
+            return objectMapper.writeValueAsBytes(toPayload(qr));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize scan payload for " + qr.getId(), e);
+        }
+    }
+
+    private void store(String id, String etag, byte[] payload) {
+        if (payload.length > slotSize) {
+            logger.debug("Scan payload for {} is {} bytes, larger than a slot; not storing", id, payload.length);
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            Slot previous = index.remove(id);
+            Integer slotIndex = previous != null ? Integer.valueOf(previous.index) : freeSlots.poll();
+            if (slotIndex == null) {
+                Iterator<Slot> oldest = index.values().iterator();
+                if (!oldest.hasNext()) {
+                    return;
+                }
+                slotIndex = oldest.next().index;
+                oldest.remove();
+            }
+            slab.put(slotIndex * slotSize, payload);
+            index.put(id, new Slot(slotIndex, payload.length, etag));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void write(ServletOutputStream out, Slot slot) throws IOException {
+        ByteBuffer view = slab.slice(slot.index * slotSize, slot.length);
+        if (out instanceof CoyoteOutputStream coyote) {
+            coyote.write(view);
+        } else {
+            byte[] copy = new byte[slot.length];
+            view.get(copy);
+            out.write(copy);
+        }
+    }
+
+    private int usedSlots() {
+        long stamp = lock.readLock();
+        try {
+            return index.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private record Slot(int index, int length, String etag) {
+    }
+}
@@ -0,0 +1,48 @@
+package com.qwervego.label.util;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+public final class CompletableFutures {
+
+    private CompletableFutures() {
+    }
+
+    /**
+     * Adapts a Google {@link ApiFuture} without blocking a thread on it. Callbacks run
+     * on the thread that completes the ApiFuture (usually a gRPC executor thread), so
+     * stages chained on the result should stay cheap.
+     */
+    public static <T> CompletableFuture<T> from(ApiFuture<T> apiFuture) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        ApiFutures.addCallback(apiFuture, new ApiFutureCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                future.complete(result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }, MoreExecutors.directExecutor());
+        return future;
+    }
+
+    /**
+     * Strips the CompletionException/ExecutionException wrappers added by future
+     * composition so callers can react to the original failure.
+     */
+    public static Throwable unwrap(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return t;
+    }
+}
@@ -0,0 +1,50 @@
+package com.qwervego.label.util;
+
+public final class PhoneNumbers {
+
+    private PhoneNumbers() {
+    }
+
+    /**
+     * Canonical E.164-style form ({@code +} followed by digits only) used for storage,
+     * comparison and lookups. Formatting characters are dropped; no country code is
+     * inferred, so "555 123 4567" and "+1 555 123 4567" stay different numbers.
+     * Returns null when the input has no digits.
+     * <p>
+     * Input that is already canonical (e.g. the {@code phone_number} claim of a Firebase
+     * token) is returned as is, without allocating.
+     */
+    public static String toE164(String phoneNumber) {
+        if (phoneNumber == null) {
+            return null;
+        }
+        int length = phoneNumber.length();
+        int digits = 0;
+        boolean canonical = length > 1 && phoneNumber.charAt(0) == '+';
+        for (int i = 0; i < length; i++) {
+            char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if (i > 0 || c != '+') {
+                canonical = false;
+            }
+        }
+        if (digits == 0) {
+            return null;
+        }
+        if (canonical) {
+            return phoneNumber;
+        }
+
+        char[] out = new char[digits + 1];
+        out[0] = '+';
+        int pos = 1;
+        for (int i = 0; i < length; i++) {
+            char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                out[pos++] = c;
+            }
+        }
+        return new String(out);
+    }
+}
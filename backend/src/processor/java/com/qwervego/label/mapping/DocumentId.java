@@ -0,0 +1,15 @@
+package com.qwervego.label.mapping;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A {@code String} field read from the document ID. It is still written as a regular
+ * field, matching the documents already stored.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface DocumentId {
+}
@@ -0,0 +1,15 @@
+package com.qwervego.label.mapping;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A {@code com.google.cloud.Timestamp} field set from the snapshot's update time and
+ * never written.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface DocumentUpdateTime {
+}
@@ -0,0 +1,19 @@
+package com.qwervego.label.mapping;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a {@code <Type>DocumentMapper} next to the annotated class, converting it to
+ * a Firestore field map and back from a {@code DocumentSnapshot} with plain getter and
+ * setter calls. Every non-static, non-transient field is mapped under its own name
+ * unless it carries {@link DocumentField}, {@link DocumentId} or {@link DocumentUpdateTime}.
+ * <p>
+ * Accessors follow Lombok's naming ({@code isActive} → {@code isActive()}/{@code setActive()}).
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface FirestoreDocument {
+}
@@ -0,0 +1,291 @@
+package com.qwervego.label.mapping.processor;
+
+import com.qwervego.label.mapping.DocumentField;
+import com.qwervego.label.mapping.DocumentId;
+import com.qwervego.label.mapping.DocumentUpdateTime;
+import com.qwervego.label.mapping.FirestoreDocument;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the {@code <Type>DocumentMapper} classes for {@link FirestoreDocument} types.
+ * The generated code only calls accessors and reads each field through a precomputed
+ * {@code FieldPath}, so there is no reflection or field path parsing at runtime and the
+ * processor itself needs no Firestore classes. Accessors are not looked up here: Lombok
+ * adds them in the same compilation, and javac checks the generated calls when it
+ * compiles the mapper.
+ */
+@SupportedAnnotationTypes("com.qwervego.label.mapping.FirestoreDocument")
+public class DocumentMapperProcessor extends AbstractProcessor {
+
+    // How a value returned by DocumentSnapshot.get becomes each field type our documents use
+    private enum Conversion {
+        STRING("String", "(String) %s"),
+        BOOLEAN("Boolean", "(Boolean) %s"),
+        LONG("Long", "asLong(%s)"),
+        DOUBLE("Double", "asDouble(%s)"),
+        DATE("java.util.Date", "asDate(%s)"),
+        TIMESTAMP("Timestamp", "(Timestamp) %s");
+
+        private final String boxedType;
+        private final String expression;
+
+        Conversion(String boxedType, String expression) {
+            this.boxedType = boxedType;
+            this.expression = expression;
+        }
+    }
+
+    private static final Map<String, Conversion> DECLARED_CONVERSIONS = Map.of(
+        "java.lang.String", Conversion.STRING,
+        "java.lang.Boolean", Conversion.BOOLEAN,
+        "java.lang.Long", Conversion.LONG,
+        "java.lang.Double", Conversion.DOUBLE,
+        "java.util.Date", Conversion.DATE,
+        "com.google.cloud.Timestamp", Conversion.TIMESTAMP);
+    private static final Map<TypeKind, Conversion> PRIMITIVE_CONVERSIONS = Map.of(
+        TypeKind.BOOLEAN, Conversion.BOOLEAN,
+        TypeKind.LONG, Conversion.LONG,
+        TypeKind.DOUBLE, Conversion.DOUBLE);
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(FirestoreDocument.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@FirestoreDocument only applies to classes");
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            List<MappedField> fields = collectFields(type);
+            if (fields != null) {
+                write(type, fields);
+            }
+        }
+        return true;
+    }
+
+    private List<MappedField> collectFields(TypeElement type) {
+        List<MappedField> fields = new ArrayList<>();
+        boolean valid = true;
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.FIELD
+                || member.getModifiers().contains(Modifier.STATIC)
+                || member.getModifiers().contains(Modifier.TRANSIENT)) {
+                continue;
+            }
+            VariableElement field = (VariableElement) member;
+            String name = field.getSimpleName().toString();
+            TypeMirror fieldType = field.asType();
+            // By qualified name: toString() would include type-use annotations such as @NotBlank
+            String typeName = typeName(fieldType);
+            DocumentField rename = field.getAnnotation(DocumentField.class);
+            String documentName = rename != null ? rename.value() : name;
+            boolean isBoolean = fieldType.getKind() == TypeKind.BOOLEAN;
+
+            Source source;
+            Conversion conversion;
+            if (field.getAnnotation(DocumentId.class) != null) {
+                source = Source.ID;
+                conversion = null;
+            } else if (field.getAnnotation(DocumentUpdateTime.class) != null) {
+                source = Source.UPDATE_TIME;
+                conversion = null;
+            } else {
+                source = Source.FIELD;
+                conversion = fieldType.getKind().isPrimitive()
+                    ? PRIMITIVE_CONVERSIONS.get(fieldType.getKind())
+                    : DECLARED_CONVERSIONS.get(typeName);
+            }
+            if (source == Source.ID && !"java.lang.String".equals(typeName)) {
+                error(field, "@DocumentId field must be a String");
+                valid = false;
+            } else if (source == Source.UPDATE_TIME && !"com.google.cloud.Timestamp".equals(typeName)) {
+                error(field, "@DocumentUpdateTime field must be a com.google.cloud.Timestamp");
+                valid = false;
+            } else if (source == Source.FIELD && conversion == null) {
+                error(field, "Unsupported Firestore field type " + typeName);
+                valid = false;
+            } else {
+                fields.add(new MappedField(name, documentName, fieldType.getKind().isPrimitive(),
+                    readAccessor(name, isBoolean), writeAccessor(name, isBoolean), source, conversion));
+            }
+        }
+        return valid ? fields : null;
+    }
+
+    private void write(TypeElement type, List<MappedField> fields) {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = pkg.getQualifiedName().toString();
+        String typeName = type.getSimpleName().toString();
+        String mapperName = typeName + "DocumentMapper";
+        long written = fields.stream().filter(f -> f.source != Source.UPDATE_TIME).count();
+        Set<Conversion> conversions = EnumSet.noneOf(Conversion.class);
+        fields.stream().filter(f -> f.conversion != null).forEach(f -> conversions.add(f.conversion));
+
+        StringBuilder out = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("import com.google.cloud.Timestamp;\n");
+        out.append("import com.google.cloud.firestore.DocumentSnapshot;\n");
+        out.append("import com.google.cloud.firestore.FieldPath;\n");
+        out.append("import java.util.HashMap;\n");
+        out.append("import java.util.Map;\n");
+        out.append("import javax.annotation.processing.Generated;\n\n");
+        out.append("@Generated(\"").append(DocumentMapperProcessor.class.getName()).append("\")\n");
+        out.append("public final class ").append(mapperName).append(" {\n\n");
+        out.append("    /** Fields written by {@link #toMap}. */\n");
+        out.append("    public static final int FIELD_COUNT = ").append(written).append(";\n\n");
+        // Parsed once here instead of on every get(String)
+        for (MappedField field : fields) {
+            if (field.source == Source.FIELD) {
+                out.append("    private static final FieldPath ").append(field.pathConstant())
+                    .append(" = FieldPath.of(\"").append(field.documentName).append("\");\n");
+            }
+        }
+        out.append('\n');
+        out.append("    private ").append(mapperName).append("() {\n    }\n\n");
+
+        out.append("    public static Map<String, Object> toMap(").append(typeName).append(" source) {\n");
+        out.append("        return toMap(source, 0);\n");
+        out.append("    }\n\n");
+        out.append("    /**\n");
+        out.append("     * Field map sized for the mapped fields plus {@code extraFields} the caller adds.\n");
+        out.append("     */\n");
+        out.append("    public static Map<String, Object> toMap(").append(typeName).append(" source, int extraFields) {\n");
+        out.append("        Map<String, Object> data = HashMap.newHashMap(FIELD_COUNT + extraFields);\n");
+        for (MappedField field : fields) {
+            if (field.source != Source.UPDATE_TIME) {
+                out.append("        data.put(\"").append(field.documentName).append("\", source.")
+                    .append(field.readAccessor).append("());\n");
+            }
+        }
+        out.append("        return data;\n");
+        out.append("    }\n\n");
+
+        out.append("    /**\n");
+        out.append("     * Reads only the mapped fields; fields missing from the snapshot keep the\n");
+        out.append("     * default of a new instance.\n");
+        out.append("     */\n");
+        out.append("    public static ").append(typeName).append(" fromSnapshot(DocumentSnapshot document) {\n");
+        out.append("        ").append(typeName).append(" target = new ").append(typeName).append("();\n");
+        for (MappedField field : fields) {
+            switch (field.source) {
+                case ID -> out.append("        target.").append(field.writeAccessor).append("(document.getId());\n");
+                case UPDATE_TIME -> out.append("        target.").append(field.writeAccessor)
+                    .append("(document.getUpdateTime());\n");
+                case FIELD -> {
+                    String value = String.format(field.conversion.expression,
+                        "document.get(" + field.pathConstant() + ")");
+                    if (field.primitive) {
+                        // A missing field keeps the primitive's default instead of unboxing null
+                        String local = field.name + "Value";
+                        out.append("        ").append(field.conversion.boxedType).append(' ').append(local)
+                            .append(" = ").append(value).append(";\n");
+                        out.append("        if (").append(local).append(" != null) {\n");
+                        out.append("            target.").append(field.writeAccessor).append('(').append(local).append(");\n");
+                        out.append("        }\n");
+                    } else {
+                        out.append("        target.").append(field.writeAccessor).append('(').append(value).append(");\n");
+                    }
+                }
+            }
+        }
+        out.append("        return target;\n");
+        out.append("    }\n");
+        // Numbers decode as Long or Double and dates as Timestamp, whatever the field type
+        if (conversions.contains(Conversion.LONG)) {
+            out.append("\n    private static Long asLong(Object value) {\n");
+            out.append("        return value == null ? null : ((Number) value).longValue();\n");
+            out.append("    }\n");
+        }
+        if (conversions.contains(Conversion.DOUBLE)) {
+            out.append("\n    private static Double asDouble(Object value) {\n");
+            out.append("        return value == null ? null : ((Number) value).doubleValue();\n");
+            out.append("    }\n");
+        }
+        if (conversions.contains(Conversion.DATE)) {
+            out.append("\n    private static java.util.Date asDate(Object value) {\n");
+            out.append("        return value == null ? null : ((Timestamp) value).toDate();\n");
+            out.append("    }\n");
+        }
+        out.append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? mapperName : packageName + "." + mapperName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+            writer.write(out.toString());
+        } catch (IOException e) {
+            error(type, "Could not write " + qualifiedName + ": " + e.getMessage());
+        }
+    }
+
+    private String typeName(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return type.getKind().toString().toLowerCase();
+        }
+        Element element = processingEnv.getTypeUtils().asElement(type);
+        return ((TypeElement) element).getQualifiedName().toString();
+    }
+
+    // Lombok: boolean isActive -> isActive(), boolean active -> isActive(), String name -> getName()
+    private static String readAccessor(String name, boolean isBoolean) {
+        if (isBoolean) {
+            return hasIsPrefix(name) ? name : "is" + capitalize(name);
+        }
+        return "get" + capitalize(name);
+    }
+
+    private static String writeAccessor(String name, boolean isBoolean) {
+        if (isBoolean && hasIsPrefix(name)) {
+            return "set" + name.substring(2);
+        }
+        return "set" + capitalize(name);
+    }
+
+    private static boolean hasIsPrefix(String name) {
+        return name.length() > 2 && name.startsWith("is") && Character.isUpperCase(name.charAt(2));
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private enum Source { FIELD, ID, UPDATE_TIME }
+
+    private record MappedField(String name, String documentName, boolean primitive, String readAccessor,
+                               String writeAccessor, Source source, Conversion conversion) {
+
+        // createdDate -> CREATED_DATE
+        String pathConstant() {
+            return name.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.qwervego.label.config;
+
+import com.google.cloud.firestore.Firestore;
+import com.qwervego.label.model.Qr;
+import com.qwervego.label.repository.LegacyPhoneLookup;
+import com.qwervego.label.repository.QrStore;
+import com.qwervego.label.util.PhoneNumbers;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.env.Environment;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("fake-firebase")
+class PhoneNumberBackfillTest {
+
+	@Autowired
+	private Firestore firestore;
+
+	@Autowired
+	private QrStore qrStore;
+
+	@Autowired
+	private LegacyPhoneLookup legacyPhoneLookup;
+
+	@Autowired
+	private Environment environment;
+
+	@Test
+	void backfillCanonicalizesLegacyDocumentsAndEndsTheFallback() throws Exception {
+		String id = "LEGACY-" + UUID.randomUUID();
+		String phoneNumber = "+1 (555) " + (1000 + (int) (Math.random() * 9000)) + "-0199";
+		// Written before phoneE164 existed
+		firestore.collection("qrs").document(id).set(Map.of("id", id, "isActive", true, "phoneNumber", phoneNumber)).get();
+		assertThat(legacyPhoneLookup.needed()).isTrue();
+		assertThat(qrStore.findByPhoneNumber(phoneNumber)).map(Qr::getId).contains(id);
+
+		runBackfill(environment);
+
+		assertThat(firestore.collection("qrs").document(id).get().get().getString("phoneE164"))
+				.isEqualTo(PhoneNumbers.toE164(phoneNumber));
+		assertThat(firestore.collection("migrations").document("phoneE164").get().get().exists()).isTrue();
+		assertThat(legacyPhoneLookup.needed()).isFalse();
+		// Found through phoneE164 in any formatting; a miss is one query now
+		assertThat(qrStore.findByPhoneNumber("+1 555 " + phoneNumber.substring(9))).map(Qr::getId).contains(id);
+		assertThat(qrStore.findByPhoneNumber("+99 000")).isEmpty();
+	}
+
+	@Test
+	void embeddedStoreLeavesTheFirestoreQrsCollectionAlone() throws Exception {
+		String id = "LEGACY-" + UUID.randomUUID();
+		firestore.collection("qrs").document(id).set(Map.of("id", id, "isActive", true, "phoneNumber", "+1 555 0100")).get();
+
+		runBackfill(new MockEnvironment().withProperty("spring.profiles.active", "fake-firebase,embedded-store"));
+
+		assertThat(firestore.collection("qrs").document(id).get().get().contains("phoneE164")).isFalse();
+	}
+
+	private void runBackfill(Environment environment) throws InterruptedException {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		new PhoneNumberBackfill(firestore, executor, legacyPhoneLookup, environment).run();
+		executor.shutdown();
+		assertThat(executor.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+	}
+}
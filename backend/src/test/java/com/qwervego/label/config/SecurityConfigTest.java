@@ -0,0 +1,76 @@
+package com.qwervego.label.config;
+
+import com.qwervego.label.fake.InMemoryIdentityToolkit;
+import com.qwervego.label.fake.SyntheticDataGenerator;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("fake-firebase")
+class SecurityConfigTest {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private InMemoryIdentityToolkit identityToolkit;
+
+	@Autowired
+	private SyntheticDataGenerator generator;
+
+	@Test
+	void collectionScansNeedAnAdmin() throws Exception {
+		String user = "Bearer " + identityToolkit.idToken(generator.userUid(0));
+		String admin = "Bearer " + identityToolkit.idToken(generator.adminUid(0));
+
+		mockMvc.perform(get("/api/qr/stats").param("source", "aggregate"))
+				.andExpect(status().isForbidden());
+		mockMvc.perform(get("/api/qr/stats").param("source", "aggregate").header(HttpHeaders.AUTHORIZATION, user))
+				.andExpect(status().isForbidden());
+		mockMvc.perform(get("/api/qr/stats").param("source", "aggregate").header(HttpHeaders.AUTHORIZATION, admin))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.total").isNumber());
+
+		for (String endpoint : new String[]{"/actuator/qrfilter", "/actuator/qrstats"}) {
+			mockMvc.perform(get(endpoint).header(HttpHeaders.AUTHORIZATION, user))
+					.andExpect(status().isForbidden());
+			mockMvc.perform(get(endpoint).header(HttpHeaders.AUTHORIZATION, admin))
+					.andExpect(status().isOk());
+		}
+	}
+
+	@Test
+	void onlyAdminsGenerateBeyondThePublicBatch() throws Exception {
+		String user = "Bearer " + identityToolkit.idToken(generator.userUid(0));
+		String admin = "Bearer " + identityToolkit.idToken(generator.adminUid(1));
+
+		mockMvc.perform(post("/api/qr/generate").contentType(MediaType.APPLICATION_JSON).content("{\"quantity\":101}"))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(post("/api/qr/generate").contentType(MediaType.APPLICATION_JSON).content("{\"quantity\":101}")
+						.header(HttpHeaders.AUTHORIZATION, user))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(post("/api/qr/generate").contentType(MediaType.APPLICATION_JSON).content("{\"quantity\":101}")
+						.header(HttpHeaders.AUTHORIZATION, admin))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.qrIds.length()").value(101));
+	}
+
+	@Test
+	void shardedStatsStayPublic() throws Exception {
+		mockMvc.perform(get("/api/qr/stats"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.total").isNumber());
+	}
+}
@@ -0,0 +1,76 @@
+package com.qwervego.label.controller;
+
+import com.google.cloud.firestore.Firestore;
+import com.qwervego.label.exception.GlobalExceptionHandler;
+import com.qwervego.label.fake.InMemoryFirestore;
+import com.qwervego.label.fake.SimulatedOperation;
+import com.qwervego.label.repository.FirestoreQrRepository;
+import com.qwervego.label.repository.LegacyPhoneLookup;
+import com.qwervego.label.repository.QrIdFilter;
+import com.qwervego.label.repository.QrStatsRepository;
+import com.qwervego.label.repository.WritePipeline;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class QrAsyncControllerTest {
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	private Firestore firestore;
+	private MockMvc mockMvc;
+
+	@BeforeEach
+	void setUp() {
+		// Reads take 500ms, and a caller waits at most 50ms on another caller's read
+		firestore = InMemoryFirestore.create("async-controller-test",
+				Map.of("batch-get", SimulatedOperation.parse("batch-get", "500ms", "")));
+		QrIdFilter idFilter = new QrIdFilter(firestore, meterRegistry, executor, false, false, 0.01, 1000, Duration.ofMinutes(5));
+		FirestoreQrRepository repository = new FirestoreQrRepository(firestore, idFilter, new QrStatsRepository(firestore, 10),
+				new WritePipeline(firestore, meterRegistry, 500, 4, 3, Duration.ofMillis(100)), new LegacyPhoneLookup(firestore, false),
+				meterRegistry, executor,
+				1000, Duration.ofMinutes(30), Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ofMillis(50),
+				false, Duration.ofMillis(2), 100, 100, 4);
+		// The scan endpoint only needs the store
+		QrAsyncController controller = new QrAsyncController(repository, null, null, null, Duration.ofSeconds(5));
+		mockMvc = MockMvcBuilders.standaloneSetup(controller).setControllerAdvice(new GlobalExceptionHandler()).build();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		executor.shutdownNow();
+		firestore.close();
+	}
+
+	@Test
+	void callerThatGivesUpOnAnInFlightReadGets503() throws Exception {
+		MvcResult leader = mockMvc.perform(get("/api/qr/async").param("id", "ABC123"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		MvcResult waiter = mockMvc.perform(get("/api/qr/async").param("id", "ABC123"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+
+		mockMvc.perform(asyncDispatch(waiter))
+				.andExpect(status().isServiceUnavailable())
+				.andExpect(jsonPath("$.message").value("The request timed out. Please try again."));
+		mockMvc.perform(asyncDispatch(leader))
+				.andExpect(status().isNotFound());
+	}
+}
@@ -0,0 +1,196 @@
+package com.qwervego.label.fake;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.gax.rpc.AlreadyExistsException;
+import com.google.api.gax.rpc.FailedPreconditionException;
+import com.google.api.gax.rpc.NotFoundException;
+import com.google.api.gax.rpc.UnavailableException;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.NoCredentials;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+import com.google.cloud.firestore.Precondition;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.firebase.ErrorCode;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.FirebaseOptions;
+import com.google.firebase.auth.AuthErrorCode;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseToken;
+import com.google.firebase.auth.UserRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FakeFirebaseTest {
+
+	private static final String PROJECT = "fake-test";
+
+	private InMemoryDocumentStore store;
+	private InMemoryIdentityToolkit identityToolkit;
+	private Firestore firestore;
+	private FirebaseApp app;
+	private FirebaseAuth auth;
+
+	@BeforeEach
+	void setUp() {
+		store = new InMemoryDocumentStore(PROJECT, "(default)");
+		identityToolkit = new InMemoryIdentityToolkit(PROJECT, new ObjectMapper(), Map.of());
+		firestore = firestore(Map.of());
+		app = FirebaseApp.initializeApp(FirebaseOptions.builder()
+				.setProjectId(PROJECT)
+				.setCredentials(GoogleCredentials.create(new AccessToken("test", null)))
+				.setHttpTransport(identityToolkit)
+				.build(), "fake-test-" + UUID.randomUUID());
+		auth = FirebaseAuth.getInstance(app);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		firestore.close();
+		app.delete();
+	}
+
+	private Firestore firestore(Map<String, SimulatedOperation> operations) {
+		InMemoryFirestoreRpc rpc = new InMemoryFirestoreRpc(store, operations, 2);
+		return FirestoreOptions.newBuilder()
+				.setProjectId(PROJECT)
+				.setCredentials(NoCredentials.getInstance())
+				.setServiceRpcFactory(options -> rpc)
+				.build()
+				.getService();
+	}
+
+	@Test
+	void writesHonourPreconditionsAndTransforms() throws Exception {
+		DocumentReference tag = firestore.collection("qrs").document("ABC123");
+		tag.create(Map.of("active", false, "scans", 1)).get();
+
+		assertThatThrownBy(() -> tag.create(Map.of("active", true)).get())
+				.hasCauseInstanceOf(AlreadyExistsException.class);
+
+		tag.update("scans", FieldValue.increment(2), "owner.name", "Ada").get();
+		assertThat(tag.get().get().getLong("scans")).isEqualTo(3);
+		assertThat(tag.get().get().getString("owner.name")).isEqualTo("Ada");
+
+		assertThatThrownBy(() -> tag.update(Map.of("active", true),
+				Precondition.updatedAt(Timestamp.ofTimeSecondsAndNanos(1, 0))).get())
+				.hasCauseInstanceOf(FailedPreconditionException.class);
+		assertThatThrownBy(() -> firestore.collection("qrs").document("ZZZ999").update("active", true).get())
+				.hasCauseInstanceOf(NotFoundException.class);
+	}
+
+	@Test
+	void conflictingTransactionsAreRetried() throws Exception {
+		DocumentReference counter = firestore.collection("qr_stats").document("shard-0");
+		counter.set(Map.of("total", 0L)).get();
+		AtomicInteger attempts = new AtomicInteger();
+
+		long total = firestore.runTransaction(transaction -> {
+			long current = transaction.get(counter).get().getLong("total");
+			// A write between this transaction's read and its commit forces a retry
+			if (attempts.incrementAndGet() == 1) {
+				counter.set(Map.of("total", 10L)).get();
+			}
+			transaction.update(counter, "total", current + 1);
+			return current + 1;
+		}).get();
+
+		assertThat(attempts.get()).isEqualTo(2);
+		assertThat(total).isEqualTo(11);
+		assertThat(counter.get().get().getLong("total")).isEqualTo(11);
+	}
+
+	@Test
+	void queriesFilterOrderPageAndCount() throws Exception {
+		for (int i = 0; i < 50; i++) {
+			firestore.collection("qrs").document(String.format("ID%04d", i))
+					.set(Map.of("active", i % 2 == 0, "number", i)).get();
+		}
+
+		Query active = firestore.collection("qrs").whereEqualTo("active", true);
+		assertThat(active.count().get().get().getCount()).isEqualTo(25);
+
+		List<QueryDocumentSnapshot> firstPage = active.orderBy("number", Query.Direction.DESCENDING).limit(10)
+				.get().get().getDocuments();
+		assertThat(firstPage).extracting(document -> document.getLong("number"))
+				.containsExactly(48L, 46L, 44L, 42L, 40L, 38L, 36L, 34L, 32L, 30L);
+		List<QueryDocumentSnapshot> secondPage = active.orderBy("number", Query.Direction.DESCENDING).limit(3)
+				.startAfter(firstPage.get(9)).get().get().getDocuments();
+		assertThat(secondPage).extracting(document -> document.getLong("number")).containsExactly(28L, 26L, 24L);
+
+		List<QueryDocumentSnapshot> range = firestore.collection("qrs").whereGreaterThanOrEqualTo("number", 45)
+				.get().get().getDocuments();
+		assertThat(range).extracting(QueryDocumentSnapshot::getId)
+				.containsExactly("ID0045", "ID0046", "ID0047", "ID0048", "ID0049");
+	}
+
+	@Test
+	void injectedFaultsSurfaceAsStatusErrors() throws Exception {
+		firestore.close();
+		firestore = firestore(Map.of("batch-get", SimulatedOperation.parse("batch-get", "1ms", "UNAVAILABLE:1")));
+
+		assertThatThrownBy(() -> firestore.collection("qrs").document("ABC123").get().get())
+				.hasCauseInstanceOf(UnavailableException.class);
+	}
+
+	@Test
+	void issuedTokensVerifyAndCarryClaims() throws Exception {
+		String uid = auth.createUser(new UserRecord.CreateRequest().setEmail("Admin@Example.com")).getUid();
+		auth.setCustomUserClaims(uid, Map.of("role", "ADMIN"));
+
+		FirebaseToken token = auth.verifyIdToken(identityToolkit.idToken(uid), true);
+		assertThat(token.getUid()).isEqualTo(uid);
+		assertThat(token.getEmail()).isEqualTo("admin@example.com");
+		assertThat(token.getClaims()).containsEntry("role", "ADMIN");
+		assertThat(auth.getUserByEmail("admin@example.com").getUid()).isEqualTo(uid);
+
+		assertThatThrownBy(() -> auth.createUser(new UserRecord.CreateRequest().setEmail("admin@example.com")))
+				.isInstanceOfSatisfying(FirebaseAuthException.class,
+						e -> assertThat(e.getErrorCode()).isEqualTo(ErrorCode.ALREADY_EXISTS));
+
+		// Revocation has second granularity, so the token must predate it by a full second
+		String revoked = identityToolkit.idToken(uid);
+		Thread.sleep(1100);
+		auth.revokeRefreshTokens(uid);
+		assertThatThrownBy(() -> auth.verifyIdToken(revoked, true))
+				.isInstanceOfSatisfying(FirebaseAuthException.class,
+						e -> assertThat(e.getAuthErrorCode()).isEqualTo(AuthErrorCode.REVOKED_ID_TOKEN));
+		assertThat(auth.verifyIdToken(identityToolkit.idToken(uid), true).getUid()).isEqualTo(uid);
+	}
+
+	@Test
+	void seededDatasetIsAddressableFromThePlan() throws Exception {
+		SyntheticDataGenerator generator = new SyntheticDataGenerator(store, identityToolkit,
+				new SyntheticDataGenerator.Plan(200, 0.5, 20, 2, 30, 7));
+		generator.generate();
+
+		for (long i = 0; i < 200; i += 37) {
+			var tag = firestore.collection("qrs").document(generator.qrId(i)).get().get();
+			assertThat(tag.exists()).isTrue();
+			assertThat(tag.getBoolean("isActive")).isEqualTo(generator.isActive(i));
+		}
+		assertThat(firestore.collection("qrs").count().get().get().getCount()).isEqualTo(200);
+		assertThat(firestore.collection("users").whereEqualTo("phoneNumber", generator.userPhoneNumber(3))
+				.get().get().size()).isEqualTo(1);
+
+		FirebaseToken superadmin = auth.verifyIdToken(identityToolkit.idToken(generator.adminUid(0)));
+		assertThat(superadmin.getClaims()).containsEntry("role", "SUPERADMIN");
+		FirebaseToken user = auth.verifyIdToken(identityToolkit.signInWithPhoneNumber(generator.userPhoneNumber(5)));
+		assertThat(user.getUid()).isEqualTo(generator.userUid(5));
+	}
+}
@@ -0,0 +1,89 @@
+package com.qwervego.label.repository;
+
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldMask;
+import com.google.cloud.firestore.Firestore;
+import com.qwervego.label.fake.SyntheticDataGenerator;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("fake-firebase")
+class BatchLoaderTest {
+
+	@Autowired
+	private Firestore firestore;
+
+	@Autowired
+	private SyntheticDataGenerator generator;
+
+	private MeterRegistry meterRegistry;
+	private BatchLoader batchLoader;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		batchLoader = new BatchLoader("test", firestore, FieldMask.of("isActive"), Duration.ofMillis(50), 3,
+				meterRegistry);
+	}
+
+	@AfterEach
+	void tearDown() {
+		batchLoader.close();
+	}
+
+	@Test
+	void readsInOneWindowShareOneGetAllAndMissingDocumentsResolve() throws Exception {
+		CompletableFuture<DocumentSnapshot> existing = batchLoader.load(tag(generator.qrId(0)));
+		CompletableFuture<DocumentSnapshot> missing = batchLoader.load(tag("MISSING-0"));
+		CompletableFuture<DocumentSnapshot> duplicate = batchLoader.load(tag(generator.qrId(0)));
+
+		DocumentSnapshot found = existing.get(5, TimeUnit.SECONDS);
+		assertThat(found.exists()).isTrue();
+		assertThat(found.getBoolean("isActive")).isEqualTo(generator.isActive(0));
+		assertThat(found.contains("name")).isFalse();
+		DocumentSnapshot notFound = missing.get(5, TimeUnit.SECONDS);
+		assertThat(notFound.exists()).isFalse();
+		assertThat(notFound.getId()).isEqualTo("MISSING-0");
+		assertThat(duplicate.get(5, TimeUnit.SECONDS).getId()).isEqualTo(generator.qrId(0));
+
+		DistributionSummary batches = meterRegistry.get("repository.batch.size").summary();
+		assertThat(batches.count()).isEqualTo(1);
+		assertThat(batches.totalAmount()).isEqualTo(2);
+	}
+
+	@Test
+	void fullBatchIsSentWithoutWaitingForTheWindow() throws Exception {
+		batchLoader.close();
+		batchLoader = new BatchLoader("test", firestore, FieldMask.of("isActive"), Duration.ofMinutes(1), 3,
+				meterRegistry);
+
+		CompletableFuture<DocumentSnapshot> first = batchLoader.load(tag(generator.qrId(1)));
+		batchLoader.load(tag(generator.qrId(2)));
+		CompletableFuture<DocumentSnapshot> last = batchLoader.load(tag("MISSING-1"));
+
+		assertThat(first.get(5, TimeUnit.SECONDS).exists()).isTrue();
+		assertThat(last.get(5, TimeUnit.SECONDS).exists()).isFalse();
+		assertThat(meterRegistry.get("repository.batch.size").summary().totalAmount()).isEqualTo(3);
+	}
+
+	private DocumentReference tag(String id) {
+		return firestore.collection("qrs").document(id);
+	}
+}
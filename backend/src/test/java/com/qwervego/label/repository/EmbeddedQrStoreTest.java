@@ -0,0 +1,199 @@
+package com.qwervego.label.repository;
+
+import com.qwervego.label.exception.InvalidPageTokenException;
+import com.qwervego.label.exception.QrConflictException;
+import com.qwervego.label.model.Qr;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmbeddedQrStoreTest {
+
+	private static final long CREATED = 1_700_000_000_000L;
+
+	@TempDir
+	Path directory;
+
+	private Path file;
+	private ExecutorService executor;
+	private SimpleMeterRegistry meterRegistry;
+	private EmbeddedQrStore store;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		file = directory.resolve("qrs.log");
+		executor = Executors.newSingleThreadExecutor();
+		store = open();
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		store.close();
+		executor.shutdownNow();
+	}
+
+	// Small regions so a few thousand records span several of them
+	private EmbeddedQrStore open() throws IOException {
+		meterRegistry = new SimpleMeterRegistry();
+		return new EmbeddedQrStore(null, meterRegistry, executor, file, DataSize.ofKilobytes(64),
+				false, 0.5, DataSize.ofMegabytes(64), false);
+	}
+
+	private EmbeddedQrStore reopen() throws IOException {
+		store.close();
+		store = open();
+		return store;
+	}
+
+	private double garbageBytes() {
+		return meterRegistry.get("qr.embedded.log.garbage.bytes").gauge().value();
+	}
+
+	@Test
+	void documentsSurviveReopening() throws IOException {
+		generate(2000);
+		store.activate(registration("T00005", "Jane"));
+		store.deleteById("T00007");
+		double garbage = garbageBytes();
+
+		reopen();
+
+		assertThat(store.findById("T00005")).get().extracting(Qr::getName, Qr::isActive).containsExactly("Jane", true);
+		assertThat(store.findPublicById("T00005").get().getPassword()).isNull();
+		assertThat(store.findById("T00007")).isEmpty();
+		assertThat(store.findByPhoneNumber("+1 555 0100")).get().extracting(Qr::getId).isEqualTo("T00005");
+		assertThat(store.readStats()).containsEntry("total", 1999L).containsEntry("active", 1L);
+		assertThat(garbageBytes()).isPositive().isEqualTo(garbage);
+	}
+
+	@Test
+	void activationAndPatchDetectConflicts() {
+		generate(1);
+		Qr activated = store.activate(registration("T00000", "Jane"));
+		assertThat(activated.getCreatedDate()).isEqualTo(new Date(CREATED));
+		assertThatThrownBy(() -> store.activate(registration("T00000", "John"))).isInstanceOf(QrConflictException.class);
+
+		QrPatch rename = QrPatch.from(Map.of("name", "Janet"));
+		store.patch("T00000", rename, activated.getUpdateTime());
+		assertThatThrownBy(() -> store.patch("T00000", rename, activated.getUpdateTime()))
+				.isInstanceOf(QrConflictException.class);
+	}
+
+	@Test
+	void compactionKeepsOnlyTheLatestVersions() throws IOException {
+		generate(500);
+		for (int round = 0; round < 20; round++) {
+			for (int i = 0; i < 500; i++) {
+				Qr qr = store.findById(id(i)).get();
+				qr.setAddress("address " + round);
+				store.save(qr);
+			}
+		}
+		long before = Files.size(file);
+		double garbage = garbageBytes();
+		assertThat(reopen().findById(id(0))).isPresent();
+		assertThat(garbageBytes()).isEqualTo(garbage).isGreaterThan(before / 2.0);
+
+		store.compact();
+
+		assertThat(Files.size(file)).isLessThan(before / 5);
+		assertThat(reopen().findById(id(499)).get().getAddress()).isEqualTo("address 19");
+		assertThat(store.readStats()).containsEntry("total", 500L);
+		assertThat(garbageBytes()).isZero();
+	}
+
+	@Test
+	void tornRecordAtTheEndIsDiscarded() throws IOException {
+		generate(1000);
+		store.close();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6, 7}), 30_000);
+		}
+
+		store = open();
+		long survivors = (Long) store.readStats().get("total");
+		assertThat(survivors).isBetween(1L, 999L);
+		store.save(registration("NEW", "Jane"));
+
+		assertThat(reopen().readStats()).containsEntry("total", survivors + 1);
+		assertThat(store.findById("NEW")).isPresent();
+	}
+
+	@Test
+	void datePagesFollowCreatedDateThenId() {
+		generate(20);
+		store.activate(registration(id(5), "Jane"));
+		QrListFilter filter = new QrListFilter(false, new Date(CREATED + 4000), new Date(CREATED + 9000));
+
+		KeysetPage<Qr> first = store.findPage(filter, null, 2);
+		KeysetPage<Qr> second = store.findPage(filter, first.nextPageToken(), 2);
+
+		assertThat(first.items()).extracting(Qr::getId).containsExactly(id(4), id(6));
+		assertThat(second.items()).extracting(Qr::getId).containsExactly(id(7), id(8));
+		assertThat(second.nextPageToken()).isNull();
+	}
+
+	@Test
+	void pageTokenOnlyContinuesTheFilterItWasIssuedFor() {
+		generate(20);
+		QrListFilter inactive = new QrListFilter(false, null, null);
+		String token = store.findPage(inactive, null, 5).nextPageToken();
+
+		assertThat(store.findPage(inactive, token, 5).items()).extracting(Qr::getId).first().isEqualTo(id(5));
+		assertThatThrownBy(() -> store.findPage(new QrListFilter(null, null, null), token, 5))
+				.isInstanceOf(InvalidPageTokenException.class);
+		assertThatThrownBy(() -> store.findPage(new QrListFilter(false, new Date(CREATED), null), token, 5))
+				.isInstanceOf(InvalidPageTokenException.class);
+		assertThatThrownBy(() -> store.findPage(inactive, "not a token", 5))
+				.isInstanceOf(InvalidPageTokenException.class);
+	}
+
+	private void generate(int count) {
+		List<Qr> qrs = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			Qr qr = new Qr();
+			qr.setId(id(i));
+			qr.setPassword("");
+			qr.setCreatedDate(new Date(CREATED + i * 1000L));
+			qrs.add(qr);
+		}
+		assertThat(store.createAll(qrs, new QrStore.BulkCreateOptions(500, 10_000, 5)))
+				.allMatch(CompletableFuture::join);
+	}
+
+	private static String id(int index) {
+		return String.format("T%05d", index);
+	}
+
+	private static Qr registration(String id, String owner) {
+		Qr qr = new Qr();
+		qr.setId(id);
+		qr.setName(owner);
+		qr.setEmail(owner + "@example.com");
+		qr.setAddress("1 Test Street");
+		qr.setPhoneNumber("+15550100");
+		qr.setActive(true);
+		qr.setActivationDate(new Date());
+		return qr;
+	}
+}
@@ -0,0 +1,148 @@
+package com.qwervego.label.repository;
+
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.qwervego.label.exception.QrConflictException;
+import com.qwervego.label.fake.InMemoryFirestore;
+import com.qwervego.label.model.Qr;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Activation against the in-memory Firestore, which enforces preconditions and
+ * transaction conflicts like the real service.
+ */
+class FirestoreQrRepositoryActivationTest {
+
+	private static final int OWNERS = 16;
+	private static final Date CREATED = new Date(1_700_000_000_000L);
+
+	private Firestore firestore;
+	private MeterRegistry meterRegistry;
+	private ExecutorService executor;
+	private FirestoreQrRepository repository;
+
+	@BeforeEach
+	void setUp() {
+		firestore = InMemoryFirestore.create("label-test", Map.of());
+		meterRegistry = new SimpleMeterRegistry();
+		executor = Executors.newVirtualThreadPerTaskExecutor();
+		QrIdFilter idFilter = new QrIdFilter(firestore, meterRegistry, executor, false, true, 0.01, 1000, Duration.ofMinutes(5));
+		repository = new FirestoreQrRepository(firestore, idFilter, new QrStatsRepository(firestore, 10),
+				new WritePipeline(firestore, meterRegistry, 500, 4, 3, Duration.ofMillis(100)), new LegacyPhoneLookup(firestore, true),
+				meterRegistry, executor,
+				1000, Duration.ofMinutes(30), Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ofSeconds(5),
+				false, Duration.ofMillis(2), 100, 100, 4);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		executor.shutdownNow();
+		firestore.close();
+	}
+
+	@ParameterizedTest(name = "scan cache warm: {0}")
+	@ValueSource(booleans = {false, true})
+	void concurrentActivationsOfOneTagHaveExactlyOneWinner(boolean warmCache) throws Exception {
+		String id = seedInactiveTag();
+		if (warmCache) {
+			repository.findPublicById(id);
+		}
+
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<String>> attempts = new ArrayList<>();
+		for (int i = 0; i < OWNERS; i++) {
+			String owner = "owner-" + i;
+			attempts.add(executor.submit(() -> {
+				start.await();
+				try {
+					repository.activate(registration(id, owner));
+					return owner;
+				} catch (QrConflictException e) {
+					return null;
+				}
+			}));
+		}
+		start.countDown();
+
+		List<String> winners = new ArrayList<>();
+		for (Future<String> attempt : attempts) {
+			String winner = attempt.get();
+			if (winner != null) {
+				winners.add(winner);
+			}
+		}
+
+		assertThat(winners).hasSize(1);
+		DocumentSnapshot stored = firestore.collection("qrs").document(id).get().get();
+		assertThat(stored.getBoolean("isActive")).isTrue();
+		assertThat(stored.getString("name")).isEqualTo(winners.get(0));
+		assertThat(stored.getDate("createdDate")).isEqualTo(CREATED);
+	}
+
+	@Test
+	void activatingAnActiveTagIsAConflict() throws Exception {
+		String id = seedInactiveTag();
+		repository.activate(registration(id, "first"));
+
+		assertThatThrownBy(() -> repository.activate(registration(id, "second")))
+				.isInstanceOf(QrConflictException.class);
+	}
+
+	@Test
+	void scannedTagActivatesWithOneWriteAndNoTransaction() throws Exception {
+		int tags = 20;
+		for (int i = 0; i < tags; i++) {
+			String scanned = seedInactiveTag();
+			repository.findPublicById(scanned);
+			repository.activate(registration(scanned, "owner"));
+		}
+		// Every warm activation went out as a single pipeline commit
+		assertThat(meterRegistry.get("repository.write.batch.size").summary().count()).isEqualTo(tags);
+
+		for (int i = 0; i < tags; i++) {
+			repository.activate(registration(seedInactiveTag(), "owner"));
+		}
+		// ...and cold ones ran as transactions, outside the pipeline
+		assertThat(meterRegistry.get("repository.write.batch.size").summary().count()).isEqualTo(tags);
+	}
+
+	private String seedInactiveTag() throws Exception {
+		String id = "T-" + UUID.randomUUID();
+		firestore.collection("qrs").document(id)
+				.set(Map.of("id", id, "isActive", false, "password", "", "createdDate", CREATED))
+				.get();
+		return id;
+	}
+
+	private static Qr registration(String id, String owner) {
+		Qr qr = new Qr();
+		qr.setId(id);
+		qr.setName(owner);
+		qr.setEmail(owner + "@example.com");
+		qr.setAddress("1 Test Street");
+		qr.setPhoneNumber("+15555550100");
+		qr.setActive(true);
+		qr.setActivationDate(new Date());
+		return qr;
+	}
+}
@@ -0,0 +1,91 @@
+package com.qwervego.label.repository;
+
+import com.google.cloud.firestore.Firestore;
+import com.qwervego.label.fake.InMemoryFirestore;
+import com.qwervego.label.fake.SimulatedOperation;
+import com.qwervego.label.model.Qr;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QrIdFilterTest {
+
+	private static final String KNOWN = "KNOWN-1";
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	private Firestore firestore;
+	private QrIdFilter idFilter;
+	private FirestoreQrRepository repository;
+
+	@AfterEach
+	void tearDown() throws Exception {
+		executor.shutdownNow();
+		firestore.close();
+	}
+
+	// batchGetFaults applies to document reads only, so seeding and the filter's scans still work
+	private void start(boolean confirmNegatives, String batchGetFaults) throws Exception {
+		firestore = InMemoryFirestore.create("id-filter-test",
+				Map.of("batch-get", SimulatedOperation.parse("batch-get", "0", batchGetFaults)));
+		firestore.collection("qrs").document(KNOWN)
+				.set(Map.of("id", KNOWN, "isActive", false, "createdDate", new Date())).get();
+		idFilter = new QrIdFilter(firestore, meterRegistry, executor, true, confirmNegatives, 0.01, 1000, Duration.ofMinutes(5));
+		idFilter.rebuild();
+		repository = new FirestoreQrRepository(firestore, idFilter, new QrStatsRepository(firestore, 10),
+				new WritePipeline(firestore, meterRegistry, 500, 4, 3, Duration.ofMillis(100)), new LegacyPhoneLookup(firestore, false),
+				meterRegistry, executor,
+				1000, Duration.ofMinutes(30), Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ofSeconds(5),
+				false, Duration.ofMillis(2), 100, 100, 4);
+	}
+
+	@Test
+	void definiteMissIsAnsweredWithoutAFirestoreRead() throws Exception {
+		// Every document read fails, so any lookup that reached Firestore would throw
+		start(false, "UNAVAILABLE:1");
+
+		assertThat(idFilter.mightContain(KNOWN)).isTrue();
+		assertThat(repository.findPublicById("NOPE-1")).isEmpty();
+		assertThat(repository.findPublicByIdAsync("NOPE-2").get()).isEmpty();
+		assertThat(idFilter.stats()).containsEntry("ready", true).containsEntry("rejected", 2L);
+	}
+
+	@Test
+	void tagWrittenWithoutCreatedDateIsKnownAfterTheNextRebuild() throws Exception {
+		start(false, "");
+		String id = writeWithoutCreatedDate();
+
+		assertThat(repository.findPublicById(id)).isEmpty();
+
+		idFilter.rebuild();
+		assertThat(repository.findAllById(List.of(id))).extracting(Qr::getId).containsExactly(id);
+	}
+
+	@Test
+	void confirmedNegativesFindTagsWrittenWithoutCreatedDate() throws Exception {
+		start(true, "");
+		String id = writeWithoutCreatedDate();
+
+		assertThat(repository.findPublicById(id)).map(Qr::getId).contains(id);
+		assertThat(idFilter.stats()).containsEntry("falseNegatives", 1L).containsEntry("rejected", 0L);
+		assertThat(repository.findPublicById("NOPE-1")).isEmpty();
+	}
+
+	// What generateQRs/file.py wrote before it set createdDate
+	private String writeWithoutCreatedDate() throws Exception {
+		String id = "EXT-1";
+		firestore.collection("qrs").document(id).set(Map.of("id", id, "isActive", false, "createdTime", new Date())).get();
+		idFilter.refreshRecent();
+		return id;
+	}
+}
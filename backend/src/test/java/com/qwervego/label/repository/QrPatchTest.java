@@ -0,0 +1,64 @@
+package com.qwervego.label.repository;
+
+import com.qwervego.label.model.Qr;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QrPatchTest {
+
+	@Test
+	void onlyOwnerEditableFieldsAreKept() {
+		Map<String, Object> body = new HashMap<>();
+		body.put("id", "ABC123");
+		body.put("name", "Jane");
+		body.put("address", null);
+		body.put("password", "hunter2");
+		body.put("createdDate", "2025-01-01");
+		body.put("activationDate", "2025-01-01");
+		body.put("phoneE164", "+15550100");
+
+		QrPatch patch = QrPatch.from(body);
+
+		assertThat(patch.fields()).containsOnlyKeys("name", "address").containsEntry("address", null);
+		assertThat(patch.active()).isNull();
+		assertThat(QrPatch.from(Map.of("id", "ABC123", "password", "hunter2")).isEmpty()).isTrue();
+	}
+
+	@Test
+	void fieldsMustHaveTheirJsonType() {
+		assertThat(QrPatch.from(Map.of("isActive", "TRUE")).active()).isTrue();
+		assertThat(QrPatch.from(Map.of("isActive", false)).active()).isFalse();
+
+		assertThatThrownBy(() -> QrPatch.from(Map.of("isActive", "yes"))).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> QrPatch.from(Map.of("name", 42))).isInstanceOf(IllegalArgumentException.class);
+		Map<String, Object> clearActive = new HashMap<>();
+		clearActive.put("isActive", null);
+		assertThatThrownBy(() -> QrPatch.from(clearActive)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void phoneNumberKeepsTheLookupFieldInStep() {
+		Map<String, Object> updates = QrPatch.from(Map.of("phoneNumber", "+1 (555) 010-0000")).toFieldUpdates();
+
+		assertThat(updates).containsEntry("phoneNumber", "+1 (555) 010-0000").containsEntry("phoneE164", "+15550100000");
+		assertThat(QrPatch.from(Map.of("name", "Jane")).toFieldUpdates()).containsOnlyKeys("name");
+	}
+
+	@Test
+	void appliesToADecodedDocument() {
+		Qr qr = new Qr();
+		qr.setName("Old");
+		qr.setEmail("old@example.com");
+
+		QrPatch.from(Map.of("name", "New", "isActive", true)).applyTo(qr);
+
+		assertThat(qr.getName()).isEqualTo("New");
+		assertThat(qr.getEmail()).isEqualTo("old@example.com");
+		assertThat(qr.isActive()).isTrue();
+	}
+}
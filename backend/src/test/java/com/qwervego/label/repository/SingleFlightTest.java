@@ -0,0 +1,165 @@
+package com.qwervego.label.repository;
+
+import com.qwervego.label.exception.InFlightLoadTimeoutException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+	private MeterRegistry meterRegistry;
+	private ExecutorService executor;
+	private SingleFlight<String, String> singleFlight;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		executor = Executors.newVirtualThreadPerTaskExecutor();
+		singleFlight = new SingleFlight<>("test", Duration.ofSeconds(5), meterRegistry);
+	}
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void concurrentCallersShareOneLoad() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		Future<String> leader = startLeader(() -> {
+			loads.incrementAndGet();
+			await(release);
+			return "value";
+		});
+		Future<String> waiter = executor.submit(() -> singleFlight.execute("key", () -> "own load"));
+		CompletableFuture<String> asyncWaiter = singleFlight.executeAsync("key",
+				() -> CompletableFuture.completedFuture("own load"));
+		awaitCoalesced(2);
+		release.countDown();
+
+		assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("value");
+		assertThat(waiter.get(5, TimeUnit.SECONDS)).isEqualTo("value");
+		assertThat(asyncWaiter.get(5, TimeUnit.SECONDS)).isEqualTo("value");
+		assertThat(loads.get()).isEqualTo(1);
+		// Once settled the key is free again
+		assertThat(singleFlight.execute("key", () -> "next")).isEqualTo("next");
+	}
+
+	@Test
+	void leaderFailureReachesEveryWaiter() throws Exception {
+		IllegalStateException failure = new IllegalStateException("load failed");
+		CountDownLatch release = new CountDownLatch(1);
+		Future<String> leader = startLeader(() -> {
+			await(release);
+			throw failure;
+		});
+		Future<String> waiter = executor.submit(() -> singleFlight.execute("key", () -> "own load"));
+		CompletableFuture<String> asyncWaiter = singleFlight.executeAsync("key",
+				() -> CompletableFuture.completedFuture("own load"));
+		awaitCoalesced(2);
+		release.countDown();
+
+		assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).hasCause(failure);
+		assertThatThrownBy(() -> waiter.get(5, TimeUnit.SECONDS)).hasCause(failure);
+		assertThatThrownBy(() -> asyncWaiter.get(5, TimeUnit.SECONDS)).hasCause(failure);
+	}
+
+	@Test
+	void leaderErrorDoesNotLeaveWaitersHanging() throws Exception {
+		AssertionError error = new AssertionError("loader bug");
+		CountDownLatch release = new CountDownLatch(1);
+		Future<String> leader = startLeader(() -> {
+			await(release);
+			throw error;
+		});
+		Future<String> waiter = executor.submit(() -> singleFlight.execute("key", () -> "own load"));
+		awaitCoalesced(1);
+		long releasedAt = System.nanoTime();
+		release.countDown();
+
+		assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).hasCause(error);
+		assertThatThrownBy(() -> waiter.get(5, TimeUnit.SECONDS)).hasCause(error);
+		assertThat(Duration.ofNanos(System.nanoTime() - releasedAt)).isLessThan(Duration.ofSeconds(2));
+	}
+
+	@Test
+	void asyncLoaderThatThrowsReleasesTheKey() {
+		AssertionError error = new AssertionError("loader bug");
+
+		assertThatThrownBy(() -> singleFlight.executeAsync("key", () -> {
+			throw error;
+		}).get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class).hasCause(error);
+		assertThat(singleFlight.executeAsync("key", () -> CompletableFuture.completedFuture("next")).join())
+				.isEqualTo("next");
+	}
+
+	@Test
+	void waitersGiveUpAfterMaxWaitOnBothPaths() throws Exception {
+		singleFlight = new SingleFlight<>("test", Duration.ofMillis(100), meterRegistry);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<String> leader = startLeader(() -> {
+			await(release);
+			return "late";
+		});
+
+		assertThatThrownBy(() -> singleFlight.execute("key", () -> "own load"))
+				.isInstanceOf(InFlightLoadTimeoutException.class);
+		assertThatThrownBy(() -> singleFlight.executeAsync("key", () -> CompletableFuture.completedFuture("own load"))
+				.get(5, TimeUnit.SECONDS))
+				.hasCauseInstanceOf(TimeoutException.class);
+		assertThat(meterRegistry.get("repository.singleflight.calls").tag("result", "timed_out").counter().count())
+				.isEqualTo(2);
+
+		release.countDown();
+		assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("late");
+	}
+
+	// Runs the loader as the leader for "key" and returns once it is in flight
+	private Future<String> startLeader(Supplier<String> loader) throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		Future<String> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+			started.countDown();
+			return loader.get();
+		}));
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+		return leader;
+	}
+
+	private void awaitCoalesced(int waiters) throws InterruptedException {
+		for (int i = 0; i < 500 && coalesced() < waiters; i++) {
+			Thread.sleep(10);
+		}
+		assertThat(coalesced()).isEqualTo(waiters);
+	}
+
+	private double coalesced() {
+		return meterRegistry.get("repository.singleflight.calls").tag("result", "coalesced").counter().count();
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+}
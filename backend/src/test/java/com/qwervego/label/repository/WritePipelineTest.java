@@ -0,0 +1,100 @@
+package com.qwervego.label.repository;
+
+import com.google.api.gax.rpc.NotFoundException;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteResult;
+import com.qwervego.label.fake.InMemoryFirestore;
+import com.qwervego.label.fake.SimulatedOperation;
+import io.grpc.Status;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WritePipelineTest {
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private Firestore firestore;
+	private WritePipeline pipeline;
+
+	@AfterEach
+	void tearDown() throws Exception {
+		pipeline.close();
+		firestore.close();
+	}
+
+	private void start(String latency, String faults) {
+		firestore = InMemoryFirestore.create("write-pipeline-test",
+				Map.of("commit", SimulatedOperation.parse("commit", latency, faults)));
+		pipeline = new WritePipeline(firestore, meterRegistry, 500, 1, 3, Duration.ofMillis(1));
+	}
+
+	@Test
+	void failedGroupIsSplitSoOnlyTheBadWriteFails() throws Exception {
+		start("50ms", "");
+		DocumentReference first = tag("FIRST");
+		DocumentReference good = tag("GOOD");
+		DocumentReference missing = tag("MISSING");
+		DocumentReference other = tag("OTHER");
+
+		// Holds the only commit slot, so the next three queue up and share one commit
+		CompletableFuture<WriteResult> blocker = pipeline.submit(first, batch -> batch.set(first, Map.of("n", 0)));
+		CompletableFuture<WriteResult> goodWrite = pipeline.submit(good, batch -> batch.set(good, Map.of("n", 1)));
+		CompletableFuture<WriteResult> badWrite = pipeline.submit(missing, batch -> batch.update(missing, "n", 2));
+		CompletableFuture<WriteResult> otherWrite = pipeline.submit(other, batch -> batch.set(other, Map.of("n", 3)));
+
+		blocker.get(5, TimeUnit.SECONDS);
+		goodWrite.get(5, TimeUnit.SECONDS);
+		otherWrite.get(5, TimeUnit.SECONDS);
+		assertThatThrownBy(() -> badWrite.get(5, TimeUnit.SECONDS))
+				.isInstanceOf(ExecutionException.class)
+				.hasCauseInstanceOf(NotFoundException.class);
+
+		assertThat(meterRegistry.get("repository.write.batch.size").summary().max()).isEqualTo(3);
+		assertThat(good.get().get().getLong("n")).isEqualTo(1);
+		assertThat(other.get().get().getLong("n")).isEqualTo(3);
+		assertThat(missing.get().get().exists()).isFalse();
+	}
+
+	@Test
+	void onlyIdempotentWritesAreRetriedWhenTheOutcomeIsUnknown() {
+		start("0", "UNAVAILABLE:1");
+		DocumentReference document = tag("ABC123");
+
+		assertThatThrownBy(() -> pipeline.write(document, batch -> batch.set(document, Map.of("n", 1))))
+				.satisfies(e -> assertThat(WritePipeline.statusCode(e)).isEqualTo(Status.Code.UNAVAILABLE));
+		assertThat(retries()).isZero();
+
+		assertThatThrownBy(() -> pipeline.writeIdempotent(document, batch -> batch.set(document, Map.of("n", 1))))
+				.satisfies(e -> assertThat(WritePipeline.statusCode(e)).isEqualTo(Status.Code.UNAVAILABLE));
+		assertThat(retries()).isEqualTo(2);
+	}
+
+	@Test
+	void rejectedCommitsAreRetriedForEveryWrite() {
+		start("0", "ABORTED:1");
+		DocumentReference document = tag("ABC123");
+
+		assertThatThrownBy(() -> pipeline.write(document, batch -> batch.set(document, Map.of("n", 1))))
+				.satisfies(e -> assertThat(WritePipeline.statusCode(e)).isEqualTo(Status.Code.ABORTED));
+		assertThat(retries()).isEqualTo(2);
+	}
+
+	private DocumentReference tag(String id) {
+		return firestore.collection("qrs").document(id);
+	}
+
+	private double retries() {
+		return meterRegistry.get("repository.write.retries").counter().count();
+	}
+}
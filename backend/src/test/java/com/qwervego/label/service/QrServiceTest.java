@@ -0,0 +1,95 @@
+package com.qwervego.label.service;
+
+import com.qwervego.label.fake.SyntheticDataGenerator;
+import com.qwervego.label.model.Qr;
+import com.qwervego.label.repository.QrStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("fake-firebase")
+class QrServiceTest {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private SyntheticDataGenerator generator;
+
+	@Autowired
+	private QrStore qrStore;
+
+	@Test
+	void ifMatchRejectsAnUpdateBasedOnAStaleRead() throws Exception {
+		String id = activeTag(10);
+		String etag = mockMvc.perform(get("/api/qr").param("id", id))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		String newEtag = mockMvc.perform(update("{\"id\":\"" + id + "\",\"name\":\"First\"}").header(HttpHeaders.IF_MATCH, etag))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.name").value("First"))
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertThat(newEtag).isNotNull().isNotEqualTo(etag);
+
+		mockMvc.perform(update("{\"id\":\"" + id + "\",\"name\":\"Second\"}").header(HttpHeaders.IF_MATCH, etag))
+				.andExpect(status().isConflict());
+		mockMvc.perform(update("{\"id\":\"" + id + "\",\"name\":\"Second\"}").header(HttpHeaders.IF_MATCH, "W/\"nope\""))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(update("{\"id\":\"" + id + "\",\"name\":\"Second\"}").header(HttpHeaders.IF_MATCH, newEtag))
+				.andExpect(status().isOk());
+
+		assertThat(qrStore.findById(id)).map(Qr::getName).contains("Second");
+	}
+
+	@Test
+	void fieldsOutsideTheWhitelistAreNeverWritten() throws Exception {
+		String id = activeTag(11);
+		String password = qrStore.findById(id).orElseThrow().getPassword();
+
+		mockMvc.perform(update("{\"id\":\"" + id + "\",\"password\":\"hunter2\"}"))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(update("{\"id\":\"" + id + "\",\"password\":\"hunter2\",\"email\":\"new@example.com\"}"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.password").doesNotExist());
+
+		Qr stored = qrStore.findById(id).orElseThrow();
+		assertThat(stored.getEmail()).isEqualTo("new@example.com");
+		assertThat(stored.getPassword()).isEqualTo(password);
+	}
+
+	@Test
+	void unknownTagIsNotFound() throws Exception {
+		mockMvc.perform(update("{\"id\":\"NOPE-1\",\"name\":\"Jane\"}"))
+				.andExpect(status().isNotFound());
+	}
+
+	private static MockHttpServletRequestBuilder update(String body) {
+		return put("/api/qr/update").contentType(MediaType.APPLICATION_JSON).content(body);
+	}
+
+	private String activeTag(int nth) {
+		return LongStream.range(0, generator.plan().qrs())
+				.filter(generator::isActive)
+				.skip(nth)
+				.mapToObj(generator::qrId)
+				.findFirst()
+				.orElseThrow();
+	}
+}
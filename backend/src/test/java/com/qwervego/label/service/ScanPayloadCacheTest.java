@@ -0,0 +1,108 @@
+package com.qwervego.label.service;
+
+import com.google.cloud.Timestamp;
+import com.qwervego.label.fake.SyntheticDataGenerator;
+import com.qwervego.label.repository.QrPatch;
+import com.qwervego.label.repository.QrStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("fake-firebase")
+class ScanPayloadCacheTest {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private SyntheticDataGenerator generator;
+
+	@Autowired
+	private QrStore qrStore;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Test
+	void etagRoundTripsThroughTheUpdateTime() {
+		Timestamp updateTime = Timestamp.ofTimeSecondsAndNanos(1_700_000_000L, 123_456_789);
+		String etag = ScanPayloadCache.etagFor(updateTime);
+
+		assertThat(etag).startsWith("\"").endsWith("\"");
+		assertThat(ScanPayloadCache.updateTimeFor(etag)).isEqualTo(updateTime);
+		assertThat(ScanPayloadCache.updateTimeFor(" " + etag + " ")).isEqualTo(updateTime);
+		assertThat(ScanPayloadCache.updateTimeFor("W/" + etag)).isNull();
+		assertThat(ScanPayloadCache.updateTimeFor("\"not-an-etag\"")).isNull();
+		assertThat(ScanPayloadCache.updateTimeFor(null)).isNull();
+	}
+
+	@Test
+	void activeScanIsServedFromTheSlabAndRevalidatedWithIfNoneMatch() throws Exception {
+		String id = activeTag(0);
+		String etag = mockMvc.perform(get("/api/qr").param("id", id))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+				.andExpect(jsonPath("$.id").value(id))
+				.andExpect(jsonPath("$.password").doesNotExist())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertThat(etag).isNotNull();
+
+		double hits = slabHits();
+		mockMvc.perform(get("/api/qr").param("id", id))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.ETAG, etag))
+				.andExpect(jsonPath("$.id").value(id));
+		assertThat(slabHits()).isEqualTo(hits + 1);
+
+		mockMvc.perform(get("/api/qr").param("id", id).header(HttpHeaders.IF_NONE_MATCH, etag))
+				.andExpect(status().isNotModified())
+				.andExpect(header().string(HttpHeaders.ETAG, etag))
+				.andExpect(content().string(""));
+	}
+
+	@Test
+	void changedTagGetsANewEtagAndAFullResponse() throws Exception {
+		String id = activeTag(1);
+		String etag = mockMvc.perform(get("/api/qr").param("id", id))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		qrStore.patch(id, QrPatch.from(Map.of("name", "Renamed")), null);
+
+		String newEtag = mockMvc.perform(get("/api/qr").param("id", id).header(HttpHeaders.IF_NONE_MATCH, etag))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.name").value("Renamed"))
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertThat(newEtag).isNotNull().isNotEqualTo(etag);
+	}
+
+	private String activeTag(int nth) {
+		return LongStream.range(0, generator.plan().qrs())
+				.filter(generator::isActive)
+				.skip(nth)
+				.mapToObj(generator::qrId)
+				.findFirst()
+				.orElseThrow();
+	}
+
+	private double slabHits() {
+		return meterRegistry.get("qr.scan.payload.requests").tag("result", "hit").counter().count();
+	}
+}
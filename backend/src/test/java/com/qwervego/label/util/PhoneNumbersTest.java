@@ -0,0 +1,44 @@
+package com.qwervego.label.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.NullSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PhoneNumbersTest {
+
+	@ParameterizedTest
+	@CsvSource({
+			"'+15551234567', '+15551234567'",
+			"'+1 555 123 4567', '+15551234567'",
+			"'+1 (555) 123-4567', '+15551234567'",
+			"'555.123.4567', '+5551234567'",
+			"'  +91 98765 43210 ', '+919876543210'",
+			"'0044 20 7946 0958', '+00442079460958'",
+			"'1+2', '+12'"
+	})
+	void formattingIsDropped(String input, String expected) {
+		assertThat(PhoneNumbers.toE164(input)).isEqualTo(expected);
+	}
+
+	@ParameterizedTest
+	@NullSource
+	@ValueSource(strings = {"", "+", "   ", "()-", "phone"})
+	void inputWithoutDigitsHasNoCanonicalForm(String input) {
+		assertThat(PhoneNumbers.toE164(input)).isNull();
+	}
+
+	@Test
+	void canonicalInputIsReturnedAsIs() {
+		String canonical = "+15551234567";
+		assertThat(PhoneNumbers.toE164(canonical)).isSameAs(canonical);
+	}
+
+	@Test
+	void noCountryCodeIsInferred() {
+		assertThat(PhoneNumbers.toE164("555 123 4567")).isNotEqualTo(PhoneNumbers.toE164("+1 555 123 4567"));
+	}
+}
@@ -111,7 +111,9 @@ if __name__ == "__main__":
                     "id": random_hash,
                     "isActive": False,
                     "createdFor": "carevego",  # You can modify this value as needed
-                    "createdTime": current_ist_time
+                    "createdTime": current_ist_time,
+                    # The backend lists, pages and indexes new tags by createdDate
+                    "createdDate": current_ist_time
                 })
                 print(f"Inserted QR code with document ID: {random_hash}")
                 break  # Exit the loop once a unique document ID is successfully processed